@@ -0,0 +1,39 @@
+#!/usr/bin/env bash
+# 生成应用类数据共享 (AppCDS) 归档，JDK 11 及以上可用
+# 先由 classpath.sh 生成普通 classpath（应用 jar + 依赖 jar），
+# 再做一次训练运行记录加载的类，最后生成归档。
+#
+# 用法: scripts/startup/cds-archive.sh（在项目根目录执行）
+# 生成: target/cds/classpath.txt、target/cds/app.jsa，measure-startup.sh 会自动使用
+set -euo pipefail
+
+WORK=${WORK_DIR:-target/cds}
+PORT=${TRAIN_PORT:-18080}
+NODE_NAME=${NODE_NAME:-水洗不彻底}
+MAIN=edu.scut.qualitycontrol.QualityControlApplication
+
+rm -rf "$WORK"
+WORK_DIR="$WORK" "$(dirname "$0")/classpath.sh"
+CP=$(cat "$WORK/classpath.txt")
+
+echo "训练运行：记录启动和处理第一个 /node 请求时加载的类..."
+java -Xshare:off -XX:DumpLoadedClassList="$WORK/classes.lst" -cp "$CP" "$MAIN" \
+    --spring.profiles.active=fast-startup --server.port="$PORT" > "$WORK/train.log" 2>&1 &
+PID=$!
+trap 'kill $PID 2>/dev/null || true' EXIT
+
+for _ in $(seq 1 600); do
+    if curl -sf -o /dev/null -G --data-urlencode "name=$NODE_NAME" "http://localhost:$PORT/api/graph/node"; then
+        break
+    fi
+    sleep 0.1
+done
+kill "$PID"
+wait "$PID" || true
+trap - EXIT
+
+echo "生成归档..."
+java -Xshare:dump -XX:SharedClassListFile="$WORK/classes.lst" -XX:SharedArchiveFile="$WORK/app.jsa" -cp "$CP"
+
+echo "完成。使用归档启动："
+echo "  java -XX:SharedArchiveFile=$WORK/app.jsa -cp \"\$(cat $WORK/classpath.txt)\" $MAIN --spring.profiles.active=fast-startup"
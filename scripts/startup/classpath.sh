@@ -0,0 +1,19 @@
+#!/usr/bin/env bash
+# 编译并生成固定的运行时 classpath：应用类打成一个普通 jar，加上 Maven 解析出的依赖 jar
+# pom 中 spring-boot-maven-plugin 跳过了 repackage，不会生成 fat jar，因此不能用 java -jar 启动。
+# AppCDS 归档不允许 classpath 中出现非空目录，所以 target/classes 也要先打包。
+#
+# 用法: scripts/startup/classpath.sh（在项目根目录执行）
+# 生成: target/cds/classpath.txt
+set -euo pipefail
+
+WORK=${WORK_DIR:-target/cds}
+
+mkdir -p "$WORK"
+mvn -q -B compile dependency:build-classpath \
+    -Dmdep.includeScope=runtime -Dmdep.outputFile="$WORK/dependencies.txt"
+jar cf "$WORK/app.jar" -C target/classes .
+
+# 归档与运行时的 classpath 必须完全一致，这里使用绝对路径并固定排序后写入文件
+DEPS=$(tr ':' '\n' < "$WORK/dependencies.txt" | sort | paste -sd ':' -)
+echo "$(cd "$WORK" && pwd)/app.jar:$DEPS" > "$WORK/classpath.txt"
@@ -0,0 +1,53 @@
+#!/usr/bin/env bash
+# 测量启动耗时：从启动 JVM 到第一次 /api/graph/node 请求成功返回 200 的时间
+# 需要本地可用的 Neo4j，且库中存在 NODE_NAME 节点（默认取 initialData.json 中的第一个节点）。
+#
+# 用法: scripts/startup/measure-startup.sh [次数]
+# 环境变量:
+#   PROFILE    Spring profile，默认 fast-startup；设为 default 可对比普通模式
+#   CDS=0      存在 target/cds 归档时默认使用，设为 0 则不使用
+#   JAVA_OPTS  额外的 JVM 参数，例如 -XX:TieredStopAtLevel=1
+set -euo pipefail
+
+RUNS=${1:-5}
+WORK=${WORK_DIR:-target/cds}
+PORT=${PORT:-18081}
+PROFILE=${PROFILE:-fast-startup}
+NODE_NAME=${NODE_NAME:-水洗不彻底}
+MAIN=edu.scut.qualitycontrol.QualityControlApplication
+
+# 没有运行过 cds-archive.sh 时先生成 classpath（不生成归档）
+if [[ ! -f "$WORK/classpath.txt" ]]; then
+    WORK_DIR="$WORK" "$(dirname "$0")/classpath.sh"
+fi
+LAUNCH=(-cp "$(cat "$WORK/classpath.txt")" "$MAIN")
+if [[ "${CDS:-1}" != "0" && -f "$WORK/app.jsa" ]]; then
+    LAUNCH=(-XX:SharedArchiveFile="$WORK/app.jsa" -Xshare:auto "${LAUNCH[@]}")
+fi
+
+results=()
+for run in $(seq 1 "$RUNS"); do
+    start=$(date +%s%N)
+    # shellcheck disable=SC2086
+    java ${JAVA_OPTS:-} "${LAUNCH[@]}" --spring.profiles.active="$PROFILE" --server.port="$PORT" > /dev/null 2>&1 &
+    pid=$!
+    elapsed=""
+    for _ in $(seq 1 1200); do
+        if curl -sf -o /dev/null -G --data-urlencode "name=$NODE_NAME" "http://localhost:$PORT/api/graph/node"; then
+            elapsed=$(( ($(date +%s%N) - start) / 1000000 ))
+            break
+        fi
+        sleep 0.05
+    done
+    kill "$pid" 2>/dev/null || true
+    wait "$pid" 2>/dev/null || true
+    if [[ -z "$elapsed" ]]; then
+        echo "第 $run 次：60 秒内没有成功响应，放弃" >&2
+        exit 1
+    fi
+    echo "第 $run 次：${elapsed} ms"
+    results+=("$elapsed")
+done
+
+sorted=($(printf '%s\n' "${results[@]}" | sort -n))
+echo "中位数：${sorted[$(( RUNS / 2 ))]} ms（最小 ${sorted[0]} ms，最大 ${sorted[$(( RUNS - 1 ))]} ms）"
@@ -2,13 +2,37 @@ package edu.scut.qualitycontrol.config;
 
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallzhv15q.BgeSmallZhV15QuantizedEmbeddingModel;
 import dev.langchain4j.service.AiServices;
 import edu.scut.qualitycontrol.service.GraphNarratorService;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 @Configuration
 public class AiConfig {
+
+    /**
+     * 把 Ollama 模型（含自动配置的）、AI Service 代理和向量模型都标记为延迟初始化，
+     * 启动时不创建，第一次调用 /narrate 或语义索引开始构建时才创建。
+     * 依赖它们的单例需要在注入点加 @Lazy，否则仍会在启动时被连带创建。
+     */
+    @Bean
+    public static BeanFactoryPostProcessor lazyAiBeans() {
+        return beanFactory -> {
+            List<Class<?>> types = List.of(ChatLanguageModel.class, StreamingChatLanguageModel.class,
+                    EmbeddingModel.class, GraphNarratorService.class);
+            for (Class<?> type : types) {
+                for (String name : beanFactory.getBeanNamesForType(type, true, false)) {
+                    beanFactory.getBeanDefinition(name).setLazyInit(true);
+                }
+            }
+        };
+    }
+
     @Bean
     public GraphNarratorService graphNarratorService(ChatLanguageModel chatModel, StreamingChatLanguageModel streamingModel) {
         return AiServices.builder(GraphNarratorService.class)
@@ -16,4 +40,10 @@ public class AiConfig {
                 .streamingChatLanguageModel(streamingModel)
                 .build();
     }
-}
\ No newline at end of file
+
+    // 进程内运行的量化 bge-small-zh 模型，不依赖 Ollama 等外部服务
+    @Bean
+    public EmbeddingModel embeddingModel() {
+        return new BgeSmallZhV15QuantizedEmbeddingModel();
+    }
+}
@@ -0,0 +1,143 @@
+package edu.scut.qualitycontrol.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.Bookmark;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.neo4j.core.transaction.Neo4jBookmarksUpdatedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 客户端级别的因果一致性书签 (Bookmark) 传递。
+ * 请求头中携带的书签作为本次请求内所有事务的起始书签；事务提交后产生的新书签写回响应头。
+ * 客户端下一次请求带上该书签，即使被路由到只读副本，也能读到自己刚刚写入的数据。
+ * 书签只对产生它的数据库有效，因此按产线分别保存：请求头 / 响应头中非默认分区的书签写成 “产线@书签”，
+ * 事务只等待本次请求所在产线的书签，其他产线的书签原样写回响应头，客户端在各产线之间切换时不会丢失。
+ */
+@Slf4j
+@Component
+public class ClientBookmarkHolder implements HandlerInterceptor {
+
+    public static final String BOOKMARK_HEADER = "X-Neo4j-Bookmarks";
+
+    // 产线与书签之间的分隔符（产线标识中不会出现）
+    private static final char LINE_SEPARATOR = '@';
+
+    // 产线 -> 该产线数据库上需要等待的书签
+    private static final ThreadLocal<Map<String, Set<Bookmark>>> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 当前线程（请求）在当前产线上需要等待的书签，供 Neo4jBookmarkManager 在开启事务时读取
+     */
+    public static Set<Bookmark> current() {
+        Map<String, Set<Bookmark>> bookmarks = CURRENT.get();
+        return bookmarks == null
+                ? Collections.emptySet()
+                : bookmarks.getOrDefault(ProductionLineHolder.current(), Collections.emptySet());
+    }
+
+    /**
+     * 设置当前产线的书签，例如在异步线程中恢复请求线程的书签（SSE 流式接口），须在恢复产线之后调用
+     */
+    public static void set(Set<Bookmark> bookmarks) {
+        String line = ProductionLineHolder.current();
+        Map<String, Set<Bookmark>> current = CURRENT.get();
+        if (bookmarks == null || bookmarks.isEmpty()) {
+            if (current != null) {
+                current.remove(line);
+            }
+            return;
+        }
+        if (current == null) {
+            current = new LinkedHashMap<>();
+            CURRENT.set(current);
+        }
+        current.put(line, bookmarks);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 各产线的书签分别保存，开启事务时只取当前产线的那一份；未涉及的产线原样写回响应头
+     */
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Map<String, Set<String>> values = new LinkedHashMap<>();
+        Enumeration<String> headers = request.getHeaders(BOOKMARK_HEADER);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String value : headers.nextElement().split(",")) {
+                String trimmed = value.trim();
+                int separator = trimmed.indexOf(LINE_SEPARATOR);
+                String line = separator < 0 ? ProductionLineHolder.DEFAULT_LINE : trimmed.substring(0, separator);
+                String bookmark = trimmed.substring(separator + 1);
+                if (!bookmark.isEmpty()) {
+                    values.computeIfAbsent(line, key -> new HashSet<>()).add(bookmark);
+                }
+            }
+        }
+        if (values.isEmpty()) {
+            clear();
+            return true;
+        }
+        Map<String, Set<Bookmark>> bookmarks = new LinkedHashMap<>();
+        values.forEach((line, lineValues) -> bookmarks.put(line, Collections.singleton(Bookmark.from(lineValues))));
+        CURRENT.set(bookmarks);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        clear();
+    }
+
+    /**
+     * 事务提交后 SDN 会发布最新的书签，这里把它写回当前请求的响应头
+     */
+    @EventListener
+    public void onBookmarksUpdated(Neo4jBookmarksUpdatedEvent event) {
+        publish(event.getBookmarks());
+    }
+
+    void publish(Set<Bookmark> bookmarks) {
+        // 同一请求内后续的事务也要能看到本次写入
+        set(bookmarks);
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return;
+        }
+        HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+        if (response == null || response.isCommitted()) {
+            log.debug("响应已提交，无法写回书签。");
+            return;
+        }
+        Map<String, Set<Bookmark>> current = CURRENT.get();
+        response.setHeader(BOOKMARK_HEADER, encode(current == null ? Collections.emptyMap() : current));
+    }
+
+    /**
+     * 全部产线的书签，客户端下次请求原样带回即可
+     */
+    static String encode(Map<String, Set<Bookmark>> bookmarks) {
+        return bookmarks.entrySet().stream()
+                .flatMap(entry -> entry.getValue().stream()
+                        .flatMap(bookmark -> bookmark.values().stream())
+                        .map(value -> entry.getKey().isEmpty() ? value : entry.getKey() + LINE_SEPARATOR + value))
+                .collect(Collectors.joining(","));
+    }
+}
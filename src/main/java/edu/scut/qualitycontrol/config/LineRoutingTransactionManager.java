@@ -0,0 +1,117 @@
+package edu.scut.qualitycontrol.config;
+
+import org.neo4j.driver.Driver;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.data.neo4j.core.DatabaseSelectionProvider;
+import org.springframework.data.neo4j.core.transaction.Neo4jBookmarkManager;
+import org.springframework.data.neo4j.core.transaction.Neo4jTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按产线路由的事务管理器
+ * Neo4jBookmarkManager 会把最近一次提交的书签留在进程内，供之后的每个事务等待；各产线的数据库不同，
+ * 共用一个书签管理器会把产线 A 的书签带到产线 B 的会话上。因此每条产线使用各自的 Neo4jTransactionManager
+ * 和书签管理器，开启事务时按当前产线选择，提交 / 回滚时交回开启它的那一个。
+ */
+class LineRoutingTransactionManager implements PlatformTransactionManager, ApplicationContextAware {
+
+    private final Driver driver;
+    private final DatabaseSelectionProvider databaseSelectionProvider;
+    private final Map<String, Neo4jTransactionManager> managers = new ConcurrentHashMap<>();
+    private volatile ApplicationContext applicationContext;
+
+    LineRoutingTransactionManager(Driver driver, DatabaseSelectionProvider databaseSelectionProvider) {
+        this.driver = driver;
+        this.databaseSelectionProvider = databaseSelectionProvider;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+        // 书签管理器通过它发布 Neo4jBookmarksUpdatedEvent，ClientBookmarkHolder 据此写回响应头
+        managers.values().forEach(manager -> manager.setApplicationContext(applicationContext));
+    }
+
+    @Override
+    public TransactionStatus getTransaction(TransactionDefinition definition) throws TransactionException {
+        Neo4jTransactionManager manager = manager(ProductionLineHolder.current());
+        return new LineTransactionStatus(manager, manager.getTransaction(definition));
+    }
+
+    @Override
+    public void commit(TransactionStatus status) throws TransactionException {
+        LineTransactionStatus routed = (LineTransactionStatus) status;
+        routed.manager.commit(routed.delegate);
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) throws TransactionException {
+        LineTransactionStatus routed = (LineTransactionStatus) status;
+        routed.manager.rollback(routed.delegate);
+    }
+
+    Neo4jTransactionManager manager(String line) {
+        return managers.computeIfAbsent(line, key -> {
+            Neo4jTransactionManager manager = Neo4jTransactionManager.with(driver)
+                    .withDatabaseSelectionProvider(databaseSelectionProvider)
+                    .withBookmarkManager(Neo4jBookmarkManager.create(ClientBookmarkHolder::current))
+                    .build();
+            if (applicationContext != null) {
+                manager.setApplicationContext(applicationContext);
+            }
+            return manager;
+        });
+    }
+
+    /**
+     * 记住开启事务的管理器，其余操作原样转发
+     */
+    private static final class LineTransactionStatus implements TransactionStatus {
+        private final Neo4jTransactionManager manager;
+        private final TransactionStatus delegate;
+
+        private LineTransactionStatus(Neo4jTransactionManager manager, TransactionStatus delegate) {
+            this.manager = manager;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean isNewTransaction() { return delegate.isNewTransaction(); }
+
+        @Override
+        public void setRollbackOnly() { delegate.setRollbackOnly(); }
+
+        @Override
+        public boolean isRollbackOnly() { return delegate.isRollbackOnly(); }
+
+        @Override
+        public boolean isCompleted() { return delegate.isCompleted(); }
+
+        @Override
+        public boolean hasSavepoint() { return delegate.hasSavepoint(); }
+
+        @Override
+        public void flush() { delegate.flush(); }
+
+        @Override
+        public Object createSavepoint() throws TransactionException { return delegate.createSavepoint(); }
+
+        @Override
+        public void rollbackToSavepoint(Object savepoint) throws TransactionException {
+            delegate.rollbackToSavepoint(savepoint);
+        }
+
+        @Override
+        public void releaseSavepoint(Object savepoint) throws TransactionException {
+            delegate.releaseSavepoint(savepoint);
+        }
+    }
+}
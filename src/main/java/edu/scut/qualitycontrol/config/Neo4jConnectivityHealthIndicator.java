@@ -0,0 +1,73 @@
+package edu.scut.qualitycontrol.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.Driver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动时异步验证 Neo4j 连接，不阻塞应用启动
+ * 验证通过之前该指标为 OUT_OF_SERVICE，它被纳入 readiness 探针（见 application.properties），
+ * 因此实例在数据库可用之前不会接收流量；liveness 探针不包含它，数据库故障不会导致实例被重启。
+ * 验证失败时按固定间隔重试。health() 只返回缓存的结果，不会访问数据库。
+ */
+@Slf4j
+@Component
+public class Neo4jConnectivityHealthIndicator implements HealthIndicator {
+
+    private final Driver driver;
+    private final Duration retryInterval;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "neo4j-verify");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long startedAt = System.nanoTime();
+
+    private volatile Health health = Health.outOfService().withDetail("reason", "正在验证 Neo4j 连接").build();
+
+    public Neo4jConnectivityHealthIndicator(Driver driver,
+                                            @Value("${qualitycontrol.startup.neo4j-verify-retry:5s}") Duration retryInterval) {
+        this.driver = driver;
+        this.retryInterval = retryInterval;
+    }
+
+    @PostConstruct
+    public void start() {
+        // 在上下文其余部分初始化的同时进行验证
+        scheduler.execute(this::verify);
+    }
+
+    @Override
+    public Health health() {
+        return health;
+    }
+
+    private void verify() {
+        driver.verifyConnectivityAsync().whenComplete((ignored, error) -> {
+            if (error == null) {
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                health = Health.up().withDetail("verifiedAfterMs", millis).build();
+                log.info("Neo4j 连接验证成功，耗时 {} ms。", millis);
+            } else {
+                health = Health.outOfService().withDetail("error", String.valueOf(error.getMessage())).build();
+                log.warn("Neo4j 连接验证失败，{} 后重试：{}", retryInterval, error.getMessage());
+                scheduler.schedule(this::verify, retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,24 @@
+package edu.scut.qualitycontrol.config;
+
+import org.neo4j.driver.Driver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.neo4j.core.DatabaseSelectionProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * 集群读写分离配置
+ * 当 spring.neo4j.uri 使用 neo4j:// 路由协议时：
+ * 1. @Transactional(readOnly = true) 的方法以 READ 模式开启会话，由驱动路由到 Follower / 只读副本；
+ * 2. 其余事务以 WRITE 模式开启，路由到 Leader；
+ * 3. 书签先取客户端请求头中的值，保证“读己之写”。书签按产线（数据库）分别维护，见 LineRoutingTransactionManager。
+ * 使用 bolt:// 直连单实例时，以上配置同样生效，只是所有会话都落在同一台实例上。
+ */
+@Configuration
+public class Neo4jRoutingConfig {
+
+    @Bean
+    public PlatformTransactionManager transactionManager(Driver driver, DatabaseSelectionProvider databaseSelectionProvider) {
+        return new LineRoutingTransactionManager(driver, databaseSelectionProvider);
+    }
+}
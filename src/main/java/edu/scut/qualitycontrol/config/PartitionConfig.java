@@ -0,0 +1,27 @@
+package edu.scut.qualitycontrol.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.neo4j.core.DatabaseSelection;
+import org.springframework.data.neo4j.core.DatabaseSelectionProvider;
+
+/**
+ * 按产线选择 Neo4j 数据库
+ * Neo4jClient、Repository 和事务管理器都通过 DatabaseSelectionProvider 决定会话所在的数据库，
+ * 因此现有的 Cypher 查询无需改动即可按产线隔离。多数据库需要 Neo4j 企业版（或每条产线一个实例时改用多个部署）。
+ */
+@Configuration
+public class PartitionConfig {
+
+    @Bean
+    public DatabaseSelectionProvider databaseSelectionProvider(@Value("${spring.data.neo4j.database:}") String defaultDatabase) {
+        DatabaseSelection fallback = defaultDatabase.isEmpty()
+                ? DatabaseSelection.undecided()
+                : DatabaseSelection.byName(defaultDatabase);
+        return () -> {
+            String line = ProductionLineHolder.current();
+            return line.isEmpty() ? fallback : DatabaseSelection.byName(line);
+        };
+    }
+}
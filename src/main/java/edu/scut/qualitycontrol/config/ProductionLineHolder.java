@@ -0,0 +1,144 @@
+package edu.scut.qualitycontrol.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 产线（租户）分区
+ * 每条产线对应一个独立的 Neo4j 数据库（数据库名即产线标识），同名的影响因素 / 缺陷类型在不同产线之间互不影响。
+ * 请求通过请求头 X-Production-Line 或路径前缀 /api/lines/{line}/... 指定产线，未指定时使用默认分区
+ * （spring.data.neo4j.database 指定的数据库）。内存中的因果图、缓存、统计量等都按产线分别维护。
+ * 异步线程需要通过 wrap / runIn 恢复产线，否则会落到默认分区。
+ */
+@Slf4j
+@Component
+public class ProductionLineHolder implements HandlerInterceptor {
+
+    public static final String LINE_HEADER = "X-Production-Line";
+    // 路径前缀形式由 ProductionLinePathFilter 解析后放入请求属性
+    public static final String LINE_ATTRIBUTE = ProductionLineHolder.class.getName() + ".line";
+    public static final String DEFAULT_LINE = "";
+
+    // Neo4j 数据库命名规则；system 为内置库，不允许作为产线
+    private static final Pattern VALID_NAME = Pattern.compile("[a-z][a-z0-9.-]{2,62}");
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private final Set<String> lines;
+
+    public ProductionLineHolder(@Value("${qualitycontrol.partition.lines:}") List<String> lines) {
+        Set<String> configured = new LinkedHashSet<>();
+        for (String line : lines) {
+            String name = line.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!VALID_NAME.matcher(name).matches() || "system".equals(name)) {
+                throw new IllegalArgumentException("产线标识 “" + name + "” 不是合法的 Neo4j 数据库名。");
+            }
+            configured.add(name);
+        }
+        this.lines = Collections.unmodifiableSet(configured);
+        if (!configured.isEmpty()) {
+            log.info("已启用产线分区：{}", configured);
+        }
+    }
+
+    /**
+     * 当前线程（请求）所属的产线，默认分区为空字符串
+     */
+    public static String current() {
+        String line = CURRENT.get();
+        return line == null ? DEFAULT_LINE : line;
+    }
+
+    public static void set(String line) {
+        if (line == null || line.isEmpty()) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(line);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 在指定产线下执行，结束后恢复原来的产线（用于后台线程按分区处理）
+     */
+    public static <T> T callIn(String line, Supplier<T> action) {
+        String previous = CURRENT.get();
+        set(line);
+        try {
+            return action.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    public static void runIn(String line, Runnable action) {
+        callIn(line, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 把当前产线带到异步任务中
+     */
+    public static Runnable wrap(Runnable task) {
+        String line = current();
+        return () -> runIn(line, task);
+    }
+
+    /**
+     * 全部分区（默认分区 + 配置的产线），供后台任务逐个分区处理
+     */
+    public Set<String> partitions() {
+        Set<String> partitions = new LinkedHashSet<>();
+        partitions.add(DEFAULT_LINE);
+        partitions.addAll(lines);
+        return partitions;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        Object fromPath = request.getAttribute(LINE_ATTRIBUTE);
+        String line = fromPath != null ? fromPath.toString() : request.getHeader(LINE_HEADER);
+        if (line == null || line.isBlank()) {
+            set(null);
+            return true;
+        }
+        line = line.trim();
+        if (!lines.contains(line)) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write("未知的产线：" + line);
+            return false;
+        }
+        set(line);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        clear();
+    }
+}
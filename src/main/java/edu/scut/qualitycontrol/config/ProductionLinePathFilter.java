@@ -0,0 +1,37 @@
+package edu.scut.qualitycontrol.config;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 路径形式的产线路由：/api/lines/{line}/graph/... 转发到 /api/graph/...，产线由 ProductionLineHolder 读取
+ * 便于无法自定义请求头的客户端（例如浏览器中的 EventSource）。
+ */
+@Component
+public class ProductionLinePathFilter extends OncePerRequestFilter {
+
+    private static final Pattern LINE_PATH = Pattern.compile("^/api/lines/([^/]+)(/.*)$");
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Matcher matcher = LINE_PATH.matcher(path);
+        if (!matcher.matches()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        request.setAttribute(ProductionLineHolder.LINE_ATTRIBUTE, matcher.group(1));
+        String target = "/api" + matcher.group(2);
+        String query = request.getQueryString();
+        request.getRequestDispatcher(query == null ? target : target + "?" + query).forward(request, response);
+    }
+}
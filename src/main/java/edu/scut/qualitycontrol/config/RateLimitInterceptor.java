@@ -0,0 +1,83 @@
+package edu.scut.qualitycontrol.config;
+
+import edu.scut.qualitycontrol.service.RateLimitService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 高开销接口的限流拦截器，超出预算时返回 429 和 Retry-After（秒）
+ * 客户端以请求头 X-API-Key 区分，只认可配置中登记过的 Key；没有或未登记时使用来源 IP
+ * （经过反向代理时需配置 server.forward-headers-strategy）。
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    public static final String API_KEY_HEADER = "X-API-Key";
+
+    private final RateLimitService rateLimitService;
+    private final Set<String> apiKeys;
+
+    public RateLimitInterceptor(RateLimitService rateLimitService,
+                                @Value("${qualitycontrol.rate-limit.api-keys:}") List<String> apiKeys) {
+        this.rateLimitService = rateLimitService;
+        this.apiKeys = apiKeys.stream().map(String::trim).filter(key -> !key.isEmpty()).collect(Collectors.toSet());
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        // SSE 等异步请求结束时会再次分派，此时已经准入过，响应也可能已经提交
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        long waitNanos = rateLimitService.tryAcquire(endpointClass(path), clientKey(request));
+        if (waitNanos == 0) {
+            return true;
+        }
+        long retryAfterSeconds = retryAfterSeconds(waitNanos);
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write("请求过于频繁，请在 " + retryAfterSeconds + " 秒后重试。");
+        return false;
+    }
+
+    private static String endpointClass(String path) {
+        if (path.startsWith("/api/graph/narrate")) {
+            return RateLimitService.NARRATE;
+        }
+        if (path.startsWith("/api/graph/nodes/semantic") || path.startsWith("/api/graph/defects/semantic")) {
+            return RateLimitService.SEMANTIC;
+        }
+        return RateLimitService.GRAPH_READ;
+    }
+
+    // 随意编造的 Key 不能绕过按客户端的限流，也不能占满客户端桶缓存
+    private String clientKey(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        if (apiKey != null && apiKeys.contains(apiKey.trim())) {
+            return "key:" + apiKey.trim();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    // 向上取整到秒，至少 1 秒
+    static long retryAfterSeconds(long waitNanos) {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        return Math.max(1, (waitNanos + second - 1) / second);
+    }
+}
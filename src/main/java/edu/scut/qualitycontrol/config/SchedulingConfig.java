@@ -0,0 +1,12 @@
+package edu.scut.qualitycontrol.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 开启定时任务（例如缺陷发生次数的定期刷写）
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
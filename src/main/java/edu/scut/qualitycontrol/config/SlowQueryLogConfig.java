@@ -0,0 +1,174 @@
+package edu.scut.qualitycontrol.config;
+
+import edu.scut.qualitycontrol.service.SlowQueryLog;
+import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.TransactionWork;
+import org.neo4j.driver.summary.ResultSummary;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 慢查询日志的接入点：包装 Neo4j Driver
+ * Neo4jClient、Repository（@Query 方法和 SDN 生成的语句）以及事务管理器都从同一个 Driver 开启会话，
+ * 因此只需包装 Driver -> Session / Transaction -> Result，在结果消费完毕（consume）时计时并交给 SlowQueryLog。
+ * 只包装同步 API；本项目没有使用异步 / 响应式会话。
+ */
+@Slf4j
+@Configuration
+public class SlowQueryLogConfig {
+
+    // SlowQueryLog 延迟获取：BeanPostProcessor 创建得很早，不能提前连带创建普通 Bean
+    @Bean
+    public static BeanPostProcessor slowQueryDriverPostProcessor(ObjectProvider<SlowQueryLog> slowQueryLog,
+                                                                 @Value("${qualitycontrol.slow-query.enabled:true}") boolean enabled) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!enabled || !(bean instanceof Driver)) {
+                    return bean;
+                }
+                log.info("已启用 Neo4j 慢查询日志。");
+                Driver driver = (Driver) bean;
+                return proxy(Driver.class, new Instrumented(driver, driver, slowQueryLog));
+            }
+        };
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Driver / Session / Transaction：把返回的会话、事务和结果继续包装
+     */
+    private static final class Instrumented implements InvocationHandler {
+        private final Object target;
+        private final Driver driver;
+        private final ObjectProvider<SlowQueryLog> slowQueryLog;
+
+        private Instrumented(Object target, Driver driver, ObjectProvider<SlowQueryLog> slowQueryLog) {
+            this.target = target;
+            this.driver = driver;
+            this.slowQueryLog = slowQueryLog;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (args != null) {
+                for (int i = 0; i < args.length; i++) {
+                    if (args[i] instanceof TransactionWork) {
+                        // 事务函数（readTransaction / writeTransaction）拿到的事务同样需要包装
+                        TransactionWork<?> work = (TransactionWork<?>) args[i];
+                        args[i] = (TransactionWork<Object>) tx ->
+                                work.execute(proxy(Transaction.class, new Instrumented(tx, driver, slowQueryLog)));
+                    }
+                }
+            }
+            long start = System.nanoTime();
+            Object result = SlowQueryLogConfig.invoke(target, method, args);
+            if (result instanceof Result) {
+                return proxy(Result.class, new ResultHandler((Result) result, start, driver, slowQueryLog));
+            }
+            if (result instanceof Session) {
+                return proxy(Session.class, new Instrumented(result, driver, slowQueryLog));
+            }
+            if (result instanceof Transaction) {
+                return proxy(Transaction.class, new Instrumented(result, driver, slowQueryLog));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Result：统计读取的行数，consume 时上报耗时（SDN 在映射完结果后总会调用 consume）
+     */
+    private static final class ResultHandler implements InvocationHandler {
+        private final Result target;
+        private final long start;
+        private final Driver driver;
+        private final ObjectProvider<SlowQueryLog> slowQueryLog;
+        private long rows;
+        private boolean observed;
+
+        private ResultHandler(Result target, long start, Driver driver, ObjectProvider<SlowQueryLog> slowQueryLog) {
+            this.target = target;
+            this.start = start;
+            this.driver = driver;
+            this.slowQueryLog = slowQueryLog;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                case "single": {
+                    Object record = SlowQueryLogConfig.invoke(target, method, args);
+                    rows++;
+                    return record;
+                }
+                case "list": {
+                    List<?> records = (List<?>) SlowQueryLogConfig.invoke(target, method, args);
+                    rows += records.size();
+                    return records;
+                }
+                case "stream":
+                    return ((Stream<?>) SlowQueryLogConfig.invoke(target, method, args)).peek(record -> rows++);
+                case "forEachRemaining": {
+                    @SuppressWarnings("unchecked")
+                    Consumer<Object> action = (Consumer<Object>) args[0];
+                    target.forEachRemaining(record -> {
+                        rows++;
+                        action.accept(record);
+                    });
+                    return null;
+                }
+                case "consume": {
+                    ResultSummary summary = (ResultSummary) SlowQueryLogConfig.invoke(target, method, args);
+                    if (!observed) {
+                        observed = true;
+                        observe(summary);
+                    }
+                    return summary;
+                }
+                default:
+                    return SlowQueryLogConfig.invoke(target, method, args);
+            }
+        }
+
+        private void observe(ResultSummary summary) {
+            SlowQueryLog queryLog = slowQueryLog.getIfAvailable();
+            if (queryLog == null) {
+                return;
+            }
+            try {
+                queryLog.observe(driver, summary, System.nanoTime() - start, rows);
+            } catch (RuntimeException e) {
+                // 诊断失败不能影响业务查询
+                log.debug("记录慢查询失败：{}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package edu.scut.qualitycontrol.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Web 层拦截器注册
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    private final ClientBookmarkHolder clientBookmarkHolder;
+    private final RateLimitInterceptor rateLimitInterceptor;
+    private final ProductionLineHolder productionLineHolder;
+
+    public WebMvcConfig(ClientBookmarkHolder clientBookmarkHolder, RateLimitInterceptor rateLimitInterceptor,
+                        ProductionLineHolder productionLineHolder) {
+        this.clientBookmarkHolder = clientBookmarkHolder;
+        this.rateLimitInterceptor = rateLimitInterceptor;
+        this.productionLineHolder = productionLineHolder;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // 高开销接口限流，最先执行，被拒绝的请求不做任何其他处理
+        registry.addInterceptor(rateLimitInterceptor).addPathPatterns(
+                "/api/graph/narrate", "/api/graph/narrate/**",
+                "/api/graph/nodes", "/api/graph/nodes/semantic", "/api/graph/defects/semantic",
+                "/api/graph/causal-paths", "/api/graph/causal-paths/**");
+        // 产线分区：之后的所有处理（查库、缓存、内存因果图）都落在该产线上
+        registry.addInterceptor(productionLineHolder).addPathPatterns("/api/**");
+        // 因果一致性书签：读取请求头 / 写回响应头
+        registry.addInterceptor(clientBookmarkHolder).addPathPatterns("/api/**");
+    }
+}
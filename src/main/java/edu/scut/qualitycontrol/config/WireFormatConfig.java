@@ -0,0 +1,32 @@
+package edu.scut.qualitycontrol.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * 图数据的传输格式（按 Accept 请求头协商）
+ * application/json                          默认格式
+ * application/vnd.qualitycontrol.dict+json  字典编码：节点只出现一次，关系 / 路径用节点下标表示
+ * application/cbor、application/x-jackson-smile  二进制格式，与 JSON 结构相同
+ * 二进制转换器沿用 Spring Boot 对 ObjectMapper 的定制（日期格式等），只替换底层编码。
+ */
+@Configuration
+public class WireFormatConfig {
+
+    public static final String DICTIONARY_JSON_VALUE = "application/vnd.qualitycontrol.dict+json";
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
@@ -1,25 +1,46 @@
 package edu.scut.qualitycontrol.controller;
 
-import dev.langchain4j.service.TokenStream;
+import edu.scut.qualitycontrol.config.ClientBookmarkHolder;
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.config.WireFormatConfig;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.model.dto.CachedNode;
 import edu.scut.qualitycontrol.model.dto.DefectDto;
+import edu.scut.qualitycontrol.model.dto.DictionaryGraphDto;
+import edu.scut.qualitycontrol.model.dto.DictionaryPathsDto;
 import edu.scut.qualitycontrol.model.dto.FactorDto;
 import edu.scut.qualitycontrol.model.dto.GraphDataDto;
+import edu.scut.qualitycontrol.model.dto.GraphStatsDto;
+import edu.scut.qualitycontrol.model.dto.HotDefectsDto;
+import edu.scut.qualitycontrol.model.dto.OccurrenceIngestResultDto;
+import edu.scut.qualitycontrol.model.dto.RankedPathDto;
 import edu.scut.qualitycontrol.model.dto.RelationshipDto;
+import edu.scut.qualitycontrol.model.dto.SemanticMatchDto;
 import edu.scut.qualitycontrol.model.entity.DefectType;
 import edu.scut.qualitycontrol.model.entity.InfluencingFactor;
+import edu.scut.qualitycontrol.service.CausalCycleException;
+import edu.scut.qualitycontrol.service.DefectOccurrenceService;
+import edu.scut.qualitycontrol.service.GraphHistoryService;
 import edu.scut.qualitycontrol.service.GraphManagerService;
-import edu.scut.qualitycontrol.service.GraphNarratorService;
+import edu.scut.qualitycontrol.service.GraphStatsService;
+import edu.scut.qualitycontrol.service.NarrationService;
+import edu.scut.qualitycontrol.service.SemanticIndexService;
+import org.neo4j.driver.Bookmark;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 /**
  * 用于管理知识图谱节点的 RESTful API 控制器
@@ -29,110 +50,150 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/graph")
 public class GraphController {
 
+    // 大模型降级时的响应头，值为降级原因
+    public static final String NARRATION_FALLBACK_HEADER = "X-Narration-Fallback";
+
+    // 历史查询时响应对应的图版本号
+    public static final String GRAPH_VERSION_HEADER = "X-Graph-Version";
+
+    // 语义检索一次最多返回的条数
+    private static final int MAX_SEMANTIC_K = 50;
+
     private final GraphManagerService graphManagerService;
 
-    // 注入 AI 服务
-    private final GraphNarratorService narratorService;
+    // 注入 AI 服务（带时限与模板降级）
+    private final NarrationService narrationService;
+
+    private final DefectOccurrenceService defectOccurrenceService;
+
+    private final SemanticIndexService semanticIndexService;
+
+    private final GraphStatsService graphStatsService;
+
+    private final GraphHistoryService graphHistoryService;
 
     private final ExecutorService executor = Executors.newCachedThreadPool();
 
     // 通过构造函数注入 GraphManagerService
-    public GraphController(GraphManagerService graphManagerService, GraphNarratorService narratorService) {
+    public GraphController(GraphManagerService graphManagerService, NarrationService narrationService,
+                           DefectOccurrenceService defectOccurrenceService, SemanticIndexService semanticIndexService,
+                           GraphStatsService graphStatsService, GraphHistoryService graphHistoryService) {
         this.graphManagerService = graphManagerService;
-        this.narratorService = narratorService;
+        this.narrationService = narrationService;
+        this.defectOccurrenceService = defectOccurrenceService;
+        this.semanticIndexService = semanticIndexService;
+        this.graphStatsService = graphStatsService;
+        this.graphHistoryService = graphHistoryService;
     }
 
     // agent智能品控
 
     /**
      * 接收缺陷名称，查询因果路径，并调用大模型生成通俗解释
+     * 名称不是已有的缺陷类型时（例如操作员输入的症状描述），按语义匹配最相近的缺陷类型。
+     * 大模型超时或出错时返回模板生成的解释，并在响应头 X-Narration-Fallback 中给出降级原因。
+     * @param topK 可选，只把最可能的 K 条根因链路提供给大模型
      */
     @GetMapping("/narrate")
-    public ResponseEntity<String> narrate(@RequestParam String defectType) {
-        // 检查缺陷是否存在
-        Optional<?> nodeOpt = graphManagerService.findNodeByName(defectType);
+    public ResponseEntity<String> narrate(@RequestParam String defectType, @RequestParam(required = false) Integer topK) {
+        Optional<String> resolved = resolveDefectName(defectType);
 
-        // 如果找不到节点，或者找到的不是缺陷类型(而是影响因素)，直接返回提示
-        if (nodeOpt.isEmpty() || !(nodeOpt.get() instanceof DefectType)) {
+        // 既不是已有的缺陷类型，也没有足够相近的语义匹配，直接返回提示
+        if (resolved.isEmpty()) {
             return ResponseEntity.ok("系统提示：在知识库中未找到名为“" + defectType + "”的缺陷类型，无法进行因果分析。请检查输入名称是否正确。");
         }
+        String defectName = resolved.get();
+        String notice = defectName.equals(defectType) ? "" : semanticMatchNotice(defectType, defectName) + "\n\n";
 
-        // 调用 GraphManagerService 查询所有因果路径
-        List<List<InfluencingFactor>> paths = graphManagerService.findAllCausalPathsForDefect(defectType);
+        // 调用 GraphManagerService 查询因果路径
+        Optional<NarrationService.NarrationContext> context = narrationService.buildContext(defectName, topK);
 
-        if (paths.isEmpty()) {
-            return ResponseEntity.ok("系统提示：虽然找到了缺陷“" + defectType + "”，但在库中暂时没有记录导致该缺陷的具体因果链路。");
+        if (context.isEmpty()) {
+            return ResponseEntity.ok(notice + "系统提示：虽然找到了缺陷“" + defectName + "”，但在库中暂时没有记录导致该缺陷的具体因果链路。");
         }
 
-        // 数据格式化：将 List<List<InfluencingFactor>> 转换为 AI 能读懂的自然语言文本
-        String formattedContext = formatPathsForAI(paths);
-
-        // 调用 AI 生成文本
-        String description = narratorService.analyzeDefectCauses(defectType, formattedContext);
+        // 调用 AI 生成文本（超时则降级为模板）
+        NarrationService.NarrationResult result = narrationService.narrate(context.get());
 
-        return ResponseEntity.ok(description);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (result.isFallback()) {
+            response.header(NARRATION_FALLBACK_HEADER, result.getFallbackReason());
+        }
+        return response.body(notice + result.getText());
     }
 
     /**
      * SSE 流式接口
      * 前端使用 EventSource 调用: /api/graph/narrate/stream?defectType=xxx
+     * 大模型超时或出错时发送 "FALLBACK" 事件，data 为模板生成的完整解释（应替换已收到的内容），随后发送 "END"。
      */
     @GetMapping(value = "/narrate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter streamNarrate(@RequestParam String defectType) {
+    public SseEmitter streamNarrate(@RequestParam String defectType, @RequestParam(required = false) Integer topK) {
         SseEmitter emitter = new SseEmitter(120000L);
+        // 把请求线程中的书签和产线带到异步线程，保证流式接口同样“读己之写”且查询同一分区
+        Set<Bookmark> bookmarks = ClientBookmarkHolder.current();
+        String line = ProductionLineHolder.current();
 
         executor.execute(() -> {
+            ProductionLineHolder.set(line);
+            ClientBookmarkHolder.set(bookmarks);
             try {
-                // --- 步骤 A: 查库 ---
-                Optional<?> nodeOpt = graphManagerService.findNodeByName(defectType);
+                // --- 步骤 A: 查库（找不到同名缺陷时按语义匹配） ---
+                Optional<String> resolved = resolveDefectName(defectType);
 
                 // 如果找不到节点，或者找到的不是缺陷类型
-                if (nodeOpt.isEmpty() || !(nodeOpt.get() instanceof DefectType)) {
+                if (resolved.isEmpty()) {
                     String message = "系统提示：未找到缺陷类型“" + defectType + "”。";
                     sendSseMessage(emitter, message); // 发送普通消息
                     completeSseStream(emitter);       // 发送 END 信号并关闭
                     return; // 结束执行
                 }
+                String defectName = resolved.get();
+                if (!defectName.equals(defectType)) {
+                    sendSseMessage(emitter, semanticMatchNotice(defectType, defectName) + "\\n\\n");
+                }
 
                 // 如果找不到路径
-                List<List<InfluencingFactor>> paths = graphManagerService.findAllCausalPathsForDefect(defectType);
-                if (paths.isEmpty()) {
-                    String message = "系统提示：找到了缺陷“" + defectType + "”，但在库中未发现导致该缺陷的因果路径。";
+                Optional<NarrationService.NarrationContext> context = narrationService.buildContext(defectName, topK);
+                if (context.isEmpty()) {
+                    String message = "系统提示：找到了缺陷“" + defectName + "”，但在库中未发现导致该缺陷的因果路径。";
                     sendSseMessage(emitter, message); // 发送普通消息
                     completeSseStream(emitter);       // 发送 END 信号并关闭
                     return; // 结束执行
                 }
 
-                String formattedContext = formatPathsForAI(paths);
-                TokenStream tokenStream = narratorService.streamAnalyzeDefectCauses(defectType, formattedContext);
-
-                tokenStream
-                        .onNext(token -> {
-                            try {
-                                String processedToken = token.replace("\n", "\\n");
-                                // 发送 "message" 数据事件
-                                sendSseMessage(emitter, processedToken);
-                            } catch (Exception e) {
-                                emitter.completeWithError(e);
-                            }
-                        })
-                        .onComplete(token -> {
-                            // 发送 "END" 成功结束事件
-                            completeSseStream(emitter);
-                        })
-                        .onError(error -> {
-                            try {
-                                // 发送 "ERROR" 错误事件
-                                sendSseError(emitter, error.getMessage());
-                            } catch (Exception e) {
-                                // 忽略
-                            }
-                        })
-                        .start();
+                narrationService.stream(context.get(), new NarrationService.NarrationListener() {
+                    @Override
+                    public void onToken(String token) {
+                        try {
+                            String processedToken = token.replace("\n", "\\n");
+                            // 发送 "message" 数据事件
+                            sendSseMessage(emitter, processedToken);
+                        } catch (Exception e) {
+                            emitter.completeWithError(e);
+                        }
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        // 发送 "END" 成功结束事件
+                        completeSseStream(emitter);
+                    }
+
+                    @Override
+                    public void onFallback(NarrationService.NarrationResult fallback) {
+                        // 发送 "FALLBACK" 模板解释，然后正常结束
+                        sendSseFallback(emitter, fallback.getText().replace("\n", "\\n"));
+                        completeSseStream(emitter);
+                    }
+                });
 
             } catch (Exception e) {
                 // 捕获顶层异常
                 sendSseError(emitter, "服务器内部错误: " + e.getMessage());
+            } finally {
+                ClientBookmarkHolder.clear();
+                ProductionLineHolder.clear();
             }
         });
 
@@ -153,6 +214,20 @@ public class GraphController {
         }
     }
 
+    /**
+     * 发送降级的模板解释 (name: "FALLBACK")
+     */
+    private void sendSseFallback(SseEmitter emitter, String data) {
+        try {
+            SseEmitter.SseEventBuilder event = SseEmitter.event()
+                    .name("FALLBACK")
+                    .data(data);
+            emitter.send(event);
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
     /**
      * 发送成功结束信号 (name: "END")
      */
@@ -184,44 +259,56 @@ public class GraphController {
     }
 
     /**
-     * 辅助方法：将路径对象列表转换为字符串描述
+     * 输入恰好是缺陷类型名称时原样返回（走节点缓存），否则返回语义上最相近的缺陷类型
      */
-    private String formatPathsForAI(List<List<InfluencingFactor>> paths) {
-        StringBuilder sb = new StringBuilder();
-        int index = 1;
-        for (List<InfluencingFactor> path : paths) {
-            sb.append("路径 ").append(index++).append("：");
-
-            // 将路径中的节点用 "->" 连接，并附带标准信息
-            String pathStr = path.stream()
-                    .map(factor -> {
-                        String info = factor.getName();
-                        // 如果有标准或描述，拼接到名字后面，帮助AI理解
-                        if (factor.getStandard() != null && !factor.getStandard().isEmpty()) {
-                            info += "(标准:" + factor.getStandard() + ")";
-                        }
-                        if (factor.getDescription() != null && !factor.getDescription().isEmpty()) {
-                            info += "(备注:" + factor.getDescription() + ")";
-                        }
-                        return info;
-                    })
-                    .collect(Collectors.joining(" -> "));
+    private Optional<String> resolveDefectName(String input) {
+        Optional<CachedNode> nodeOpt = graphManagerService.lookupNode(input);
+        if (nodeOpt.isPresent() && nodeOpt.get().isDefect()) {
+            return Optional.of(input);
+        }
+        return semanticIndexService.findBestDefect(input);
+    }
+
+    private String semanticMatchNotice(String input, String defectName) {
+        return "系统提示：知识库中没有名为“" + input + "”的缺陷类型，已按语义匹配为“" + defectName + "”。";
+    }
 
-            sb.append(pathStr).append("\n");
+    /**
+     * 在 asOf / version 对应的历史快照上执行查询，不访问当前图谱
+     */
+    private ResponseEntity<?> atSnapshot(String asOf, Long version, Function<CausalGraph, ResponseEntity<?>> query) {
+        Optional<CausalGraph> graph;
+        try {
+            graph = graphHistoryService.resolve(asOf, version);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("asOf 格式错误，应为 ISO-8601 日期或时间，例如 2024-05-01 或 2024-05-01T08:00:00+08:00");
         }
-        return sb.toString();
+        return graph.map(query)
+                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND).body("该时间点或版本没有可用的历史快照"));
     }
 
+    private static ResponseEntity<?> withVersion(CausalGraph graph, Object body) {
+        return ResponseEntity.ok().header(GRAPH_VERSION_HEADER, String.valueOf(graph.getVersion())).body(body);
+    }
 
     // --- 节点查询 (Read) ---
 
     /**
      * 根据名称查找单个节点（可能是影响因素或缺陷类型）。
      * @param name 要查询的节点名称
+     * @param asOf 可选，按历史时间点查询（ISO-8601 日期或时间），此时不返回关系
+     * @param version 可选，按历史版本号查询，优先于 asOf
      * @return 如果找到节点则返回节点信息，否则返回 404 Not Found。
      */
     @GetMapping("/node")
-    public ResponseEntity<?> findNodeByName(@RequestParam String name) {
+    public ResponseEntity<?> findNodeByName(@RequestParam String name,
+                                            @RequestParam(required = false) String asOf,
+                                            @RequestParam(required = false) Long version) {
+        if (asOf != null || version != null) {
+            return atSnapshot(asOf, version, graph -> graphManagerService.findNodeInSnapshot(graph, name)
+                    .<ResponseEntity<?>>map(node -> withVersion(graph, node))
+                    .orElse(ResponseEntity.notFound().build()));
+        }
         Optional<?> nodeOpt = graphManagerService.findNodeByName(name);
         return nodeOpt.map(ResponseEntity::ok) // 如果存在，返回 200 OK 和节点数据
                 .orElse(ResponseEntity.notFound().build()); // 如果不存在，返回 404
@@ -238,6 +325,40 @@ public class GraphController {
         return ResponseEntity.ok(nodes);
     }
 
+    /**
+     * 语义检索：用自由文本（症状、现象描述）查找最相近的节点。
+     * @param q 查询文本
+     * @param k 返回的节点数量，限制在 1 ~ 50 之间
+     * @return 按相似度从高到低排列的节点；索引尚未就绪时返回 503
+     */
+    @GetMapping("/nodes/semantic")
+    public ResponseEntity<?> searchNodesSemantic(@RequestParam String q, @RequestParam(defaultValue = "5") int k) {
+        if (!semanticIndexService.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("语义索引正在构建中，请稍后重试。");
+        }
+        List<SemanticMatchDto> matches = semanticIndexService.search(q, semanticK(k));
+        return ResponseEntity.ok(matches);
+    }
+
+    /**
+     * 把自由文本映射为最相近的缺陷类型候选。
+     * @param q 查询文本
+     * @param k 返回的缺陷数量，限制在 1 ~ 50 之间
+     * @return 按相似度从高到低排列的缺陷类型；索引尚未就绪时返回 503
+     */
+    @GetMapping("/defects/semantic")
+    public ResponseEntity<?> searchDefectsSemantic(@RequestParam String q, @RequestParam(defaultValue = "5") int k) {
+        if (!semanticIndexService.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("语义索引正在构建中，请稍后重试。");
+        }
+        List<SemanticMatchDto> matches = semanticIndexService.findDefects(q, semanticK(k));
+        return ResponseEntity.ok(matches);
+    }
+
+    private static int semanticK(int k) {
+        return Math.max(1, Math.min(k, MAX_SEMANTIC_K));
+    }
+
     /**
      * 获取整个知识图谱的数据（所有节点和所有关系）。
      * @return 包含节点和关系列表的 GraphDataDto 对象
@@ -248,6 +369,15 @@ public class GraphController {
         return ResponseEntity.ok(graphData);
     }
 
+    /**
+     * 同 /nodes，字典编码格式（Accept: application/vnd.qualitycontrol.dict+json）。
+     * @return 节点数组 + 以节点下标表示的关系
+     */
+    @GetMapping(value = "/nodes", produces = WireFormatConfig.DICTIONARY_JSON_VALUE)
+    public ResponseEntity<DictionaryGraphDto> getFullGraphDictionary() {
+        return ResponseEntity.ok(DictionaryGraphDto.encode(graphManagerService.getFullGraphData()));
+    }
+
     // --- 关系查询 (Read) ---
 
     /**
@@ -264,14 +394,89 @@ public class GraphController {
     /**
      * 查找导致指定缺陷类型的所有【因果路径】。
      * @param defectName 缺陷类型的名称
+     * @param asOf 可选，按历史时间点查询（ISO-8601 日期或时间），例如某批次生产当天：2024-05-01
+     * @param version 可选，按历史版本号查询，优先于 asOf
      * @return 一个路径列表，每个路径本身是一个按顺序排列的节点列表。
      */
     @GetMapping("/causal-paths")
-    public ResponseEntity<List<List<InfluencingFactor>>> findCausalPathsForDefect(@RequestParam String defectName) {
+    public ResponseEntity<?> findCausalPathsForDefect(@RequestParam String defectName,
+                                                      @RequestParam(required = false) String asOf,
+                                                      @RequestParam(required = false) Long version) {
+        if (asOf != null || version != null) {
+            return atSnapshot(asOf, version,
+                    graph -> withVersion(graph, graphManagerService.findAllCausalPathsInSnapshot(graph, defectName)));
+        }
         List<List<InfluencingFactor>> paths = graphManagerService.findAllCausalPathsForDefect(defectName);
         return ResponseEntity.ok(paths);
     }
 
+    /**
+     * 同 /causal-paths，字典编码格式（Accept: application/vnd.qualitycontrol.dict+json）。
+     * @param defectName 缺陷类型的名称
+     * @return 影响因素数组 + 每条路径的下标数组
+     */
+    @GetMapping(value = "/causal-paths", produces = WireFormatConfig.DICTIONARY_JSON_VALUE)
+    public ResponseEntity<?> findCausalPathsForDefectDictionary(@RequestParam String defectName,
+                                                                @RequestParam(required = false) String asOf,
+                                                                @RequestParam(required = false) Long version) {
+        if (asOf != null || version != null) {
+            return atSnapshot(asOf, version, graph -> withVersion(graph,
+                    DictionaryPathsDto.encode(graphManagerService.findAllCausalPathsInSnapshot(graph, defectName))));
+        }
+        return ResponseEntity.ok(DictionaryPathsDto.encode(graphManagerService.findAllCausalPathsForDefect(defectName)));
+    }
+
+    /**
+     * 查找导致指定缺陷类型的最可能的 K 条根因链路。
+     * @param defectName 缺陷类型的名称
+     * @param k 返回的路径数量
+     * @return 按可能性（各段 weight 的乘积）从高到低排列的路径列表
+     */
+    @GetMapping("/causal-paths/top")
+    public ResponseEntity<List<RankedPathDto>> findTopCausalPathsForDefect(@RequestParam String defectName,
+                                                                           @RequestParam(defaultValue = "5") int k) {
+        List<RankedPathDto> paths = graphManagerService.findTopCausalPathsForDefect(defectName, k);
+        return ResponseEntity.ok(paths);
+    }
+
+    /**
+     * 获取指定缺陷类型的因果子图（缺陷及其全部上游影响因素），附带服务端计算的分层布局坐标。
+     * @param defectName 缺陷类型的名称
+     * @return 子图数据，缺陷不存在时返回 404 Not Found。
+     */
+    @GetMapping("/causal-paths/layout")
+    public ResponseEntity<GraphDataDto> getCausalSubgraph(@RequestParam String defectName) {
+        return graphManagerService.getCausalSubgraph(defectName)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 图谱统计：各标签节点数、关系数、出入度分布、根因数、最大因果深度、各缺陷类型的根因路径数。
+     * 统计量随每次写操作增量维护，这里直接返回缓存结果。
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<GraphStatsDto> getGraphStats() {
+        return ResponseEntity.ok(graphStatsService.stats());
+    }
+
+    /**
+     * 基于当前内存图全量重算统计量
+     */
+    @PostMapping("/stats/recompute")
+    public ResponseEntity<GraphStatsDto> recomputeGraphStats() {
+        return ResponseEntity.ok(graphStatsService.recompute());
+    }
+
+    /**
+     * 审计：列出影响因素之间已经存在的所有环路。
+     * @return 环路列表，每个环路形如 [a, b, ..., a]
+     */
+    @GetMapping("/cycles")
+    public ResponseEntity<List<List<String>>> findCycles() {
+        return ResponseEntity.ok(graphManagerService.findExistingCycles());
+    }
+
     /**
      * 查找由某个影响因素直接导致的所有缺陷类型。
      * @param factorName 影响因素的名称
@@ -283,6 +488,30 @@ public class GraphController {
         return ResponseEntity.ok(defects);
     }
 
+    // --- 缺陷发生统计 ---
+
+    /**
+     * 批量上报缺陷检测事件，请求体：[{"defectType": "镀层发黑", "count": 1}, ...]
+     */
+    @PostMapping(value = "/defects/occurrences", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> ingestOccurrences(InputStream body) {
+        try {
+            OccurrenceIngestResultDto result = defectOccurrenceService.ingest(body);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.badRequest().body("上报数据格式错误: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询最近 1 分钟 / 1 小时 / 1 个班次内发生最多的缺陷类型
+     * @param limit 每个窗口返回的数量
+     */
+    @GetMapping("/defects/hot")
+    public ResponseEntity<HotDefectsDto> findHotDefects(@RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(defectOccurrenceService.hotDefects(Math.max(1, limit)));
+    }
+
     // --- 节点创建与更新 (Create/Update) ---
 
     /**
@@ -316,13 +545,25 @@ public class GraphController {
 
     /**
      * 在两个已存在的节点之间创建“导致”关系。
+     * 可选的 weight 表示该关系的发生概率 (0, 1]，关系已存在时会更新 weight。
      */
     @PostMapping("/relationship")
     public ResponseEntity<String> createRelationship(@RequestBody RelationshipDto relationshipDto) {
-        boolean success = graphManagerService.createRelationship(
-                relationshipDto.getStartNodeName(),
-                relationshipDto.getEndNodeName()
-        );
+        Double weight = relationshipDto.getWeight();
+        if (weight != null && !(weight > 0 && weight <= 1)) {
+            return ResponseEntity.badRequest().body("关系权重 weight 必须在 (0, 1] 区间内。");
+        }
+        boolean success;
+        try {
+            success = graphManagerService.createRelationship(
+                    relationshipDto.getStartNodeName(),
+                    relationshipDto.getEndNodeName(),
+                    weight
+            );
+        } catch (CausalCycleException e) {
+            return ResponseEntity.status(409).body("'" + relationshipDto.getStartNodeName() + " -> "
+                    + relationshipDto.getEndNodeName() + "' 关系创建失败，会形成环路：" + String.join(" -> ", e.getCycle()));
+        }
         if (success) {
             return ResponseEntity.ok("'" + relationshipDto.getStartNodeName() + " -> "
                     + relationshipDto.getEndNodeName() + "' 关系创建成功。");
@@ -1,20 +1,51 @@
 package edu.scut.qualitycontrol.controller;
 
+import edu.scut.qualitycontrol.model.dto.ImportReportDto;
+import edu.scut.qualitycontrol.model.dto.RateLimitDto;
+import edu.scut.qualitycontrol.model.dto.RootIndexReportDto;
+import edu.scut.qualitycontrol.model.dto.SlowQueryDto;
 import edu.scut.qualitycontrol.service.DatabaseInitializationService;
+import edu.scut.qualitycontrol.service.EdgeImportService;
+import edu.scut.qualitycontrol.service.RateLimitService;
+import edu.scut.qualitycontrol.service.RootIndexService;
+import edu.scut.qualitycontrol.service.SlowQueryLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
 @RestController
 @RequestMapping("/api/admin")
 public class InitializationController {
 
     private final DatabaseInitializationService initializationService;
+    private final EdgeImportService edgeImportService;
+    private final RateLimitService rateLimitService;
+    private final SlowQueryLog slowQueryLog;
+    private final RootIndexService rootIndexService;
 
     // Spring 自动注入 DatabaseInitializationService
-    public InitializationController(DatabaseInitializationService initializationService) {
+    public InitializationController(DatabaseInitializationService initializationService, EdgeImportService edgeImportService,
+                                    RateLimitService rateLimitService, SlowQueryLog slowQueryLog,
+                                    RootIndexService rootIndexService) {
         this.initializationService = initializationService;
+        this.edgeImportService = edgeImportService;
+        this.rateLimitService = rateLimitService;
+        this.slowQueryLog = slowQueryLog;
+        this.rootIndexService = rootIndexService;
     }
 
     /**
@@ -31,4 +62,111 @@ public class InitializationController {
             return ResponseEntity.status(500).body("数据库初始化失败: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 流式导入大文件 (NDJSON / CSV)。
+     * 文件直接作为请求体上传（不使用 multipart，避免容器先落盘到临时文件），例如：
+     * curl -X POST -H "Content-Type: application/x-ndjson" -T edges.ndjson http://host/api/admin/import
+     */
+    @PostMapping(value = "/import", consumes = {EdgeImportService.NDJSON_VALUE, "text/csv"})
+    public ResponseEntity<?> importEdges(HttpServletRequest request) {
+        // 按媒体类型比较（忽略大小写和 charset 等参数）
+        EdgeImportService.Format format = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType("text/csv"))
+                ? EdgeImportService.Format.CSV
+                : EdgeImportService.Format.NDJSON;
+        try {
+            ImportReportDto report = edgeImportService.importEdges(request.getInputStream(), format);
+            return ResponseEntity.ok(report);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(500).body("导入被中断。");
+        } catch (Exception e) {
+            log.error("导入失败", e);
+            return ResponseEntity.status(500).body("导入失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查看各类接口的限流配置，以及累计放行 / 拒绝的请求数。
+     */
+    @GetMapping("/rate-limits")
+    public ResponseEntity<Map<String, RateLimitDto>> getRateLimits() {
+        return ResponseEntity.ok(rateLimitService.getLimits());
+    }
+
+    /**
+     * 运行时修改某类接口（narrate / semantic / graph-read）的限流配置，立即生效。
+     */
+    @PutMapping("/rate-limits/{endpointClass}")
+    public ResponseEntity<String> updateRateLimits(@PathVariable String endpointClass, @RequestBody RateLimitDto rateLimitDto) {
+        if (rateLimitService.updateLimits(endpointClass, rateLimitDto)) {
+            return ResponseEntity.ok("限流配置已更新。");
+        }
+        return ResponseEntity.badRequest().body("未知的接口类别：" + endpointClass);
+    }
+
+    /**
+     * 整体开启或关闭限流。
+     */
+    @PutMapping("/rate-limits")
+    public ResponseEntity<String> setRateLimitEnabled(@RequestParam boolean enabled) {
+        rateLimitService.setEnabled(enabled);
+        return ResponseEntity.ok(enabled ? "限流已开启。" : "限流已关闭。");
+    }
+
+    /**
+     * 最近的 Neo4j 慢查询（最新的在前），含抽样采集的执行计划。
+     */
+    @GetMapping("/slow-queries")
+    public ResponseEntity<List<SlowQueryDto>> getSlowQueries(@RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(slowQueryLog.recent(Math.max(1, limit)));
+    }
+
+    /**
+     * 运行时修改慢查询阈值（毫秒）和执行计划的抽样比例（0 ~ 1），立即生效。
+     */
+    @PutMapping("/slow-queries")
+    public ResponseEntity<String> updateSlowQueryLog(@RequestParam(required = false) Long thresholdMs,
+                                                     @RequestParam(required = false) Double profileSampleRate) {
+        slowQueryLog.update(thresholdMs, profileSampleRate);
+        return ResponseEntity.ok("慢查询阈值 " + slowQueryLog.getThresholdMillis() + " ms，执行计划抽样比例 "
+                + slowQueryLog.getProfileSampleRate() + "。");
+    }
+
+    /**
+     * 清空慢查询记录。
+     */
+    @DeleteMapping("/slow-queries")
+    public ResponseEntity<String> clearSlowQueries() {
+        slowQueryLog.clear();
+        return ResponseEntity.ok("慢查询记录已清空。");
+    }
+
+    /**
+     * 检查当前产线的根因标签 / depth 属性是否与图结构一致（只读）。
+     */
+    @GetMapping("/root-index")
+    public ResponseEntity<?> checkRootIndex() {
+        try {
+            return ResponseEntity.ok(rootIndexService.check());
+        } catch (Exception e) {
+            log.error("根因索引一致性检查失败", e);
+            return ResponseEntity.status(500).body("一致性检查失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按当前数据修复当前产线的根因标签 / depth 属性，返回修复前的检查结果。
+     */
+    @PostMapping("/root-index/repair")
+    public ResponseEntity<?> repairRootIndex() {
+        try {
+            RootIndexReportDto report = rootIndexService.repair();
+            return ResponseEntity.ok(report);
+        } catch (Exception e) {
+            log.error("根因索引修复失败", e);
+            return ResponseEntity.status(500).body("修复失败: " + e.getMessage());
+        }
+    }
+}
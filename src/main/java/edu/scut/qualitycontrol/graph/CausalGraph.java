@@ -0,0 +1,158 @@
+package edu.scut.qualitycontrol.graph;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 因果图的内存快照（不可变）
+ * 每次修改返回一个新快照，只复制被修改的邻接表以及持久化映射中的一条路径，其余部分与旧快照共享，
+ * 读线程无需加锁即可安全遍历，同时保留多个历史版本的内存开销也很小。
+ */
+public final class CausalGraph {
+
+    private final long version;
+    private final PersistentMap<String, GraphNode> nodes;
+    // source -> (target -> weight)，weight 可能为 null
+    private final PersistentMap<String, Map<String, Double>> outgoing;
+    // target -> sources
+    private final PersistentMap<String, Set<String>> incoming;
+    private final int edgeCount;
+
+    private CausalGraph(long version, PersistentMap<String, GraphNode> nodes,
+                        PersistentMap<String, Map<String, Double>> outgoing, PersistentMap<String, Set<String>> incoming,
+                        int edgeCount) {
+        this.version = version;
+        this.nodes = nodes;
+        this.outgoing = outgoing;
+        this.incoming = incoming;
+        this.edgeCount = edgeCount;
+    }
+
+    public static CausalGraph of(long version, Collection<GraphNode> nodes, Collection<GraphEdge> edges) {
+        PersistentMap<String, GraphNode> nodeMap = PersistentMap.empty();
+        for (GraphNode node : nodes) {
+            nodeMap = nodeMap.plus(node.getName(), node);
+        }
+        Map<String, Map<String, Double>> outgoing = new HashMap<>();
+        Map<String, Set<String>> incoming = new HashMap<>();
+        for (GraphEdge edge : edges) {
+            outgoing.computeIfAbsent(edge.getSource(), key -> new HashMap<>()).put(edge.getTarget(), edge.getWeight());
+            incoming.computeIfAbsent(edge.getTarget(), key -> new HashSet<>()).add(edge.getSource());
+        }
+        PersistentMap<String, Map<String, Double>> outgoingMap = PersistentMap.empty();
+        int edgeCount = 0;
+        for (Map.Entry<String, Map<String, Double>> entry : outgoing.entrySet()) {
+            outgoingMap = outgoingMap.plus(entry.getKey(), entry.getValue());
+            edgeCount += entry.getValue().size();
+        }
+        PersistentMap<String, Set<String>> incomingMap = PersistentMap.empty();
+        for (Map.Entry<String, Set<String>> entry : incoming.entrySet()) {
+            incomingMap = incomingMap.plus(entry.getKey(), entry.getValue());
+        }
+        return new CausalGraph(version, nodeMap, outgoingMap, incomingMap, edgeCount);
+    }
+
+    // --- 查询 ---
+
+    public long getVersion() { return version; }
+
+    public GraphNode node(String name) { return nodes.get(name); }
+
+    public Collection<GraphNode> nodes() { return nodes.values(); }
+
+    public Set<String> successors(String name) {
+        Map<String, Double> targets = outgoing.get(name);
+        return targets == null ? Collections.emptySet() : Collections.unmodifiableSet(targets.keySet());
+    }
+
+    public Set<String> predecessors(String name) {
+        Set<String> sources = incoming.get(name);
+        return sources == null ? Collections.emptySet() : Collections.unmodifiableSet(sources);
+    }
+
+    public boolean hasEdge(String source, String target) {
+        Map<String, Double> targets = outgoing.get(source);
+        return targets != null && targets.containsKey(target);
+    }
+
+    public Double weight(String source, String target) {
+        Map<String, Double> targets = outgoing.get(source);
+        return targets == null ? null : targets.get(target);
+    }
+
+    /**
+     * 根因：没有任何影响因素指向它的影响因素
+     */
+    public boolean isRoot(String name) {
+        GraphNode node = nodes.get(name);
+        return node != null && node.isFactor() && predecessors(name).isEmpty();
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    // --- 修改（返回新快照） ---
+
+    /**
+     * 内容相同、版本号不同的快照（从历史记录回放时使用）
+     */
+    public CausalGraph atVersion(long newVersion) {
+        return newVersion == version ? this : new CausalGraph(newVersion, nodes, outgoing, incoming, edgeCount);
+    }
+
+    public CausalGraph withNode(GraphNode node) {
+        return new CausalGraph(version + 1, nodes.plus(node.getName(), node), outgoing, incoming, edgeCount);
+    }
+
+    public CausalGraph withoutNode(String name) {
+        if (!nodes.containsKey(name)) {
+            return this;
+        }
+        PersistentMap<String, Map<String, Double>> newOutgoing = outgoing;
+        PersistentMap<String, Set<String>> newIncoming = incoming;
+        for (String target : successors(name)) {
+            Set<String> sources = new HashSet<>(newIncoming.get(target));
+            sources.remove(name);
+            newIncoming = newIncoming.plus(target, sources);
+        }
+        for (String source : predecessors(name)) {
+            Map<String, Double> targets = new HashMap<>(newOutgoing.get(source));
+            targets.remove(name);
+            newOutgoing = newOutgoing.plus(source, targets);
+        }
+        // 自环同时出现在前驱和后继中，只计一次
+        int removed = successors(name).size() + predecessors(name).size() - (hasEdge(name, name) ? 1 : 0);
+        return new CausalGraph(version + 1, nodes.minus(name), newOutgoing.minus(name), newIncoming.minus(name),
+                edgeCount - removed);
+    }
+
+    public CausalGraph withEdge(String source, String target, Double weight) {
+        Map<String, Double> targets = new HashMap<>(outgoing.getOrDefault(source, Collections.emptyMap()));
+        boolean exists = targets.containsKey(target);
+        if (exists && (weight == null || weight.equals(targets.get(target)))) {
+            return this;
+        }
+        targets.put(target, weight != null ? weight : targets.get(target));
+        Set<String> sources = new HashSet<>(incoming.getOrDefault(target, Collections.emptySet()));
+        sources.add(source);
+        return new CausalGraph(version + 1, nodes, outgoing.plus(source, targets), incoming.plus(target, sources),
+                exists ? edgeCount : edgeCount + 1);
+    }
+
+    public CausalGraph withoutEdge(String source, String target) {
+        if (!hasEdge(source, target)) {
+            return this;
+        }
+        Map<String, Double> targets = new HashMap<>(outgoing.get(source));
+        targets.remove(target);
+        Set<String> sources = new HashSet<>(incoming.get(target));
+        sources.remove(source);
+        return new CausalGraph(version + 1, nodes, outgoing.plus(source, targets), incoming.plus(target, sources),
+                edgeCount - 1);
+    }
+}
@@ -0,0 +1,55 @@
+package edu.scut.qualitycontrol.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 在内存因果图上枚举从根因到指定缺陷的全部路径
+ * 语义与 InfluencingFactorRepository.findCausalPathNodesForDefect 一致：路径从根因开始，
+ * 只包含影响因素（不含缺陷本身）；同一条路径上不重复经过同一节点。
+ */
+public final class CausalPaths {
+
+    private CausalPaths() {
+    }
+
+    /**
+     * @return 每条路径为按因果顺序排列的影响因素名称；缺陷不存在时返回空列表
+     */
+    public static List<List<String>> enumerate(CausalGraph graph, String defectName) {
+        GraphNode defect = graph.node(defectName);
+        if (defect == null || !defect.isDefect()) {
+            return Collections.emptyList();
+        }
+        List<List<String>> paths = new ArrayList<>();
+        Deque<String> path = new ArrayDeque<>();
+        Set<String> onPath = new HashSet<>();
+        for (String cause : graph.predecessors(defectName)) {
+            walkBack(graph, cause, path, onPath, paths);
+        }
+        return paths;
+    }
+
+    // 沿前驱方向深度优先，到达根因时输出一条路径（path 头部是离根因最近的节点）
+    private static void walkBack(CausalGraph graph, String name, Deque<String> path, Set<String> onPath,
+                                 List<List<String>> paths) {
+        if (!onPath.add(name)) {
+            return;
+        }
+        path.addFirst(name);
+        if (graph.isRoot(name)) {
+            paths.add(new ArrayList<>(path));
+        } else {
+            for (String previous : graph.predecessors(name)) {
+                walkBack(graph, previous, path, onPath, paths);
+            }
+        }
+        path.removeFirst();
+        onPath.remove(name);
+    }
+}
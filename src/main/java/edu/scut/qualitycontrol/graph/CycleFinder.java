@@ -0,0 +1,128 @@
+package edu.scut.qualitycontrol.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 全图环路审计：用 Kosaraju 算法求影响因素之间的强连通分量，每个分量给出一条具体环路
+ * 使用显式栈实现，链路很深时也不会栈溢出。
+ */
+public final class CycleFinder {
+
+    private CycleFinder() {
+    }
+
+    /**
+     * @return 每个环路形如 [a, b, ..., a]
+     */
+    public static List<List<String>> findCycles(CausalGraph graph) {
+        List<List<String>> cycles = new ArrayList<>();
+        for (Set<String> component : stronglyConnectedComponents(graph)) {
+            String start = component.iterator().next();
+            if (component.size() > 1 || graph.hasEdge(start, start)) {
+                cycles.add(cycleThrough(graph, start, component));
+            }
+        }
+        return cycles;
+    }
+
+    private static List<Set<String>> stronglyConnectedComponents(CausalGraph graph) {
+        // 第一遍：按完成时间排序
+        List<String> finished = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        for (GraphNode node : graph.nodes()) {
+            if (!node.isFactor() || visited.contains(node.getName())) {
+                continue;
+            }
+            Deque<String> path = new ArrayDeque<>();
+            Deque<Iterator<String>> iterators = new ArrayDeque<>();
+            visited.add(node.getName());
+            path.push(node.getName());
+            iterators.push(factorSuccessors(graph, node.getName()).iterator());
+            while (!path.isEmpty()) {
+                Iterator<String> iterator = iterators.peek();
+                if (iterator.hasNext()) {
+                    String next = iterator.next();
+                    if (visited.add(next)) {
+                        path.push(next);
+                        iterators.push(factorSuccessors(graph, next).iterator());
+                    }
+                } else {
+                    finished.add(path.pop());
+                    iterators.pop();
+                }
+            }
+        }
+
+        // 第二遍：在反向图上按完成时间逆序收集分量
+        List<Set<String>> components = new ArrayList<>();
+        Set<String> assigned = new HashSet<>();
+        for (int i = finished.size() - 1; i >= 0; i--) {
+            String root = finished.get(i);
+            if (!assigned.add(root)) {
+                continue;
+            }
+            Set<String> component = new HashSet<>();
+            Deque<String> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                String node = stack.pop();
+                component.add(node);
+                for (String previous : graph.predecessors(node)) {
+                    if (assigned.add(previous)) {
+                        stack.push(previous);
+                    }
+                }
+            }
+            components.add(component);
+        }
+        return components;
+    }
+
+    private static Set<String> factorSuccessors(CausalGraph graph, String name) {
+        Set<String> result = new HashSet<>();
+        for (String next : graph.successors(name)) {
+            GraphNode node = graph.node(next);
+            if (node != null && node.isFactor()) {
+                result.add(next);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在分量内部做 BFS，找到一条回到起点的最短环路
+     */
+    private static List<String> cycleThrough(CausalGraph graph, String start, Set<String> component) {
+        Map<String, String> parent = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            String node = queue.poll();
+            for (String next : graph.successors(node)) {
+                if (next.equals(start)) {
+                    List<String> cycle = new ArrayList<>();
+                    cycle.add(start);
+                    for (String step = node; step != null; step = parent.get(step)) {
+                        cycle.add(step);
+                    }
+                    Collections.reverse(cycle); // start ... node start
+                    return cycle;
+                }
+                if (component.contains(next) && !parent.containsKey(next) && !next.equals(start)) {
+                    parent.put(next, node);
+                    queue.add(next);
+                }
+            }
+        }
+        return Collections.singletonList(start);
+    }
+}
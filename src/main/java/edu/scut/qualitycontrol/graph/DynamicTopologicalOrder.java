@@ -0,0 +1,167 @@
+package edu.scut.qualitycontrol.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 动态拓扑序 (Pearce-Kelly 算法)，用于在线检测插入边是否成环
+ * 维护所有节点的一个拓扑序 ord。插入 x -> y 时：
+ * 1. 若 ord[x] < ord[y]，顺序已经满足，O(1) 完成；
+ * 2. 否则只在 [ord[y], ord[x]] 区间内做前向 / 后向搜索，若前向搜索从 y 到达 x 则成环，
+ *    否则把两次搜索到的节点在该区间内重新排序。
+ * 代价只与受影响区域的大小成正比，而不是整张图。
+ * 非线程安全，由调用方加锁。
+ */
+public final class DynamicTopologicalOrder {
+
+    private final Map<String, Integer> ord = new HashMap<>();
+    private final Map<String, Set<String>> outgoing = new HashMap<>();
+    private final Map<String, Set<String>> incoming = new HashMap<>();
+    private int nextOrd = 0;
+
+    public boolean containsEdge(String source, String target) {
+        return outgoing.getOrDefault(source, Collections.emptySet()).contains(target);
+    }
+
+    public void addNode(String name) {
+        if (!ord.containsKey(name)) {
+            // 新节点没有任何边，放在最后即可
+            ord.put(name, nextOrd++);
+        }
+    }
+
+    /**
+     * 尝试插入一条边。
+     * @return 成环时返回环路 [source, target, ..., source]，此时不做任何修改；否则插入成功，返回 empty
+     */
+    public Optional<List<String>> addEdge(String source, String target) {
+        if (source.equals(target)) {
+            return Optional.of(List.of(source, source));
+        }
+        addNode(source);
+        addNode(target);
+        if (containsEdge(source, target)) {
+            return Optional.empty();
+        }
+
+        int lowerBound = ord.get(target);
+        int upperBound = ord.get(source);
+        if (lowerBound < upperBound) {
+            // 前向搜索：从 target 出发，只访问 ord <= ord[source] 的节点
+            Map<String, String> parent = new HashMap<>();
+            List<String> forward = new ArrayList<>();
+            if (searchForward(target, source, upperBound, parent, forward)) {
+                List<String> cycle = new ArrayList<>();
+                for (String step = source; step != null; step = parent.get(step)) {
+                    cycle.add(step);
+                }
+                Collections.reverse(cycle); // target ... source
+                cycle.add(0, source);       // source -> target ... -> source
+                return Optional.of(cycle);
+            }
+            // 后向搜索：从 source 出发，只访问 ord >= ord[target] 的节点
+            List<String> backward = searchBackward(source, lowerBound);
+            reorder(forward, backward);
+        }
+
+        outgoing.computeIfAbsent(source, key -> new HashSet<>()).add(target);
+        incoming.computeIfAbsent(target, key -> new HashSet<>()).add(source);
+        return Optional.empty();
+    }
+
+    public void removeEdge(String source, String target) {
+        // 删除边不会破坏已有的拓扑序
+        Set<String> targets = outgoing.get(source);
+        if (targets != null) {
+            targets.remove(target);
+        }
+        Set<String> sources = incoming.get(target);
+        if (sources != null) {
+            sources.remove(source);
+        }
+    }
+
+    public void removeNode(String name) {
+        for (String target : outgoing.getOrDefault(name, Collections.emptySet())) {
+            incoming.get(target).remove(name);
+        }
+        for (String source : incoming.getOrDefault(name, Collections.emptySet())) {
+            outgoing.get(source).remove(name);
+        }
+        outgoing.remove(name);
+        incoming.remove(name);
+        ord.remove(name);
+    }
+
+    private boolean searchForward(String start, String goal, int upperBound,
+                                  Map<String, String> parent, List<String> visited) {
+        Set<String> seen = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(start);
+        seen.add(start);
+        while (!stack.isEmpty()) {
+            String node = stack.pop();
+            visited.add(node);
+            for (String next : outgoing.getOrDefault(node, Collections.emptySet())) {
+                if (next.equals(goal)) {
+                    parent.put(next, node);
+                    return true;
+                }
+                if (ord.get(next) < upperBound && seen.add(next)) {
+                    parent.put(next, node);
+                    stack.push(next);
+                }
+            }
+        }
+        return false;
+    }
+
+    private List<String> searchBackward(String start, int lowerBound) {
+        Set<String> seen = new LinkedHashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(start);
+        seen.add(start);
+        while (!stack.isEmpty()) {
+            String node = stack.pop();
+            for (String previous : incoming.getOrDefault(node, Collections.emptySet())) {
+                if (ord.get(previous) > lowerBound && seen.add(previous)) {
+                    stack.push(previous);
+                }
+            }
+        }
+        return new ArrayList<>(seen);
+    }
+
+    /**
+     * 把后向集合整体排在前向集合之前，复用两者原有的 ord 值
+     */
+    private void reorder(List<String> forward, List<String> backward) {
+        Comparator<String> byOrd = Comparator.comparingInt(ord::get);
+        forward.sort(byOrd);
+        backward.sort(byOrd);
+
+        List<String> nodes = new ArrayList<>(backward.size() + forward.size());
+        nodes.addAll(backward);
+        nodes.addAll(forward);
+
+        List<Integer> slots = new ArrayList<>(nodes.size());
+        for (String node : nodes) {
+            slots.add(ord.get(node));
+        }
+        Collections.sort(slots);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            ord.put(nodes.get(i), slots.get(i));
+        }
+    }
+}
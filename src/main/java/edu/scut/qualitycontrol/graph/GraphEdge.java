@@ -0,0 +1,21 @@
+package edu.scut.qualitycontrol.graph;
+
+/**
+ * 内存因果图中的一条 “导致” 关系，weight 为可选的发生概率 (0, 1]
+ */
+public final class GraphEdge {
+    private final String source;
+    private final String target;
+    private final Double weight;
+
+    public GraphEdge(String source, String target, Double weight) {
+        this.source = source;
+        this.target = target;
+        this.weight = weight;
+    }
+
+    // Getters
+    public String getSource() { return source; }
+    public String getTarget() { return target; }
+    public Double getWeight() { return weight; }
+}
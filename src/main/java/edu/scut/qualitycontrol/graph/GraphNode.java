@@ -0,0 +1,35 @@
+package edu.scut.qualitycontrol.graph;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 内存因果图中的节点（影响因素或缺陷类型），不可变
+ */
+public final class GraphNode {
+    public static final String FACTOR_LABEL = "影响因素";
+    public static final String DEFECT_LABEL = "缺陷类型";
+
+    private final String name;
+    private final String label;
+    private final Map<String, Object> properties;
+
+    public GraphNode(String name, String label, Map<String, Object> properties) {
+        this.name = name;
+        this.label = label;
+        this.properties = properties == null ? Collections.emptyMap() : Collections.unmodifiableMap(properties);
+    }
+
+    public boolean isFactor() { return FACTOR_LABEL.equals(label); }
+    public boolean isDefect() { return DEFECT_LABEL.equals(label); }
+
+    public String getProperty(String key) {
+        Object value = properties.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    // Getters
+    public String getName() { return name; }
+    public String getLabel() { return label; }
+    public Map<String, Object> getProperties() { return properties; }
+}
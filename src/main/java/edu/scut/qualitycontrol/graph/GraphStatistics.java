@@ -0,0 +1,217 @@
+package edu.scut.qualitycontrol.graph;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 因果图的统计量，随每次修改增量维护
+ * 1. 计数类（各标签节点数、关系数、出入度分布、根因数）：只对被修改的节点减去旧贡献、加上新贡献；
+ * 2. 深度（从根因出发的最长链长度）与根因到各节点的路径数：只在前驱集合发生变化的节点及其下游范围内，
+ *    按拓扑序重新计算，代价与受影响的下游规模成正比。
+ * 环路中以及环路下游的节点深度与路径数记为 0（写入经过环路检查，只有历史数据中可能出现）。路径数超过 long 范围时取 Long.MAX_VALUE。
+ * 非线程安全，由调用方加锁。
+ */
+public final class GraphStatistics {
+
+    private final Map<String, Integer> nodesByLabel = new HashMap<>();
+    private final NavigableMap<Integer, Integer> inDegreeHistogram = new TreeMap<>();
+    private final NavigableMap<Integer, Integer> outDegreeHistogram = new TreeMap<>();
+    private final NavigableMap<Integer, Integer> depthHistogram = new TreeMap<>();
+    private final Map<String, Integer> depth = new HashMap<>();
+    private final Map<String, Long> paths = new HashMap<>();
+    private final Map<String, Long> pathsPerDefect = new HashMap<>();
+    // 位于环路中或环路下游、无法按拓扑序计算的节点
+    private final Set<String> unresolved = new HashSet<>();
+    private long edgeCount;
+    private int rootCount;
+
+    public static GraphStatistics compute(CausalGraph graph) {
+        GraphStatistics statistics = new GraphStatistics();
+        Set<String> all = new HashSet<>();
+        for (GraphNode node : graph.nodes()) {
+            statistics.addCounters(graph, node.getName());
+            all.add(node.getName());
+        }
+        statistics.recomputeRegion(graph, all);
+        return statistics;
+    }
+
+    /**
+     * 应用一次修改
+     * @param touched 节点本身或其关系发生变化的全部节点（包括被删除的节点及其邻居）
+     */
+    public void apply(CausalGraph before, CausalGraph after, Collection<String> touched) {
+        Set<String> seeds = new HashSet<>();
+        for (String name : touched) {
+            if (before.node(name) != null) {
+                removeCounters(before, name);
+            }
+            if (after.node(name) != null) {
+                addCounters(after, name);
+                GraphNode old = before.node(name);
+                if (old == null || !old.getLabel().equals(after.node(name).getLabel())
+                        || !before.predecessors(name).equals(after.predecessors(name))) {
+                    seeds.add(name);
+                }
+            } else {
+                forget(name);
+            }
+        }
+        if (!seeds.isEmpty()) {
+            recomputeRegion(after, downstreamOf(after, seeds));
+        }
+    }
+
+    // --- 查询 ---
+
+    public Map<String, Integer> getNodesByLabel() { return Collections.unmodifiableMap(nodesByLabel); }
+    public long getEdgeCount() { return edgeCount; }
+    public int getRootCount() { return rootCount; }
+    public int getMaxDepth() { return depthHistogram.isEmpty() ? 0 : depthHistogram.lastKey(); }
+    public Map<Integer, Integer> getInDegreeHistogram() { return Collections.unmodifiableMap(inDegreeHistogram); }
+    public Map<Integer, Integer> getOutDegreeHistogram() { return Collections.unmodifiableMap(outDegreeHistogram); }
+    public Map<String, Long> getPathsPerDefect() { return Collections.unmodifiableMap(pathsPerDefect); }
+
+    /**
+     * @return 节点的深度；节点不存在、位于环路中或环路下游时返回 null
+     */
+    public Integer depthOf(String name) {
+        return unresolved.contains(name) ? null : depth.get(name);
+    }
+
+    // --- 计数类 ---
+
+    private void addCounters(CausalGraph graph, String name) {
+        GraphNode node = graph.node(name);
+        nodesByLabel.merge(node.getLabel(), 1, Integer::sum);
+        increment(inDegreeHistogram, graph.predecessors(name).size());
+        increment(outDegreeHistogram, graph.successors(name).size());
+        edgeCount += graph.successors(name).size();
+        if (graph.isRoot(name)) {
+            rootCount++;
+        }
+    }
+
+    private void removeCounters(CausalGraph graph, String name) {
+        GraphNode node = graph.node(name);
+        nodesByLabel.merge(node.getLabel(), -1, (a, b) -> a + b == 0 ? null : a + b);
+        decrement(inDegreeHistogram, graph.predecessors(name).size());
+        decrement(outDegreeHistogram, graph.successors(name).size());
+        edgeCount -= graph.successors(name).size();
+        if (graph.isRoot(name)) {
+            rootCount--;
+        }
+    }
+
+    // --- 深度与路径数 ---
+
+    private void forget(String name) {
+        Integer oldDepth = depth.remove(name);
+        if (oldDepth != null) {
+            decrement(depthHistogram, oldDepth);
+        }
+        paths.remove(name);
+        pathsPerDefect.remove(name);
+        unresolved.remove(name);
+    }
+
+    /**
+     * 按拓扑序重新计算 region 内节点的深度与路径数，region 之外的前驱视为不变
+     */
+    private void recomputeRegion(CausalGraph graph, Set<String> region) {
+        Map<String, Integer> pending = new HashMap<>();
+        Deque<String> ready = new ArrayDeque<>();
+        unresolved.removeAll(region);
+        for (String name : region) {
+            int count = 0;
+            for (String previous : graph.predecessors(name)) {
+                if (region.contains(previous)) {
+                    count++;
+                }
+            }
+            pending.put(name, count);
+            if (count == 0) {
+                ready.add(name);
+            }
+        }
+        Set<String> done = new HashSet<>();
+        while (!ready.isEmpty()) {
+            String name = ready.poll();
+            int newDepth = 0;
+            long newPaths = graph.isRoot(name) ? 1 : 0;
+            boolean blocked = false;
+            for (String previous : graph.predecessors(name)) {
+                blocked |= unresolved.contains(previous);
+                newDepth = Math.max(newDepth, depth.getOrDefault(previous, 0) + 1);
+                newPaths = saturatedAdd(newPaths, paths.getOrDefault(previous, 0L));
+            }
+            if (blocked) {
+                unresolved.add(name);
+                store(graph, name, 0, 0);
+            } else {
+                store(graph, name, newDepth, newPaths);
+            }
+            done.add(name);
+            for (String next : graph.successors(name)) {
+                if (region.contains(next) && pending.merge(next, -1, Integer::sum) == 0) {
+                    ready.add(next);
+                }
+            }
+        }
+        // 剩下的节点位于环路中或环路下游
+        for (String name : region) {
+            if (!done.contains(name)) {
+                unresolved.add(name);
+                store(graph, name, 0, 0);
+            }
+        }
+    }
+
+    private void store(CausalGraph graph, String name, int newDepth, long newPaths) {
+        Integer oldDepth = depth.put(name, newDepth);
+        if (oldDepth != null) {
+            decrement(depthHistogram, oldDepth);
+        }
+        increment(depthHistogram, newDepth);
+        paths.put(name, newPaths);
+        if (graph.node(name).isDefect()) {
+            pathsPerDefect.put(name, newPaths);
+        } else {
+            pathsPerDefect.remove(name);
+        }
+    }
+
+    private static Set<String> downstreamOf(CausalGraph graph, Set<String> seeds) {
+        Set<String> region = new HashSet<>(seeds);
+        Deque<String> stack = new ArrayDeque<>(seeds);
+        while (!stack.isEmpty()) {
+            for (String next : graph.successors(stack.pop())) {
+                if (region.add(next)) {
+                    stack.push(next);
+                }
+            }
+        }
+        return region;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static void increment(NavigableMap<Integer, Integer> histogram, int key) {
+        histogram.merge(key, 1, Integer::sum);
+    }
+
+    private static void decrement(NavigableMap<Integer, Integer> histogram, int key) {
+        histogram.merge(key, -1, (a, b) -> a + b == 0 ? null : a + b);
+    }
+}
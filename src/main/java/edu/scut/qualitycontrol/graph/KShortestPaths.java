@@ -0,0 +1,228 @@
+package edu.scut.qualitycontrol.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * 基于 Yen 算法的 Top-K 最可能根因链路
+ * 边的代价为 -ln(p)，代价最小的路径即各段概率乘积最大的路径。
+ * 所有根因节点通过一个虚拟源点（代价 0）接入，只在能到达目标缺陷的子图上搜索，
+ * 复杂度为 O(K * n * (m + n log n))，而不是枚举全部路径。
+ */
+public final class KShortestPaths {
+
+    // 虚拟源点，连接所有根因影响因素
+    private static final String SOURCE = "\u0000source";
+
+    private final CausalGraph graph;
+    private final String target;
+    private final double defaultProbability;
+    private final Set<String> relevant;
+
+    private KShortestPaths(CausalGraph graph, String target, double defaultProbability) {
+        this.graph = graph;
+        this.target = target;
+        this.defaultProbability = defaultProbability;
+        this.relevant = ancestorsOf(graph, target);
+    }
+
+    /**
+     * @param defaultProbability 没有设置 weight 的关系使用的默认概率
+     * @return 按概率从大到小排列的最多 k 条路径（从根因到缺陷，包含缺陷节点）
+     */
+    public static List<RankedPath> find(CausalGraph graph, String target, int k, double defaultProbability) {
+        GraphNode targetNode = graph.node(target);
+        if (targetNode == null || !targetNode.isDefect() || k <= 0) {
+            return Collections.emptyList();
+        }
+        return new KShortestPaths(graph, target, defaultProbability).run(k);
+    }
+
+    private List<RankedPath> run(int k) {
+        List<List<String>> accepted = new ArrayList<>();
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.cost));
+        Set<List<String>> seen = new HashSet<>();
+
+        List<String> first = shortestPath(SOURCE, Collections.emptySet(), Collections.emptySet());
+        if (first == null) {
+            return Collections.emptyList();
+        }
+        accepted.add(first);
+        seen.add(first);
+
+        while (accepted.size() < k) {
+            List<String> previous = accepted.get(accepted.size() - 1);
+            for (int i = 0; i < previous.size() - 1; i++) {
+                String spurNode = previous.get(i);
+                List<String> rootPath = previous.subList(0, i + 1);
+
+                // 移除与已有路径共享同一前缀的下一条边，迫使偏离
+                Set<String> removedEdges = new HashSet<>();
+                for (List<String> path : accepted) {
+                    if (path.size() > i + 1 && path.subList(0, i + 1).equals(rootPath)) {
+                        removedEdges.add(edgeKey(path.get(i), path.get(i + 1)));
+                    }
+                }
+                // 前缀上的节点不可再次经过，保证路径无环
+                Set<String> removedNodes = new HashSet<>(rootPath.subList(0, i));
+
+                List<String> spurPath = shortestPath(spurNode, removedNodes, removedEdges);
+                if (spurPath == null) {
+                    continue;
+                }
+                List<String> total = new ArrayList<>(rootPath.subList(0, i));
+                total.addAll(spurPath);
+                if (seen.add(total)) {
+                    candidates.add(new Candidate(total, cost(total)));
+                }
+            }
+            Candidate next = candidates.poll();
+            if (next == null) {
+                break;
+            }
+            accepted.add(next.path);
+        }
+
+        List<RankedPath> result = new ArrayList<>(accepted.size());
+        for (List<String> path : accepted) {
+            double cost = cost(path);
+            result.add(new RankedPath(new ArrayList<>(path.subList(1, path.size())), Math.exp(-cost)));
+        }
+        return result;
+    }
+
+    /**
+     * Dijkstra，返回从 from 到目标缺陷的最短路径（包含两端），不可达时返回 null
+     */
+    private List<String> shortestPath(String from, Set<String> removedNodes, Set<String> removedEdges) {
+        Map<String, Double> distance = new HashMap<>();
+        Map<String, String> previous = new HashMap<>();
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.cost));
+        distance.put(from, 0.0);
+        queue.add(new Candidate(Collections.singletonList(from), 0.0));
+
+        while (!queue.isEmpty()) {
+            Candidate current = queue.poll();
+            String node = current.path.get(0);
+            if (current.cost > distance.get(node)) {
+                continue; // 过期条目
+            }
+            if (node.equals(target)) {
+                List<String> path = new ArrayList<>();
+                for (String step = target; step != null; step = previous.get(step)) {
+                    path.add(step);
+                }
+                Collections.reverse(path);
+                return path;
+            }
+            for (String next : neighbours(node)) {
+                if (removedNodes.contains(next) || removedEdges.contains(edgeKey(node, next))) {
+                    continue;
+                }
+                double candidateCost = current.cost + edgeCost(node, next);
+                Double known = distance.get(next);
+                if (known == null || candidateCost < known) {
+                    distance.put(next, candidateCost);
+                    previous.put(next, node);
+                    queue.add(new Candidate(Collections.singletonList(next), candidateCost));
+                }
+            }
+        }
+        return null;
+    }
+
+    private Iterable<String> neighbours(String node) {
+        List<String> result = new ArrayList<>();
+        if (SOURCE.equals(node)) {
+            for (String name : relevant) {
+                if (graph.isRoot(name)) {
+                    result.add(name);
+                }
+            }
+        } else {
+            for (String next : graph.successors(node)) {
+                if (relevant.contains(next)) {
+                    result.add(next);
+                }
+            }
+        }
+        return result;
+    }
+
+    private double edgeCost(String source, String target) {
+        if (SOURCE.equals(source)) {
+            return 0.0;
+        }
+        Double weight = graph.weight(source, target);
+        double probability = weight == null ? defaultProbability : weight;
+        // 概率限制在 (0, 1]，避免出现负代价或无穷大
+        probability = Math.min(1.0, Math.max(probability, Double.MIN_NORMAL));
+        return -Math.log(probability);
+    }
+
+    private double cost(List<String> path) {
+        double total = 0.0;
+        for (int i = 0; i < path.size() - 1; i++) {
+            total += edgeCost(path.get(i), path.get(i + 1));
+        }
+        return total;
+    }
+
+    private static String edgeKey(String source, String target) {
+        return source + '\u0000' + target;
+    }
+
+    /**
+     * 能到达目标节点的所有节点（包含目标本身），用于裁剪搜索空间
+     */
+    private static Set<String> ancestorsOf(CausalGraph graph, String target) {
+        Set<String> visited = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(target);
+        visited.add(target);
+        while (!stack.isEmpty()) {
+            for (String source : graph.predecessors(stack.pop())) {
+                if (visited.add(source)) {
+                    stack.push(source);
+                }
+            }
+        }
+        return visited;
+    }
+
+    private static final class Candidate {
+        private final List<String> path;
+        private final double cost;
+
+        private Candidate(List<String> path, double cost) {
+            this.path = path;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * 一条排名后的因果链路
+     */
+    public static final class RankedPath {
+        private final List<String> nodes;
+        private final double probability;
+
+        public RankedPath(List<String> nodes, double probability) {
+            this.nodes = nodes;
+            this.probability = probability;
+        }
+
+        // 从根因到缺陷的节点名称，最后一个元素为缺陷本身
+        public List<String> getNodes() { return nodes; }
+        public double getProbability() { return probability; }
+    }
+}
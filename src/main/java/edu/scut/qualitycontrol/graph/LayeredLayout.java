@@ -0,0 +1,228 @@
+package edu.scut.qualitycontrol.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Sugiyama 风格的分层布局
+ * 1. 去环：DFS 忽略回边（正常情况下 CycleGuard 已保证无环）；
+ * 2. 分层：最长路径分层，根因影响因素在第 0 层，缺陷类型统一放在最底层；
+ * 3. 跨层的边插入虚拟节点，再用重心法上下交替扫描减少交叉；
+ * 4. 每层节点等间距居中排列。
+ */
+public final class LayeredLayout {
+
+    public static final double NODE_SPACING = 120.0;
+    public static final double LAYER_SPACING = 150.0;
+
+    private static final int SWEEPS = 8;
+    private static final String DUMMY_PREFIX = "\u0000dummy";
+
+    private LayeredLayout() {
+    }
+
+    public static Map<String, NodePosition> compute(CausalGraph graph) {
+        List<String> names = new ArrayList<>();
+        for (GraphNode node : graph.nodes()) {
+            names.add(node.getName());
+        }
+        return compute(graph, names);
+    }
+
+    /**
+     * 只对给定的节点子集布局（例如某个缺陷的因果子图）
+     */
+    public static Map<String, NodePosition> compute(CausalGraph graph, Collection<String> names) {
+        // 排序保证同一版本的图每次得到相同的布局
+        Set<String> included = new TreeSet<>(names);
+        Map<String, List<String>> successors = acyclicSuccessors(graph, included);
+
+        Map<String, Integer> layerOf = assignLayers(graph, included, successors);
+        int layerCount = 0;
+        for (int layer : layerOf.values()) {
+            layerCount = Math.max(layerCount, layer + 1);
+        }
+
+        // 构造分层结构，跨层的边拆成若干段并插入虚拟节点
+        List<List<String>> layers = new ArrayList<>();
+        for (int i = 0; i < layerCount; i++) {
+            layers.add(new ArrayList<>());
+        }
+        for (String name : included) {
+            layers.get(layerOf.get(name)).add(name);
+        }
+        Map<String, List<String>> up = new HashMap<>();
+        Map<String, List<String>> down = new HashMap<>();
+        int dummyCount = 0;
+        for (String source : included) {
+            for (String target : successors.get(source)) {
+                String previous = source;
+                for (int layer = layerOf.get(source) + 1; layer < layerOf.get(target); layer++) {
+                    String dummy = DUMMY_PREFIX + dummyCount++;
+                    layers.get(layer).add(dummy);
+                    link(previous, dummy, up, down);
+                    previous = dummy;
+                }
+                link(previous, target, up, down);
+            }
+        }
+
+        minimizeCrossings(layers, up, down);
+
+        Map<String, NodePosition> positions = new HashMap<>();
+        for (int layer = 0; layer < layers.size(); layer++) {
+            List<String> row = layers.get(layer);
+            double offset = (row.size() - 1) * NODE_SPACING / 2;
+            for (int i = 0; i < row.size(); i++) {
+                String name = row.get(i);
+                if (!name.startsWith(DUMMY_PREFIX)) {
+                    positions.put(name, new NodePosition(i * NODE_SPACING - offset, layer * LAYER_SPACING, layer));
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * 子集内部的边，DFS 过程中遇到的回边被忽略
+     */
+    private static Map<String, List<String>> acyclicSuccessors(CausalGraph graph, Set<String> included) {
+        Map<String, List<String>> result = new HashMap<>();
+        for (String name : included) {
+            result.put(name, new ArrayList<>());
+        }
+        Set<String> finished = new HashSet<>();
+        Set<String> onStack = new HashSet<>();
+        for (String start : included) {
+            if (finished.contains(start)) {
+                continue;
+            }
+            Deque<String> path = new ArrayDeque<>();
+            Deque<Iterator<String>> iterators = new ArrayDeque<>();
+            path.push(start);
+            onStack.add(start);
+            iterators.push(new TreeSet<>(graph.successors(start)).iterator());
+            while (!path.isEmpty()) {
+                Iterator<String> iterator = iterators.peek();
+                if (!iterator.hasNext()) {
+                    String done = path.pop();
+                    iterators.pop();
+                    onStack.remove(done);
+                    finished.add(done);
+                    continue;
+                }
+                String next = iterator.next();
+                if (!included.contains(next) || onStack.contains(next)) {
+                    continue; // 子集外的节点或回边
+                }
+                result.get(path.peek()).add(next);
+                if (!finished.contains(next)) {
+                    path.push(next);
+                    onStack.add(next);
+                    iterators.push(new TreeSet<>(graph.successors(next)).iterator());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 最长路径分层：layer(v) = max(layer(u) + 1)，缺陷类型统一放在最底层
+     */
+    private static Map<String, Integer> assignLayers(CausalGraph graph, Set<String> included,
+                                                     Map<String, List<String>> successors) {
+        Map<String, Integer> inDegree = new HashMap<>();
+        for (String name : included) {
+            inDegree.putIfAbsent(name, 0);
+            for (String target : successors.get(name)) {
+                inDegree.merge(target, 1, Integer::sum);
+            }
+        }
+        Deque<String> queue = new ArrayDeque<>();
+        Map<String, Integer> layerOf = new HashMap<>();
+        for (String name : included) {
+            if (inDegree.get(name) == 0) {
+                queue.add(name);
+                layerOf.put(name, 0);
+            }
+        }
+        int maxFactorLayer = -1;
+        while (!queue.isEmpty()) {
+            String node = queue.poll();
+            int layer = layerOf.get(node);
+            GraphNode graphNode = graph.node(node);
+            if (graphNode == null || !graphNode.isDefect()) {
+                maxFactorLayer = Math.max(maxFactorLayer, layer);
+            }
+            for (String target : successors.get(node)) {
+                layerOf.merge(target, layer + 1, Math::max);
+                if (inDegree.merge(target, -1, Integer::sum) == 0) {
+                    queue.add(target);
+                }
+            }
+        }
+        for (String name : included) {
+            GraphNode node = graph.node(name);
+            if (node != null && node.isDefect()) {
+                layerOf.put(name, maxFactorLayer + 1);
+            }
+        }
+        return layerOf;
+    }
+
+    private static void link(String upper, String lower, Map<String, List<String>> up, Map<String, List<String>> down) {
+        down.computeIfAbsent(upper, key -> new ArrayList<>()).add(lower);
+        up.computeIfAbsent(lower, key -> new ArrayList<>()).add(upper);
+    }
+
+    /**
+     * 重心法：按相邻层中邻居位置的平均值排序，向下、向上交替扫描
+     */
+    private static void minimizeCrossings(List<List<String>> layers, Map<String, List<String>> up, Map<String, List<String>> down) {
+        for (int sweep = 0; sweep < SWEEPS; sweep++) {
+            if (sweep % 2 == 0) {
+                for (int layer = 1; layer < layers.size(); layer++) {
+                    sortByBarycenter(layers.get(layer), layers.get(layer - 1), up);
+                }
+            } else {
+                for (int layer = layers.size() - 2; layer >= 0; layer--) {
+                    sortByBarycenter(layers.get(layer), layers.get(layer + 1), down);
+                }
+            }
+        }
+    }
+
+    private static void sortByBarycenter(List<String> row, List<String> fixedRow, Map<String, List<String>> neighbours) {
+        Map<String, Integer> fixedIndex = new HashMap<>();
+        for (int i = 0; i < fixedRow.size(); i++) {
+            fixedIndex.put(fixedRow.get(i), i);
+        }
+        Map<String, Double> barycenter = new HashMap<>();
+        for (int i = 0; i < row.size(); i++) {
+            String node = row.get(i);
+            List<String> adjacent = neighbours.getOrDefault(node, List.of());
+            double sum = 0;
+            int count = 0;
+            for (String neighbour : adjacent) {
+                Integer index = fixedIndex.get(neighbour);
+                if (index != null) {
+                    sum += index;
+                    count++;
+                }
+            }
+            // 没有邻居的节点保持原来的相对位置
+            barycenter.put(node, count == 0 ? i : sum / count);
+        }
+        row.sort(Comparator.comparingDouble(barycenter::get));
+    }
+}
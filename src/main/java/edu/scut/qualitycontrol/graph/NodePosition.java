@@ -0,0 +1,21 @@
+package edu.scut.qualitycontrol.graph;
+
+/**
+ * 分层布局中一个节点的坐标，layer 为所在层（根因为 0，缺陷类型在最底层）
+ */
+public final class NodePosition {
+    private final double x;
+    private final double y;
+    private final int layer;
+
+    public NodePosition(double x, double y, int layer) {
+        this.x = x;
+        this.y = y;
+        this.layer = layer;
+    }
+
+    // Getters
+    public double getX() { return x; }
+    public double getY() { return y; }
+    public int getLayer() { return layer; }
+}
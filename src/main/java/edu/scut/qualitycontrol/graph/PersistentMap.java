@@ -0,0 +1,350 @@
+package edu.scut.qualitycontrol.graph;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * 不可变的哈希映射（哈希数组映射前缀树，HAMT）
+ * 修改只复制从根到被修改位置的一条路径（至多 7 层，每层一个不超过 32 槽的数组），其余部分与旧版本共享，
+ * 因此同时保留许多个版本的内存开销远小于逐版本完整复制。键不能为 null。
+ */
+public final class PersistentMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MAX_DEPTH = 8; // 7 层位图节点 + 1 层冲突节点
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(Object key) {
+        return root.find(0, hash(key), key, NOT_FOUND) != NOT_FOUND;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object value = root.find(0, hash(key), key, NOT_FOUND);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        Object value = root.find(0, hash(key), key, NOT_FOUND);
+        @SuppressWarnings("unchecked")
+        V result = value == NOT_FOUND ? defaultValue : (V) value;
+        return result;
+    }
+
+    public PersistentMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        boolean[] added = new boolean[1];
+        Node newRoot = root.assoc(0, hash(key), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    public PersistentMap<K, V> minus(Object key) {
+        Node newRoot = root.without(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentMap<>(newRoot == null ? BitmapNode.EMPTY : newRoot, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    /**
+     * 只读的值视图
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static final Object NOT_FOUND = new Object();
+
+    // --- 节点 ---
+
+    private abstract static class Node {
+        // 键值对交替存放；位图节点中键为 null 的槽位存放子节点
+        final Object[] array;
+
+        Node(Object[] array) {
+            this.array = array;
+        }
+
+        abstract Object find(int shift, int hash, Object key, Object notFound);
+
+        abstract Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /** 删除后为空时返回 null，键不存在时返回 this */
+        abstract Node without(int shift, int hash, Object key);
+
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+    }
+
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+
+        BitmapNode(int bitmap, Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key, Object notFound) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return notFound;
+            }
+            int i = 2 * index(bit);
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).find(shift + BITS, hash, key, notFound);
+            }
+            return key.equals(k) ? array[i + 1] : notFound;
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = 2 * index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, i);
+                newArray[i] = key;
+                newArray[i + 1] = value;
+                System.arraycopy(array, i, newArray, i + 2, array.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).assoc(shift + BITS, hash, key, value, added);
+                return child == v ? this : copyWith(i + 1, child);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : copyWith(i + 1, value);
+            }
+            added[0] = true;
+            Node child = pair(shift + BITS, k, v, hash, key, value);
+            Object[] newArray = array.clone();
+            newArray[i] = null;
+            newArray[i + 1] = child;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * index(bit);
+            Object k = array[i];
+            if (k == null) {
+                Node child = (Node) array[i + 1];
+                Node newChild = child.without(shift + BITS, hash, key);
+                if (newChild == child) {
+                    return this;
+                }
+                if (newChild != null) {
+                    return copyWith(i + 1, newChild);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, array.length - i - 2);
+            return new BitmapNode(bitmap ^ bit, newArray);
+        }
+
+        private BitmapNode copyWith(int i, Object value) {
+            Object[] newArray = array.clone();
+            newArray[i] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        private static Node pair(int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+            int h1 = hash(k1);
+            if (h1 == h2) {
+                return new CollisionNode(h1, new Object[]{k1, v1, k2, v2});
+            }
+            boolean[] ignored = new boolean[1];
+            return EMPTY.assoc(shift, h1, k1, v1, ignored).assoc(shift, h2, k2, v2, ignored);
+        }
+    }
+
+    // 哈希值完全相同的键
+    private static final class CollisionNode extends Node {
+        private final int hash;
+
+        CollisionNode(int hash, Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key, Object notFound) {
+            int i = indexOf(key);
+            return i < 0 ? notFound : array[i + 1];
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // 在上层补一个位图节点，把本节点挂到它下面
+                return new BitmapNode(BitmapNode.bit(this.hash, shift), new Object[]{null, this})
+                        .assoc(shift, hash, key, value, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                Object[] newArray = array.clone();
+                newArray[i + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, array.length - i - 2);
+            return new CollisionNode(hash, newArray);
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class ValueIterator<V> implements Iterator<V> {
+        private final Object[][] arrays = new Object[MAX_DEPTH][];
+        private final int[] positions = new int[MAX_DEPTH];
+        private int depth;
+        private int nextIndex = -1;
+
+        ValueIterator(Node root) {
+            arrays[0] = root.array;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex >= 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (nextIndex < 0) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) arrays[depth][nextIndex + 1];
+            advance();
+            return value;
+        }
+
+        // 定位到下一个键值对
+        private void advance() {
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                int position = positions[depth];
+                if (position >= array.length) {
+                    depth--;
+                    continue;
+                }
+                positions[depth] = position + 2;
+                if (array[position] != null) {
+                    nextIndex = position;
+                    return;
+                }
+                depth++;
+                arrays[depth] = ((Node) array[position + 1]).array;
+                positions[depth] = 0;
+            }
+            nextIndex = -1;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import java.util.Collections;
+import java.util.Map;
+
+// 节点查找缓存中的条目：只保存标签、ID 和属性，不携带关系
+public class CachedNode {
+    public static final String FACTOR_LABEL = "影响因素";
+    public static final String DEFECT_LABEL = "缺陷类型";
+
+    private final String label;
+    private final Long id;
+    private final String name;
+    private final Map<String, Object> properties;
+
+    public CachedNode(String label, Long id, String name, Map<String, Object> properties) {
+        this.label = label;
+        this.id = id;
+        this.name = name;
+        this.properties = properties == null ? Collections.emptyMap() : Collections.unmodifiableMap(properties);
+    }
+
+    public boolean isFactor() { return FACTOR_LABEL.equals(label); }
+    public boolean isDefect() { return DEFECT_LABEL.equals(label); }
+
+    // Getters
+    public String getLabel() { return label; }
+    public Long getId() { return id; }
+    public String getName() { return name; }
+    public Map<String, Object> getProperties() { return properties; }
+}
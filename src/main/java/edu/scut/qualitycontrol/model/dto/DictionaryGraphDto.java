@@ -0,0 +1,107 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import edu.scut.qualitycontrol.graph.NodePosition;
+import edu.scut.qualitycontrol.model.entity.DefectType;
+import edu.scut.qualitycontrol.model.entity.InfluencingFactor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字典编码的图数据：每个节点只以扁平对象出现一次，关系是节点下标对 [source, target]，
+ * 布局坐标 [x, y] 与 nodes 按下标对齐（没有坐标的节点为 null）。
+ * 相比 GraphDataDto 不再重复嵌套 leadsToFactor / leadsToDefect，也不再在每条关系里重复中文名称。
+ * 端点不在节点列表中的关系（例如查询期间节点被并发删除）会被跳过。
+ */
+public class DictionaryGraphDto {
+    private List<Map<String, Object>> nodes;
+    private int[][] links;
+    private double[][] layout;
+
+    public DictionaryGraphDto(List<Map<String, Object>> nodes, int[][] links, double[][] layout) {
+        this.nodes = nodes;
+        this.links = links;
+        this.layout = layout;
+    }
+
+    public static DictionaryGraphDto encode(GraphDataDto graphData) {
+        NodeDictionary dictionary = new NodeDictionary();
+        for (Object node : graphData.getNodes()) {
+            dictionary.indexOf(node);
+        }
+        List<int[]> links = new ArrayList<>(graphData.getLinks().size());
+        for (LinkDto link : graphData.getLinks()) {
+            Integer source = dictionary.indexOfName(link.getSource());
+            Integer target = dictionary.indexOfName(link.getTarget());
+            if (source != null && target != null) {
+                links.add(new int[]{source, target});
+            }
+        }
+        double[][] layout = null;
+        if (graphData.getLayout() != null) {
+            layout = new double[dictionary.nodes.size()][];
+            for (int i = 0; i < layout.length; i++) {
+                NodePosition position = graphData.getLayout().get((String) dictionary.nodes.get(i).get("name"));
+                layout[i] = position == null ? null : new double[]{position.getX(), position.getY()};
+            }
+        }
+        return new DictionaryGraphDto(dictionary.nodes, links.toArray(new int[0][]), layout);
+    }
+
+    // Getters and Setters
+    public List<Map<String, Object>> getNodes() { return nodes; }
+    public void setNodes(List<Map<String, Object>> nodes) { this.nodes = nodes; }
+    public int[][] getLinks() { return links; }
+    public void setLinks(int[][] links) { this.links = links; }
+    public double[][] getLayout() { return layout; }
+    public void setLayout(double[][] layout) { this.layout = layout; }
+
+    /**
+     * 名称 -> 下标 的节点字典，节点按首次出现的顺序编号
+     */
+    static final class NodeDictionary {
+        final List<Map<String, Object>> nodes = new ArrayList<>();
+        private final Map<String, Integer> indexByName = new HashMap<>();
+
+        int indexOf(Object node) {
+            Map<String, Object> flat = flatten(node);
+            String name = (String) flat.get("name");
+            Integer index = indexByName.get(name);
+            if (index == null) {
+                index = nodes.size();
+                nodes.add(flat);
+                indexByName.put(name, index);
+            }
+            return index;
+        }
+
+        // 不在字典中时返回 null
+        Integer indexOfName(String name) {
+            return indexByName.get(name);
+        }
+
+        private static Map<String, Object> flatten(Object node) {
+            Map<String, Object> flat = new LinkedHashMap<>();
+            if (node instanceof InfluencingFactor) {
+                InfluencingFactor factor = (InfluencingFactor) node;
+                flat.put("id", factor.getId());
+                flat.put("name", factor.getName());
+                flat.put("label", CachedNode.FACTOR_LABEL);
+                flat.put("standard", factor.getStandard());
+                flat.put("description", factor.getDescription());
+            } else if (node instanceof DefectType) {
+                DefectType defect = (DefectType) node;
+                flat.put("id", defect.getId());
+                flat.put("name", defect.getName());
+                flat.put("label", CachedNode.DEFECT_LABEL);
+                flat.put("typicalManifestations", defect.getTypicalManifestations());
+            } else {
+                throw new IllegalArgumentException("不支持的节点类型：" + node.getClass().getName());
+            }
+            return flat;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import edu.scut.qualitycontrol.model.entity.InfluencingFactor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字典编码的因果路径：多条路径共享的影响因素只出现一次，每条路径是 nodes 的下标数组
+ */
+public class DictionaryPathsDto {
+    private List<Map<String, Object>> nodes;
+    private int[][] paths;
+
+    public DictionaryPathsDto(List<Map<String, Object>> nodes, int[][] paths) {
+        this.nodes = nodes;
+        this.paths = paths;
+    }
+
+    public static DictionaryPathsDto encode(List<List<InfluencingFactor>> paths) {
+        DictionaryGraphDto.NodeDictionary dictionary = new DictionaryGraphDto.NodeDictionary();
+        int[][] encoded = new int[paths.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            List<InfluencingFactor> path = paths.get(i);
+            encoded[i] = new int[path.size()];
+            for (int j = 0; j < path.size(); j++) {
+                encoded[i][j] = dictionary.indexOf(path.get(j));
+            }
+        }
+        return new DictionaryPathsDto(dictionary.nodes, encoded);
+    }
+
+    // Getters and Setters
+    public List<Map<String, Object>> getNodes() { return nodes; }
+    public void setNodes(List<Map<String, Object>> nodes) { this.nodes = nodes; }
+    public int[][] getPaths() { return paths; }
+    public void setPaths(int[][] paths) { this.paths = paths; }
+}
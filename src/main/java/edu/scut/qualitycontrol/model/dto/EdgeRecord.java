@@ -0,0 +1,27 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import java.util.Map;
+
+// 导入文件中的一行：(影响因素)-[导致]->(影响因素 / 缺陷类型)
+public class EdgeRecord {
+    private final long lineNumber;
+    private final Map<String, Object> startProperties;
+    private final String endLabel;
+    private final Map<String, Object> endProperties;
+
+    public EdgeRecord(long lineNumber, Map<String, Object> startProperties, String endLabel, Map<String, Object> endProperties) {
+        this.lineNumber = lineNumber;
+        this.startProperties = startProperties;
+        this.endLabel = endLabel;
+        this.endProperties = endProperties;
+    }
+
+    public String getStartName() { return (String) startProperties.get("name"); }
+    public String getEndName() { return (String) endProperties.get("name"); }
+
+    // Getters
+    public long getLineNumber() { return lineNumber; }
+    public Map<String, Object> getStartProperties() { return startProperties; }
+    public String getEndLabel() { return endLabel; }
+    public Map<String, Object> getEndProperties() { return endProperties; }
+}
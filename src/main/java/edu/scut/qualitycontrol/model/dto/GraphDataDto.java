@@ -1,19 +1,32 @@
 package edu.scut.qualitycontrol.model.dto;
 
+import edu.scut.qualitycontrol.graph.NodePosition;
+
 import java.util.List;
+import java.util.Map;
 
 public class GraphDataDto {
     private List<?> nodes;
     private List<LinkDto> links;
+    // 节点名称 -> 服务端计算的分层布局坐标，可能缺少刚刚新增的节点
+    private Map<String, NodePosition> layout;
 
     public GraphDataDto(List<?> nodes, List<LinkDto> links) {
         this.nodes = nodes;
         this.links = links;
     }
 
+    public GraphDataDto(List<?> nodes, List<LinkDto> links, Map<String, NodePosition> layout) {
+        this.nodes = nodes;
+        this.links = links;
+        this.layout = layout;
+    }
+
     // Getters and Setters
     public List<?> getNodes() { return nodes; }
     public void setNodes(List<?> nodes) { this.nodes = nodes; }
     public List<LinkDto> getLinks() { return links; }
     public void setLinks(List<LinkDto> links) { this.links = links; }
-}
\ No newline at end of file
+    public Map<String, NodePosition> getLayout() { return layout; }
+    public void setLayout(Map<String, NodePosition> layout) { this.layout = layout; }
+}
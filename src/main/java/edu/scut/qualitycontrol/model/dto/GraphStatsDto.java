@@ -0,0 +1,40 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import java.util.Map;
+
+// 因果图统计量的只读快照，version 为对应的内存图版本
+public class GraphStatsDto {
+    private final long version;
+    private final Map<String, Integer> nodesByLabel;
+    private final long edgeCount;
+    private final int rootCount;
+    private final int maxDepth;
+    // 度数 -> 节点数
+    private final Map<Integer, Integer> inDegreeHistogram;
+    private final Map<Integer, Integer> outDegreeHistogram;
+    // 缺陷类型 -> 从根因出发到达它的路径数
+    private final Map<String, Long> pathsPerDefect;
+
+    public GraphStatsDto(long version, Map<String, Integer> nodesByLabel, long edgeCount, int rootCount, int maxDepth,
+                         Map<Integer, Integer> inDegreeHistogram, Map<Integer, Integer> outDegreeHistogram,
+                         Map<String, Long> pathsPerDefect) {
+        this.version = version;
+        this.nodesByLabel = nodesByLabel;
+        this.edgeCount = edgeCount;
+        this.rootCount = rootCount;
+        this.maxDepth = maxDepth;
+        this.inDegreeHistogram = inDegreeHistogram;
+        this.outDegreeHistogram = outDegreeHistogram;
+        this.pathsPerDefect = pathsPerDefect;
+    }
+
+    // Getters
+    public long getVersion() { return version; }
+    public Map<String, Integer> getNodesByLabel() { return nodesByLabel; }
+    public long getEdgeCount() { return edgeCount; }
+    public int getRootCount() { return rootCount; }
+    public int getMaxDepth() { return maxDepth; }
+    public Map<Integer, Integer> getInDegreeHistogram() { return inDegreeHistogram; }
+    public Map<Integer, Integer> getOutDegreeHistogram() { return outDegreeHistogram; }
+    public Map<String, Long> getPathsPerDefect() { return pathsPerDefect; }
+}
@@ -0,0 +1,19 @@
+package edu.scut.qualitycontrol.model.dto;
+
+// 某个时间窗口内的高发缺陷
+public class HotDefectDto {
+    private final String name;
+    private final long count;
+    private final double ratePerMinute;
+
+    public HotDefectDto(String name, long count, double ratePerMinute) {
+        this.name = name;
+        this.count = count;
+        this.ratePerMinute = ratePerMinute;
+    }
+
+    // Getters
+    public String getName() { return name; }
+    public long getCount() { return count; }
+    public double getRatePerMinute() { return ratePerMinute; }
+}
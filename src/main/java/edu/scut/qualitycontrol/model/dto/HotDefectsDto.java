@@ -0,0 +1,21 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import java.util.List;
+
+// 按 1 分钟、1 小时、1 个班次三个窗口统计的高发缺陷排行
+public class HotDefectsDto {
+    private final List<HotDefectDto> lastMinute;
+    private final List<HotDefectDto> lastHour;
+    private final List<HotDefectDto> lastShift;
+
+    public HotDefectsDto(List<HotDefectDto> lastMinute, List<HotDefectDto> lastHour, List<HotDefectDto> lastShift) {
+        this.lastMinute = lastMinute;
+        this.lastHour = lastHour;
+        this.lastShift = lastShift;
+    }
+
+    // Getters
+    public List<HotDefectDto> getLastMinute() { return lastMinute; }
+    public List<HotDefectDto> getLastHour() { return lastHour; }
+    public List<HotDefectDto> getLastShift() { return lastShift; }
+}
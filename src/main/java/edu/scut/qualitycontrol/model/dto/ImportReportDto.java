@@ -0,0 +1,29 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 流式导入的结果报告
+public class ImportReportDto {
+    private long totalRows;
+    private long importedRows;
+    private long rejectedRows;
+    private long batches;
+    private long elapsedMillis;
+    // 只保留前若干条被拒绝行的原因，避免大文件时报告本身过大
+    private List<String> rejections = new ArrayList<>();
+
+    // Getters and Setters
+    public long getTotalRows() { return totalRows; }
+    public void setTotalRows(long totalRows) { this.totalRows = totalRows; }
+    public long getImportedRows() { return importedRows; }
+    public void setImportedRows(long importedRows) { this.importedRows = importedRows; }
+    public long getRejectedRows() { return rejectedRows; }
+    public void setRejectedRows(long rejectedRows) { this.rejectedRows = rejectedRows; }
+    public long getBatches() { return batches; }
+    public void setBatches(long batches) { this.batches = batches; }
+    public long getElapsedMillis() { return elapsedMillis; }
+    public void setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; }
+    public List<String> getRejections() { return rejections; }
+    public void setRejections(List<String> rejections) { this.rejections = rejections; }
+}
@@ -0,0 +1,16 @@
+package edu.scut.qualitycontrol.model.dto;
+
+// 一次批量上报的处理结果
+public class OccurrenceIngestResultDto {
+    private final long accepted;
+    private final long rejected;
+
+    public OccurrenceIngestResultDto(long accepted, long rejected) {
+        this.accepted = accepted;
+        this.rejected = rejected;
+    }
+
+    // Getters
+    public long getAccepted() { return accepted; }
+    public long getRejected() { return rejected; }
+}
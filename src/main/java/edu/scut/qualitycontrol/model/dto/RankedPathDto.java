@@ -0,0 +1,21 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import edu.scut.qualitycontrol.model.entity.InfluencingFactor;
+
+import java.util.List;
+
+// 一条按可能性排序的根因链路
+public class RankedPathDto {
+    private final List<InfluencingFactor> path;
+    // 链路上各段 weight 的乘积
+    private final double probability;
+
+    public RankedPathDto(List<InfluencingFactor> path, double probability) {
+        this.path = path;
+        this.probability = probability;
+    }
+
+    // Getters
+    public List<InfluencingFactor> getPath() { return path; }
+    public double getProbability() { return probability; }
+}
@@ -0,0 +1,35 @@
+package edu.scut.qualitycontrol.model.dto;
+
+// 一类接口的限流配置；rate 为每秒请求数，<= 0 表示不限制。admitted / throttled 为只读的累计计数
+public class RateLimitDto {
+    private double clientRate;
+    private int clientBurst;
+    private double globalRate;
+    private int globalBurst;
+    private long admitted;
+    private long throttled;
+
+    public RateLimitDto() {
+    }
+
+    public RateLimitDto(double clientRate, int clientBurst, double globalRate, int globalBurst) {
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+        this.globalRate = globalRate;
+        this.globalBurst = globalBurst;
+    }
+
+    // Getters and Setters
+    public double getClientRate() { return clientRate; }
+    public void setClientRate(double clientRate) { this.clientRate = clientRate; }
+    public int getClientBurst() { return clientBurst; }
+    public void setClientBurst(int clientBurst) { this.clientBurst = clientBurst; }
+    public double getGlobalRate() { return globalRate; }
+    public void setGlobalRate(double globalRate) { this.globalRate = globalRate; }
+    public int getGlobalBurst() { return globalBurst; }
+    public void setGlobalBurst(int globalBurst) { this.globalBurst = globalBurst; }
+    public long getAdmitted() { return admitted; }
+    public void setAdmitted(long admitted) { this.admitted = admitted; }
+    public long getThrottled() { return throttled; }
+    public void setThrottled(long throttled) { this.throttled = throttled; }
+}
@@ -3,9 +3,13 @@ package edu.scut.qualitycontrol.model.dto;
 public class RelationshipDto {
         private String startNodeName;
         private String endNodeName;
+        // 可选：该关系的发生概率 (0, 1]，用于根因链路排序
+        private Double weight;
         // Getters and Setters
         public String getStartNodeName() { return startNodeName; }
         public void setStartNodeName(String startNodeName) { this.startNodeName = startNodeName; }
         public String getEndNodeName() { return endNodeName; }
         public void setEndNodeName(String endNodeName) { this.endNodeName = endNodeName; }
+        public Double getWeight() { return weight; }
+        public void setWeight(Double weight) { this.weight = weight; }
     }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import java.util.List;
+
+// 根因标签 / depth 属性与图结构的一致性检查结果；samples 只列出前若干个不一致的节点
+public class RootIndexReportDto {
+    private final int checkedNodes;
+    private final int rootMismatches;
+    private final int depthMismatches;
+    // 位于环路中或环路下游、没有确定深度的节点
+    private final int unresolvedNodes;
+    private final List<String> samples;
+    private final boolean repaired;
+
+    public RootIndexReportDto(int checkedNodes, int rootMismatches, int depthMismatches, int unresolvedNodes,
+                              List<String> samples, boolean repaired) {
+        this.checkedNodes = checkedNodes;
+        this.rootMismatches = rootMismatches;
+        this.depthMismatches = depthMismatches;
+        this.unresolvedNodes = unresolvedNodes;
+        this.samples = samples;
+        this.repaired = repaired;
+    }
+
+    // Getters
+    public int getCheckedNodes() { return checkedNodes; }
+    public int getRootMismatches() { return rootMismatches; }
+    public int getDepthMismatches() { return depthMismatches; }
+    public int getUnresolvedNodes() { return unresolvedNodes; }
+    public List<String> getSamples() { return samples; }
+    public boolean isRepaired() { return repaired; }
+    public boolean isConsistent() { return rootMismatches == 0 && depthMismatches == 0; }
+}
@@ -0,0 +1,19 @@
+package edu.scut.qualitycontrol.model.dto;
+
+// 语义检索命中的节点，score 为余弦相似度
+public class SemanticMatchDto {
+    private final String name;
+    private final String label;
+    private final double score;
+
+    public SemanticMatchDto(String name, String label, double score) {
+        this.name = name;
+        this.label = label;
+        this.score = score;
+    }
+
+    // Getters
+    public String getName() { return name; }
+    public String getLabel() { return label; }
+    public double getScore() { return score; }
+}
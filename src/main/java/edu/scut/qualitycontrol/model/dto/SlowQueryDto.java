@@ -0,0 +1,53 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import java.time.Instant;
+
+// 一条慢查询记录；plan 为抽样采集的执行计划（PROFILE 或 EXPLAIN），未采集时为 null
+public class SlowQueryDto {
+    private final Instant executedAt;
+    private final String database;
+    private final String statement;
+    // 默认只记录参数的类型和长度，不记录取值
+    private final String parameters;
+    private final String queryType;
+    // 从发出语句到结果消费完毕的耗时（含结果映射）
+    private final long elapsedMs;
+    // 驱动结果摘要中的服务端耗时（首条结果可用 + 消费完毕）
+    private final long serverMs;
+    private final long rows;
+    private final String updates;
+    private final Long dbHits;
+    private final String planMode;
+    private final String plan;
+
+    public SlowQueryDto(Instant executedAt, String database, String statement, String parameters, String queryType,
+                        long elapsedMs, long serverMs, long rows, String updates, Long dbHits, String planMode,
+                        String plan) {
+        this.executedAt = executedAt;
+        this.database = database;
+        this.statement = statement;
+        this.parameters = parameters;
+        this.queryType = queryType;
+        this.elapsedMs = elapsedMs;
+        this.serverMs = serverMs;
+        this.rows = rows;
+        this.updates = updates;
+        this.dbHits = dbHits;
+        this.planMode = planMode;
+        this.plan = plan;
+    }
+
+    // Getters
+    public Instant getExecutedAt() { return executedAt; }
+    public String getDatabase() { return database; }
+    public String getStatement() { return statement; }
+    public String getParameters() { return parameters; }
+    public String getQueryType() { return queryType; }
+    public long getElapsedMs() { return elapsedMs; }
+    public long getServerMs() { return serverMs; }
+    public long getRows() { return rows; }
+    public String getUpdates() { return updates; }
+    public Long getDbHits() { return dbHits; }
+    public String getPlanMode() { return planMode; }
+    public String getPlan() { return plan; }
+}
@@ -27,14 +27,17 @@ public interface InfluencingFactorRepository extends Neo4jRepository<Influencing
 
     /**
      * 查找所有导致指定缺陷的因果路径。
+     * 根因由 RootIndexService 维护的 根因 标签标记；路径上的节点深度都不超过缺陷的 depth（从根因出发的最长链长度），
+     * 扩展时据此剪掉比缺陷更深的分支。
      * @return 一个列表，其中每个元素都是一条路径上的 InfluencingFactor 节点列表。
      */
-    @Query("MATCH p = (f:影响因素)-[:导致*1..]->(d:缺陷类型 {name: $defectName}) " +  // 1. 查找路径：从“影响因素”(f)开始，经过1..N个“导致”关系，到达指定的“缺陷类型”(d)
-            "WHERE NOT (:影响因素)-[:导致]->(f) " +  // 2. 过滤根因：只保留那些起始节点(f)不被任何其他“影响因素”所导致的路径。
-            "WITH COLLECT(p) AS paths " +  // 3. 收集路径：将所有通过筛选的根因路径(p)收集到一个列表(paths)中。
-            "UNWIND range(0, size(paths) - 1) AS pathId " +  // 4. 生成路径ID：为每条路径创建一个临时的、从0开始的唯一数字ID(pathId)。
-            "WITH paths[pathId] AS p, pathId " +  // 5. 关联路径与ID：使用pathId作为索引，从paths列表中取出对应的路径(p)。
-            "UNWIND nodes(p)[0..-1] AS factorNode " +  // 6. 展开节点：获取路径(p)中的影响因素节点列表（排除最后的缺陷节点），并将其展开为多行。
-            "RETURN pathId, factorNode AS factor")  // 7. 返回结果：返回路径ID和对应的影响因素节点，以便在Java中组装成最终结构。
+    @Query("MATCH (d:缺陷类型 {name: $defectName}) " +  // 1. 定位缺陷：按名称索引找到指定的“缺陷类型”(d)
+            "MATCH p = (f:根因)-[:导致*1..]->(d) " +  // 2. 查找路径：起点直接限定为带“根因”标签的影响因素，无需逐个判断是否存在上游因素
+            "WHERE all(n IN nodes(p) WHERE coalesce(n.depth <= d.depth, true)) " +  // 3. 剪枝：路径上的节点深度都不超过 d（环路相关节点没有深度，不剪枝）；谓词作用于 nodes(p) 整体时规划器才会把它放进 VarLengthExpand 逐节点判断，切片后的 nodes(p)[1..-1] 只能在展开完成后过滤
+            "WITH COLLECT(p) AS paths " +  // 4. 收集路径：将所有通过筛选的根因路径(p)收集到一个列表(paths)中。
+            "UNWIND range(0, size(paths) - 1) AS pathId " +  // 5. 生成路径ID：为每条路径创建一个临时的、从0开始的唯一数字ID(pathId)。
+            "WITH paths[pathId] AS p, pathId " +  // 6. 关联路径与ID：使用pathId作为索引，从paths列表中取出对应的路径(p)。
+            "UNWIND nodes(p)[0..-1] AS factorNode " +  // 7. 展开节点：获取路径(p)中的影响因素节点列表（排除最后的缺陷节点），并将其展开为多行。
+            "RETURN pathId, factorNode AS factor")  // 8. 返回结果：返回路径ID和对应的影响因素节点，以便在Java中组装成最终结构。
     List<CausalPathNode> findCausalPathNodesForDefect(@Param("defectName") String defectName);
 }
\ No newline at end of file
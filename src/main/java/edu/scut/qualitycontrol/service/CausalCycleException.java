@@ -0,0 +1,20 @@
+package edu.scut.qualitycontrol.service;
+
+import java.util.List;
+
+/**
+ * 新增的 “导致” 关系会在影响因素之间形成环路
+ */
+public class CausalCycleException extends RuntimeException {
+
+    private final List<String> cycle;
+
+    public CausalCycleException(List<String> cycle) {
+        super("关系会形成环路: " + String.join(" -> ", cycle));
+        this.cycle = cycle;
+    }
+
+    public List<String> getCycle() {
+        return cycle;
+    }
+}
@@ -0,0 +1,254 @@
+package edu.scut.qualitycontrol.service;
+
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.GraphEdge;
+import edu.scut.qualitycontrol.graph.GraphNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * 因果图的内存副本
+ * 第一次使用时从 Neo4j 全量加载，之后由 GraphManagerService 在每次写操作提交后增量更新；
+ * 批量导入、初始化等绕过 GraphManagerService 的写入会调用 invalidate，下次使用时重新加载。
+ * 所有修改都是幂等的，因此与并发加载交错时结果仍然正确。
+ * 依赖内存图的派生数据（例如布局）可以通过 addChangeListener 在每次变化后得到通知；
+ * 需要按修改内容增量维护的数据（例如统计量）通过 addMutationListener 在锁内按顺序收到每次加载与修改。
+ * 每条产线（见 ProductionLineHolder）一个独立的内存图和锁，产线之间的读写互不阻塞；监听器回调都带有产线标识。
+ */
+@Slf4j
+@Service
+public class CausalGraphStore {
+
+    private final Neo4jClient neo4jClient;
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
+    private final List<MutationListener> mutationListeners = new CopyOnWriteArrayList<>();
+
+    public CausalGraphStore(Neo4jClient neo4jClient) {
+        this.neo4jClient = neo4jClient;
+    }
+
+    /**
+     * 当前产线的内存快照，未加载时同步从数据库加载
+     */
+    public CausalGraph current() {
+        return current(ProductionLineHolder.current());
+    }
+
+    /**
+     * 指定产线的内存快照（供后台线程按分区使用）
+     */
+    public CausalGraph current(String line) {
+        Partition partition = partition(line);
+        CausalGraph snapshot = partition.graph;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (partition.lock) {
+            if (partition.graph == null) {
+                partition.graph = ProductionLineHolder.callIn(line, () -> load(partition));
+                for (MutationListener listener : mutationListeners) {
+                    listener.loaded(line, partition.graph);
+                }
+            }
+            return partition.graph;
+        }
+    }
+
+    public void upsertNode(GraphNode node) {
+        Partition partition = partition(ProductionLineHolder.current());
+        TransactionHooks.afterCommit(() -> mutate(partition, g -> g.withNode(node), g -> Set.of(node.getName())));
+    }
+
+    public void removeNode(String name) {
+        Partition partition = partition(ProductionLineHolder.current());
+        TransactionHooks.afterCommit(() -> mutate(partition, g -> g.withoutNode(name), g -> {
+            Set<String> touched = new HashSet<>(g.predecessors(name));
+            touched.addAll(g.successors(name));
+            touched.add(name);
+            return touched;
+        }));
+    }
+
+    public void addEdge(String source, String target, Double weight) {
+        Partition partition = partition(ProductionLineHolder.current());
+        TransactionHooks.afterCommit(() -> mutate(partition, g -> g.withEdge(source, target, weight),
+                g -> endpoints(source, target)));
+    }
+
+    public void removeEdge(String source, String target) {
+        Partition partition = partition(ProductionLineHolder.current());
+        TransactionHooks.afterCommit(() -> mutate(partition, g -> g.withoutEdge(source, target),
+                g -> endpoints(source, target)));
+    }
+
+    /**
+     * 丢弃当前产线的内存副本，下次使用时重新加载
+     */
+    public void invalidate() {
+        Partition partition = partition(ProductionLineHolder.current());
+        synchronized (partition.lock) {
+            partition.graph = null;
+        }
+        log.info("产线 {} 的内存因果图已失效，将在下次使用时重新加载。", describe(partition.line));
+        notifyChanged(partition.line);
+    }
+
+    /**
+     * 让指定产线的版本号从 version 之后继续编号（例如进程重启后接上磁盘上的历史版本），须在首次加载之前调用
+     */
+    public void resumeVersionsAfter(String line, long version) {
+        Partition partition = partition(line);
+        synchronized (partition.lock) {
+            if (partition.nextVersion <= version) {
+                partition.nextVersion = version + 1;
+            }
+        }
+    }
+
+    /**
+     * 注册变化监听器，在某条产线的内存图被修改或失效后以产线标识调用（在写线程上执行，监听器应尽快返回）
+     */
+    public void addChangeListener(Consumer<String> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * 注册修改监听器，在该产线的锁内按修改顺序调用，监听器不能回调本类
+     */
+    public void addMutationListener(MutationListener listener) {
+        mutationListeners.add(listener);
+    }
+
+    public interface MutationListener {
+        /** 从数据库全量加载完成 */
+        void loaded(String line, CausalGraph graph);
+
+        /**
+         * 一次修改已应用
+         * @param touched 自身或其关系发生变化的节点（含被删除节点及其邻居）
+         */
+        void applied(String line, CausalGraph before, CausalGraph after, Set<String> touched);
+    }
+
+    static String describe(String line) {
+        return line.isEmpty() ? "(默认)" : line;
+    }
+
+    private Partition partition(String line) {
+        return partitions.computeIfAbsent(line, Partition::new);
+    }
+
+    private void mutate(Partition partition, UnaryOperator<CausalGraph> change,
+                        Function<CausalGraph, Set<String>> touched) {
+        boolean changed = false;
+        synchronized (partition.lock) {
+            // 尚未加载时无需处理，加载时会读到最新数据
+            CausalGraph graph = partition.graph;
+            if (graph != null) {
+                CausalGraph next = change.apply(graph);
+                if (next != graph) {
+                    partition.nextVersion = next.getVersion() + 1;
+                    partition.graph = next;
+                    changed = true;
+                    notifyApplied(partition.line, graph, next, touched.apply(graph));
+                }
+            }
+        }
+        if (changed) {
+            notifyChanged(partition.line);
+        }
+    }
+
+    private static Set<String> endpoints(String source, String target) {
+        Set<String> touched = new HashSet<>();
+        touched.add(source);
+        touched.add(target); // 自环时两者相同
+        return touched;
+    }
+
+    private void notifyApplied(String line, CausalGraph before, CausalGraph after, Set<String> touched) {
+        for (MutationListener listener : mutationListeners) {
+            try {
+                listener.applied(line, before, after, touched);
+            } catch (RuntimeException e) {
+                log.warn("内存因果图修改监听器执行失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    private void notifyChanged(String line) {
+        for (Consumer<String> listener : changeListeners) {
+            try {
+                listener.accept(line);
+            } catch (RuntimeException e) {
+                log.warn("内存因果图变化监听器执行失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    private CausalGraph load(Partition partition) {
+        Collection<GraphNode> nodes = neo4jClient.query(
+                        "MATCH (n) WHERE n:影响因素 OR n:缺陷类型 " +
+                        "RETURN n.name AS name, CASE WHEN n:影响因素 THEN '影响因素' ELSE '缺陷类型' END AS label, " +
+                        "properties(n) AS props")
+                .fetchAs(GraphNode.class)
+                .mappedBy((typeSystem, record) -> new GraphNode(
+                        record.get("name").asString(),
+                        record.get("label").asString(),
+                        withoutDerived(record.get("props").asMap())))
+                .all();
+        Collection<GraphEdge> edges = neo4jClient.query(
+                        "MATCH (a:影响因素)-[r:导致]->(b) WHERE b:影响因素 OR b:缺陷类型 " +
+                        "RETURN a.name AS source, b.name AS target, r.weight AS weight")
+                .fetchAs(GraphEdge.class)
+                .mappedBy((typeSystem, record) -> new GraphEdge(
+                        record.get("source").asString(),
+                        record.get("target").asString(),
+                        record.get("weight").isNull() ? null : record.get("weight").asDouble()))
+                .all();
+        CausalGraph loaded = CausalGraph.of(partition.nextVersion++, nodes, edges);
+        log.info("产线 {} 的内存因果图加载完成：{} 个节点，{} 条关系，版本 {}", describe(partition.line),
+                nodes.size(), edges.size(), loaded.getVersion());
+        return loaded;
+    }
+
+    // depth 由 RootIndexService 在数据库中维护，内存图不保留，以免与增量写入的节点不一致
+    private static Map<String, Object> withoutDerived(Map<String, Object> properties) {
+        if (!properties.containsKey(RootIndexService.DEPTH_PROPERTY)) {
+            return properties;
+        }
+        Map<String, Object> copy = new HashMap<>(properties);
+        copy.remove(RootIndexService.DEPTH_PROPERTY);
+        return copy;
+    }
+
+    /**
+     * 一条产线的内存图
+     */
+    private static final class Partition {
+        private final String line;
+        private final Object lock = new Object();
+        private volatile CausalGraph graph;
+        // guarded by lock
+        private long nextVersion = 1;
+
+        private Partition(String line) {
+            this.line = line;
+        }
+    }
+}
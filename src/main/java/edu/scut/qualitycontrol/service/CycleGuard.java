@@ -0,0 +1,141 @@
+package edu.scut.qualitycontrol.service;
+
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.CycleFinder;
+import edu.scut.qualitycontrol.graph.DynamicTopologicalOrder;
+import edu.scut.qualitycontrol.graph.GraphNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 影响因素之间 “导致” 关系的环路守卫
+ * 所有写入路径（REST、批量导入、初始化）在写库之前都要先通过 reserveEdge 登记新边：
+ * 成环的边会被拒绝；登记成功的边在事务回滚时自动撤销。
+ * 只有 影响因素 -> 影响因素 的边可能成环，指向缺陷类型的边无需检查。
+ * 每条产线一个独立的拓扑序和锁。
+ */
+@Slf4j
+@Service
+public class CycleGuard {
+
+    private final CausalGraphStore causalGraphStore;
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+
+    public CycleGuard(CausalGraphStore causalGraphStore) {
+        this.causalGraphStore = causalGraphStore;
+    }
+
+    /**
+     * 登记一条 影响因素 -> 影响因素 的新边
+     * @return 成环时返回环路 [source, target, ..., source]，否则返回 empty
+     */
+    public Optional<List<String>> reserveEdge(String source, String target) {
+        Guard guard = guard();
+        synchronized (guard) {
+            DynamicTopologicalOrder current = guard.order();
+            if (current.containsEdge(source, target)) {
+                return Optional.empty();
+            }
+            Optional<List<String>> cycle = current.addEdge(source, target);
+            if (cycle.isEmpty()) {
+                TransactionHooks.afterRollback(() -> guard.release(current, source, target));
+            }
+            return cycle;
+        }
+    }
+
+    public void removeEdge(String source, String target) {
+        Guard guard = guard();
+        TransactionHooks.afterCommit(() -> {
+            synchronized (guard) {
+                if (guard.order != null) {
+                    guard.order.removeEdge(source, target);
+                }
+            }
+        });
+    }
+
+    public void removeNode(String name) {
+        Guard guard = guard();
+        TransactionHooks.afterCommit(() -> {
+            synchronized (guard) {
+                if (guard.order != null) {
+                    guard.order.removeNode(name);
+                }
+            }
+        });
+    }
+
+    /**
+     * 批量写入（导入、初始化）之后丢弃当前产线的拓扑序，下次使用时从内存因果图重建
+     */
+    public void invalidate() {
+        Guard guard = guard();
+        synchronized (guard) {
+            guard.order = null;
+        }
+    }
+
+    /**
+     * 审计：列出数据库中已经存在的全部环路
+     */
+    public List<List<String>> findExistingCycles() {
+        return CycleFinder.findCycles(causalGraphStore.current());
+    }
+
+    private Guard guard() {
+        return guards.computeIfAbsent(ProductionLineHolder.current(), Guard::new);
+    }
+
+    /**
+     * 一条产线的拓扑序
+     */
+    private final class Guard {
+        private final String line;
+        // 延迟构建，guarded by this
+        private DynamicTopologicalOrder order;
+
+        private Guard(String line) {
+            this.line = line;
+        }
+
+        private synchronized void release(DynamicTopologicalOrder reserved, String source, String target) {
+            // 期间若已重建，则新的拓扑序本来就不包含这条边
+            if (order == reserved) {
+                order.removeEdge(source, target);
+            }
+        }
+
+        private DynamicTopologicalOrder order() {
+            if (order == null) {
+                CausalGraph graph = causalGraphStore.current(line);
+                DynamicTopologicalOrder built = new DynamicTopologicalOrder();
+                int cyclicEdges = 0;
+                for (GraphNode node : graph.nodes()) {
+                    if (!node.isFactor()) {
+                        continue;
+                    }
+                    built.addNode(node.getName());
+                    for (String target : graph.successors(node.getName())) {
+                        GraphNode targetNode = graph.node(target);
+                        if (targetNode != null && targetNode.isFactor() && built.addEdge(node.getName(), target).isPresent()) {
+                            cyclicEdges++;
+                        }
+                    }
+                }
+                if (cyclicEdges > 0) {
+                    log.warn("产线 {} 的数据库中已有 {} 条关系构成环路，请通过 /api/graph/cycles 排查。",
+                            CausalGraphStore.describe(line), cyclicEdges);
+                }
+                order = built;
+            }
+            return order;
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.springframework.stereotype.Service;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Slf4j
 @Service
@@ -24,68 +25,101 @@ public class DatabaseInitializationService {
     private final Neo4jClient neo4jClient;
     private final InfluencingFactorRepository factorRepository;
     private final DefectTypeRepository defectRepository;
+    private final NodeLookupCache nodeLookupCache;
+    private final CausalGraphStore causalGraphStore;
+    private final CycleGuard cycleGuard;
+    private final RootIndexService rootIndexService;
     private final ObjectMapper mapper = new ObjectMapper();
 
     public DatabaseInitializationService(Neo4jClient neo4jClient,
                                      InfluencingFactorRepository factorRepository,
-                                     DefectTypeRepository defectRepository) {
+                                     DefectTypeRepository defectRepository,
+                                     NodeLookupCache nodeLookupCache,
+                                     CausalGraphStore causalGraphStore,
+                                     CycleGuard cycleGuard,
+                                     RootIndexService rootIndexService) {
         this.neo4jClient = neo4jClient;
         this.factorRepository = factorRepository;
         this.defectRepository = defectRepository;
+        this.nodeLookupCache = nodeLookupCache;
+        this.causalGraphStore = causalGraphStore;
+        this.cycleGuard = cycleGuard;
+        this.rootIndexService = rootIndexService;
     }
 
     public void initializeDatabase() throws Exception {
         // 1. 清理数据库
         log.info("--- 开始清理数据库 ---");
         neo4jClient.query("MATCH (n) DETACH DELETE n").run();
+        nodeLookupCache.evictAll();
+        causalGraphStore.invalidate();
+        cycleGuard.invalidate();
         log.info("--- 清理数据库完成 ---");
 
         // 2. 从 JSON 加载数据并初始化图谱
         log.info("--- 开始初始化知识图谱 ---");
         
-        InputStream inputStream = new ClassPathResource("initialData.json").getInputStream();
-        List<JsonNode> data = mapper.readValue(inputStream, new TypeReference<>() {});
+        try {
+            InputStream inputStream = new ClassPathResource("initialData.json").getInputStream();
+            List<JsonNode> data = mapper.readValue(inputStream, new TypeReference<>() {});
 
-        for (JsonNode item : data) {
-            // ... (内部逻辑与之前完全相同) ...
-            JsonNode startNodeJson = item.get("start_node");
-            Map<String, String> startProps = mapper.convertValue(startNodeJson.get("properties"), new TypeReference<>() {});
+            for (JsonNode item : data) {
+                // ... (内部逻辑与之前完全相同) ...
+                JsonNode startNodeJson = item.get("start_node");
+                Map<String, String> startProps = mapper.convertValue(startNodeJson.get("properties"), new TypeReference<>() {});
 
-            InfluencingFactor startNode = factorRepository.findByName(startProps.get("name"))
-                    .orElseGet(() -> factorRepository.save(new InfluencingFactor(startProps.get("name"), null, null)));
+                InfluencingFactor startNode = factorRepository.findByName(startProps.get("name"))
+                        .orElseGet(() -> factorRepository.save(new InfluencingFactor(startProps.get("name"), null, null)));
 
-            if (startProps.containsKey("standard")) {
-                startNode.setStandard(startProps.get("standard"));
-            }
-            if (startProps.containsKey("description")) {
-                startNode.setDescription(startProps.get("description"));
-            }
-            factorRepository.save(startNode);
+                if (startProps.containsKey("standard")) {
+                    startNode.setStandard(startProps.get("standard"));
+                }
+                if (startProps.containsKey("description")) {
+                    startNode.setDescription(startProps.get("description"));
+                }
+                factorRepository.save(startNode);
 
-            JsonNode endNodeJson = item.get("end_node");
-            String endLabel = endNodeJson.get("label").asText();
-            Map<String, String> endProps = mapper.convertValue(endNodeJson.get("properties"), new TypeReference<>() {});
-            String endNodeName = endProps.get("name");
+                JsonNode endNodeJson = item.get("end_node");
+                String endLabel = endNodeJson.get("label").asText();
+                Map<String, String> endProps = mapper.convertValue(endNodeJson.get("properties"), new TypeReference<>() {});
+                String endNodeName = endProps.get("name");
 
-            if ("影响因素".equals(endLabel)) {
-                InfluencingFactor endNode = factorRepository.findByName(endNodeName)
-                        .orElseGet(() -> factorRepository.save(new InfluencingFactor(endNodeName, null, null)));
-                startNode.getLeadsToFactor().add(endNode);
-            } else {
-                DefectType endNode = defectRepository.findByName(endNodeName)
-                        .orElseGet(() -> {
-                            String manifestations = endProps.get("typical_manifestations");
-                            return defectRepository.save(new DefectType(endNodeName, manifestations));
-                        });
-                if (endProps.containsKey("typical_manifestations") && endNode.getTypicalManifestations() == null) {
-                    endNode.setTypicalManifestations(endProps.get("typical_manifestations"));
-                    defectRepository.save(endNode);
+                if ("影响因素".equals(endLabel)) {
+                    Optional<List<String>> cycle = cycleGuard.reserveEdge(startNode.getName(), endNodeName);
+                    if (cycle.isPresent()) {
+                        log.warn("已跳过会形成环路的关系: {}", String.join(" -> ", cycle.get()));
+                        continue;
+                    }
+                    InfluencingFactor endNode = factorRepository.findByName(endNodeName)
+                            .orElseGet(() -> factorRepository.save(new InfluencingFactor(endNodeName, null, null)));
+                    startNode.getLeadsToFactor().add(endNode);
+                } else {
+                    DefectType endNode = defectRepository.findByName(endNodeName)
+                            .orElseGet(() -> {
+                                String manifestations = endProps.get("typical_manifestations");
+                                return defectRepository.save(new DefectType(endNodeName, manifestations));
+                            });
+                    if (endProps.containsKey("typical_manifestations") && endNode.getTypicalManifestations() == null) {
+                        endNode.setTypicalManifestations(endProps.get("typical_manifestations"));
+                        defectRepository.save(endNode);
+                    }
+                    startNode.getLeadsToDefect().add(endNode);
                 }
-                startNode.getLeadsToDefect().add(endNode);
-            }
-            factorRepository.save(startNode);
+                factorRepository.save(startNode);
 
-            log.info("已连接: ({}) -[导致]-> ({})", startNode.getName(), endNodeName);
+                log.info("已连接: ({}) -[导致]-> ({})", startNode.getName(), endNodeName);
+            }
+        } finally {
+            // 按导入后的图结构整体计算根因标签和深度；中途失败时已写入的部分同样需要修复
+            try {
+                rootIndexService.repair();
+            } catch (RuntimeException e) {
+                log.warn("初始化后修复根因标签 / 深度失败，将由定时检查修复：{}", e.getMessage());
+            }
+            // 初始化过程中绕过了缓存直接写库，结束后整体失效
+            nodeLookupCache.evictAll();
+            causalGraphStore.invalidate();
+            cycleGuard.invalidate();
         }
         log.info("--- 知识图谱初始化完成！ ---");
     }
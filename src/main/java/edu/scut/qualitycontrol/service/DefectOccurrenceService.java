@@ -0,0 +1,281 @@
+package edu.scut.qualitycontrol.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.GraphNode;
+import edu.scut.qualitycontrol.model.dto.CachedNode;
+import edu.scut.qualitycontrol.model.dto.HotDefectDto;
+import edu.scut.qualitycontrol.model.dto.HotDefectsDto;
+import edu.scut.qualitycontrol.model.dto.OccurrenceIngestResultDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缺陷发生次数的高吞吐统计
+ * AOI 设备上报的检测事件只在内存中累加（LongAdder 分段计数 + 无锁滑动窗口），
+ * 由定时任务批量刷写到 Neo4j 的 缺陷类型 节点 (occurrence_count / last_occurrence_at)。
+ * 请求体按 token 流式解析，单个事件不创建任何 DTO 对象。
+ * 计数按产线分别维护，刷写时写入各自的数据库；缺陷类型被删除后，其计数器随内存图的修改一起移除。
+ */
+@Slf4j
+@Service
+public class DefectOccurrenceService implements CausalGraphStore.MutationListener {
+
+    private static final long SECOND_MILLIS = 1000L;
+    private static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+    // 单个元素的 count 上限，超出视为格式错误
+    private static final long MAX_COUNT = Integer.MAX_VALUE;
+
+    private static final String FLUSH_QUERY =
+            "UNWIND $rows AS row " +
+            "MATCH (d:缺陷类型 {name: row.name}) " +
+            "SET d.occurrence_count = coalesce(d.occurrence_count, 0) + row.delta, " +
+            "    d.last_occurrence_at = row.lastSeen";
+
+    private final GraphManagerService graphManagerService;
+    private final Neo4jClient neo4jClient;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    // 产线 -> 缺陷类型 -> 计数器
+    private final Map<String, Map<String, DefectCounter>> countersByLine = new ConcurrentHashMap<>();
+
+    private final int shiftMinutes;
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+
+    public DefectOccurrenceService(GraphManagerService graphManagerService,
+                                   Neo4jClient neo4jClient,
+                                   CausalGraphStore causalGraphStore,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${qualitycontrol.occurrence.shift-length:8h}") Duration shiftLength) {
+        this.graphManagerService = graphManagerService;
+        this.neo4jClient = neo4jClient;
+        this.shiftMinutes = (int) Math.max(60, shiftLength.toMinutes());
+        this.acceptedCounter = Counter.builder("defect.occurrences").tag("result", "accepted").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("defect.occurrences").tag("result", "rejected").register(meterRegistry);
+        causalGraphStore.addMutationListener(this);
+    }
+
+    /**
+     * 流式解析批量上报：[{"defectType": "镀层发黑", "count": 3}, ...]，count 缺省为 1。
+     * 未知的缺陷类型会被拒绝（通过节点缓存判断，只有第一次出现时可能查库）。
+     * 格式不对的元素（不是对象，或 defectType 不是字符串、count 不是 1 ~ Integer.MAX_VALUE 的整数）逐个拒绝，不影响后续元素。
+     */
+    public OccurrenceIngestResultDto ingest(InputStream body) throws IOException {
+        long now = System.currentTimeMillis();
+        long accepted = 0;
+        long rejected = 0;
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("请求体必须是 JSON 数组。");
+            }
+            JsonToken element;
+            while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (element == null) {
+                    throw new IllegalArgumentException("请求体不是完整的 JSON 数组。");
+                }
+                if (element != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    rejected++;
+                    continue;
+                }
+                String name = null;
+                long count = 1;
+                boolean malformed = false;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("defectType".equals(field) && value == JsonToken.VALUE_STRING) {
+                        name = parser.getText();
+                    } else if ("count".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                        // 超出 long 范围的整数（BIG_INTEGER）不能调用 getLongValue，同样按格式错误逐个拒绝
+                        if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER
+                                || parser.getLongValue() > MAX_COUNT) {
+                            malformed = true;
+                        } else {
+                            count = parser.getLongValue();
+                        }
+                    } else {
+                        malformed |= "defectType".equals(field) || "count".equals(field);
+                        // 嵌套的对象 / 数组整体跳过，保证后续元素仍能正确解析
+                        parser.skipChildren();
+                    }
+                }
+                DefectCounter counter = malformed || name == null || count <= 0 ? null : counterFor(name);
+                if (counter == null) {
+                    rejected++;
+                } else {
+                    counter.record(now, count);
+                    accepted += count;
+                }
+            }
+        }
+        acceptedCounter.increment(accepted);
+        rejectedCounter.increment(rejected);
+        return new OccurrenceIngestResultDto(accepted, rejected);
+    }
+
+    private Map<String, DefectCounter> counters() {
+        return countersByLine.computeIfAbsent(ProductionLineHolder.current(), line -> new ConcurrentHashMap<>());
+    }
+
+    private DefectCounter counterFor(String name) {
+        Map<String, DefectCounter> counters = counters();
+        DefectCounter counter = counters.get(name);
+        if (counter != null) {
+            return counter;
+        }
+        // 冷路径：首次出现的名称需要确认它确实是缺陷类型
+        boolean known = graphManagerService.lookupNode(name).map(CachedNode::isDefect).orElse(false);
+        return known ? counters.computeIfAbsent(name, key -> new DefectCounter(shiftMinutes)) : null;
+    }
+
+    /**
+     * 按 1 分钟、1 小时、1 个班次三个窗口返回 Top-N 高发缺陷
+     */
+    public HotDefectsDto hotDefects(int limit) {
+        long now = System.currentTimeMillis();
+        return new HotDefectsDto(
+                topN(now, limit, 1, true),
+                topN(now, limit, 60, false),
+                topN(now, limit, shiftMinutes, false));
+    }
+
+    private List<HotDefectDto> topN(long now, int limit, int windowMinutes, boolean useSeconds) {
+        List<HotDefectDto> result = new ArrayList<>();
+        counters().forEach((name, counter) -> {
+            long count = useSeconds
+                    ? counter.seconds.sum(now, 60)
+                    : counter.minutes.sum(now, windowMinutes);
+            if (count > 0) {
+                result.add(new HotDefectDto(name, count, (double) count / windowMinutes));
+            }
+        });
+        result.sort(Comparator.comparingLong(HotDefectDto::getCount).reversed());
+        int size = Math.max(1, limit);
+        return result.size() > size ? new ArrayList<>(result.subList(0, size)) : result;
+    }
+
+    /**
+     * 定时把两次刷写之间的增量批量写入数据库
+     */
+    @Scheduled(fixedDelayString = "${qualitycontrol.occurrence.flush-interval-ms:10000}")
+    public void flush() {
+        countersByLine.forEach((line, counters) -> ProductionLineHolder.runIn(line, () -> flush(line, counters)));
+    }
+
+    private void flush(String line, Map<String, DefectCounter> counters) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        Map<String, Long> deltas = new HashMap<>();
+        counters.forEach((name, counter) -> {
+            long delta = counter.pending.sumThenReset();
+            if (delta > 0) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("name", name);
+                row.put("delta", delta);
+                row.put("lastSeen", counter.lastSeen);
+                rows.add(row);
+                deltas.put(name, delta);
+            }
+        });
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            neo4jClient.query(FLUSH_QUERY).bind(rows).to("rows").run();
+            log.debug("已刷写产线 {} 的 {} 个缺陷类型的发生次数。", CausalGraphStore.describe(line), rows.size());
+        } catch (RuntimeException e) {
+            // 写库失败时把增量放回，下一轮重试
+            log.error("产线 {} 的缺陷发生次数刷写失败，将在下一轮重试：{}", CausalGraphStore.describe(line), e.getMessage());
+            deltas.forEach((name, delta) -> {
+                DefectCounter counter = counters.get(name);
+                if (counter != null) {
+                    counter.pending.add(delta);
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * 重新加载后，移除已不再是缺陷类型的计数器
+     */
+    @Override
+    public void loaded(String line, CausalGraph graph) {
+        Map<String, DefectCounter> counters = countersByLine.get(line);
+        if (counters != null) {
+            counters.keySet().removeIf(name -> !isDefect(graph, name));
+        }
+    }
+
+    /**
+     * 缺陷类型被删除时移除其计数器；未刷写的增量已无处写入，随之丢弃
+     */
+    @Override
+    public void applied(String line, CausalGraph before, CausalGraph after, Set<String> touched) {
+        Map<String, DefectCounter> counters = countersByLine.get(line);
+        if (counters == null) {
+            return;
+        }
+        for (String name : touched) {
+            if (counters.containsKey(name) && !isDefect(after, name)) {
+                counters.remove(name);
+            }
+        }
+    }
+
+    private static boolean isDefect(CausalGraph graph, String name) {
+        GraphNode node = graph.node(name);
+        return node != null && node.isDefect();
+    }
+
+    /**
+     * 单个缺陷类型的计数器
+     */
+    private static final class DefectCounter {
+        // 尚未刷写到数据库的增量
+        private final LongAdder pending = new LongAdder();
+        // 秒级桶：用于 1 分钟窗口
+        private final SlidingWindowCounter seconds = new SlidingWindowCounter(SECOND_MILLIS, 60);
+        // 分钟级桶：用于 1 小时和 1 个班次窗口
+        private final SlidingWindowCounter minutes;
+        private volatile long lastSeen;
+
+        private DefectCounter(int shiftMinutes) {
+            this.minutes = new SlidingWindowCounter(MINUTE_MILLIS, shiftMinutes);
+        }
+
+        private void record(long now, long count) {
+            pending.add(count);
+            seconds.add(now, count);
+            minutes.add(now, count);
+            if (now > lastSeen) {
+                lastSeen = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package edu.scut.qualitycontrol.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.model.dto.CachedNode;
+import edu.scut.qualitycontrol.model.dto.EdgeRecord;
+import edu.scut.qualitycontrol.model.dto.ImportReportDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大文件流式导入 (NDJSON / CSV)
+ * 请求线程边读边解析，每攒够一批就放入有界队列；写入线程从队列取批次写入 Neo4j。
+ * 解析与写库相互重叠，内存中最多只有 (队列容量 + 2) 个批次，与文件大小无关。
+ */
+@Slf4j
+@Service
+public class EdgeImportService {
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    public enum Format { NDJSON, CSV }
+
+    private static final TypeReference<Map<String, Object>> PROPERTIES_TYPE = new TypeReference<>() {};
+
+    // 结束标记，按引用比较
+    private static final List<EdgeRecord> END_OF_STREAM = new ArrayList<>(0);
+
+    private static final String MERGE_FACTOR_EDGES =
+            "UNWIND $rows AS row " +
+            "MERGE (s:影响因素 {name: row.start.name}) " +
+            "SET s += row.start " +
+            "MERGE (e:影响因素 {name: row.end.name}) " +
+            "ON CREATE SET e += row.end " +
+            "MERGE (s)-[:导致]->(e)";
+
+    private static final String MERGE_DEFECT_EDGES =
+            "UNWIND $rows AS row " +
+            "MERGE (s:影响因素 {name: row.start.name}) " +
+            "SET s += row.start " +
+            "MERGE (e:缺陷类型 {name: row.end.name}) " +
+            "SET e.typical_manifestations = coalesce(e.typical_manifestations, row.end.typical_manifestations) " +
+            "MERGE (s)-[:导致]->(e)";
+
+    private final Neo4jClient neo4jClient;
+    private final NodeLookupCache nodeLookupCache;
+    private final CausalGraphStore causalGraphStore;
+    private final CycleGuard cycleGuard;
+    private final RootIndexService rootIndexService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService writerExecutor = Executors.newCachedThreadPool();
+
+    private final int batchSize;
+    private final int queueCapacity;
+    private final int maxReportedRejections;
+
+    public EdgeImportService(Neo4jClient neo4jClient,
+                             NodeLookupCache nodeLookupCache,
+                             CausalGraphStore causalGraphStore,
+                             CycleGuard cycleGuard,
+                             RootIndexService rootIndexService,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${qualitycontrol.import.batch-size:1000}") int batchSize,
+                             @Value("${qualitycontrol.import.queue-capacity:4}") int queueCapacity,
+                             @Value("${qualitycontrol.import.max-reported-rejections:100}") int maxReportedRejections) {
+        this.neo4jClient = neo4jClient;
+        this.nodeLookupCache = nodeLookupCache;
+        this.causalGraphStore = causalGraphStore;
+        this.cycleGuard = cycleGuard;
+        this.rootIndexService = rootIndexService;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.maxReportedRejections = maxReportedRejections;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writerExecutor.shutdownNow();
+    }
+
+    public ImportReportDto importEdges(InputStream inputStream, Format format) throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        ImportReportDto report = new ImportReportDto();
+        BlockingQueue<List<EdgeRecord>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        // 写入线程需要沿用请求所属的产线（数据库）
+        String productionLine = ProductionLineHolder.current();
+        Future<?> writer = writerExecutor.submit(() -> {
+            ProductionLineHolder.set(productionLine);
+            try {
+                drain(queue, report);
+            } finally {
+                ProductionLineHolder.clear();
+            }
+            return null;
+        });
+
+        log.info("--- 开始流式导入 ({}) ---", format);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            List<EdgeRecord> batch = new ArrayList<>(batchSize);
+            String[] csvHeader = null;
+            long lineNumber = 0;
+            long totalRows = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && csvHeader == null) {
+                    csvHeader = splitCsvLine(line);
+                    continue;
+                }
+                totalRows++;
+                try {
+                    EdgeRecord record = format == Format.NDJSON ? parseNdjson(line, lineNumber) : parseCsv(csvHeader, line, lineNumber);
+                    checkCycle(record);
+                    batch.add(record);
+                } catch (IllegalArgumentException | JsonProcessingException e) {
+                    reject(report, lineNumber, e.getMessage());
+                }
+                if (batch.size() >= batchSize) {
+                    enqueue(queue, batch, writer);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                enqueue(queue, batch, writer);
+            }
+            enqueue(queue, END_OF_STREAM, writer);
+            awaitWriter(writer);
+            synchronized (report) {
+                report.setTotalRows(totalRows);
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            writer.cancel(true);
+            throw e;
+        } finally {
+            // 导入的关系没有逐条维护根因标签和深度，结束后按当前数据统一修复；导入中途失败时已提交的批次同样需要修复
+            try {
+                rootIndexService.repair();
+            } catch (RuntimeException e) {
+                log.warn("导入后修复根因标签 / 深度失败，将由定时检查修复：{}", e.getMessage());
+            }
+            // 导入绕过了 GraphManagerService，节点缓存和内存因果图整体失效
+            nodeLookupCache.evictAll();
+            causalGraphStore.invalidate();
+            cycleGuard.invalidate();
+        }
+
+        report.setElapsedMillis(System.currentTimeMillis() - startTime);
+        log.info("--- 流式导入完成：共 {} 行，成功 {} 行，拒绝 {} 行，耗时 {} ms ---",
+                report.getTotalRows(), report.getImportedRows(), report.getRejectedRows(), report.getElapsedMillis());
+        return report;
+    }
+
+    // --- 写入线程 ---
+
+    private void drain(BlockingQueue<List<EdgeRecord>> queue, ImportReportDto report) throws InterruptedException {
+        while (true) {
+            List<EdgeRecord> batch = queue.take();
+            if (batch == END_OF_STREAM) {
+                return;
+            }
+            try {
+                writeBatch(batch);
+                synchronized (report) {
+                    report.setImportedRows(report.getImportedRows() + batch.size());
+                    report.setBatches(report.getBatches() + 1);
+                }
+            } catch (RuntimeException e) {
+                // 一个批次失败不影响后续批次，整批记为拒绝
+                log.error("批次写入失败（行 {} - {}）：{}", batch.get(0).getLineNumber(),
+                        batch.get(batch.size() - 1).getLineNumber(), e.getMessage());
+                for (EdgeRecord record : batch) {
+                    reject(report, record.getLineNumber(), "写入失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<EdgeRecord> batch) {
+        List<Map<String, Object>> factorRows = new ArrayList<>();
+        List<Map<String, Object>> defectRows = new ArrayList<>();
+        for (EdgeRecord record : batch) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("start", record.getStartProperties());
+            row.put("end", record.getEndProperties());
+            if (CachedNode.FACTOR_LABEL.equals(record.getEndLabel())) {
+                factorRows.add(row);
+            } else {
+                defectRows.add(row);
+            }
+        }
+        // 两类关系在同一事务中写入：批次要么整体提交，要么整体拒绝
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!factorRows.isEmpty()) {
+                neo4jClient.query(MERGE_FACTOR_EDGES).bind(factorRows).to("rows").run();
+            }
+            if (!defectRows.isEmpty()) {
+                neo4jClient.query(MERGE_DEFECT_EDGES).bind(defectRows).to("rows").run();
+            }
+        });
+    }
+
+    // --- 解析 ---
+
+    /**
+     * 每行一个 JSON 对象，格式与 initialData.json 中的元素相同：
+     * {"start_node": {"label": "影响因素", "properties": {...}}, "end_node": {"label": "...", "properties": {...}}}
+     */
+    private EdgeRecord parseNdjson(String line, long lineNumber) throws JsonProcessingException {
+        JsonNode item = mapper.readTree(line);
+        JsonNode startNode = item.get("start_node");
+        JsonNode endNode = item.get("end_node");
+        if (startNode == null || endNode == null) {
+            throw new IllegalArgumentException("缺少 start_node 或 end_node");
+        }
+        Map<String, Object> startProps = mapper.convertValue(startNode.get("properties"), PROPERTIES_TYPE);
+        Map<String, Object> endProps = mapper.convertValue(endNode.get("properties"), PROPERTIES_TYPE);
+        return validate(new EdgeRecord(lineNumber, startProps, endNode.path("label").asText(null), endProps),
+                startNode.path("label").asText(null));
+    }
+
+    /**
+     * 第一行为表头：start_label, start_<属性名>..., end_label, end_<属性名>...
+     * 例如：start_label,start_name,start_standard,end_label,end_name,end_typical_manifestations
+     */
+    private EdgeRecord parseCsv(String[] header, String line, long lineNumber) {
+        String[] cells = splitCsvLine(line);
+        if (cells.length != header.length) {
+            throw new IllegalArgumentException("列数 " + cells.length + " 与表头列数 " + header.length + " 不一致");
+        }
+        String startLabel = null;
+        String endLabel = null;
+        Map<String, Object> startProps = new LinkedHashMap<>();
+        Map<String, Object> endProps = new LinkedHashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            String column = header[i];
+            String value = cells[i];
+            if ("start_label".equals(column)) {
+                startLabel = value;
+            } else if ("end_label".equals(column)) {
+                endLabel = value;
+            } else if (value.isEmpty()) {
+                continue; // 空单元格视为未提供该属性
+            } else if (column.startsWith("start_")) {
+                startProps.put(column.substring("start_".length()), value);
+            } else if (column.startsWith("end_")) {
+                endProps.put(column.substring("end_".length()), value);
+            }
+        }
+        return validate(new EdgeRecord(lineNumber, startProps, endLabel, endProps), startLabel);
+    }
+
+    private EdgeRecord validate(EdgeRecord record, String startLabel) {
+        if (!CachedNode.FACTOR_LABEL.equals(startLabel)) {
+            throw new IllegalArgumentException("起始节点标签必须是 '影响因素'，实际为 '" + startLabel + "'");
+        }
+        if (!CachedNode.FACTOR_LABEL.equals(record.getEndLabel()) && !CachedNode.DEFECT_LABEL.equals(record.getEndLabel())) {
+            throw new IllegalArgumentException("结束节点标签必须是 '影响因素' 或 '缺陷类型'，实际为 '" + record.getEndLabel() + "'");
+        }
+        if (record.getStartProperties() == null || record.getEndProperties() == null) {
+            throw new IllegalArgumentException("缺少节点属性 properties");
+        }
+        if (!isNonBlankString(record.getStartProperties().get("name")) || !isNonBlankString(record.getEndProperties().get("name"))) {
+            throw new IllegalArgumentException("起始节点和结束节点都必须有 name 属性");
+        }
+        checkScalarProperties(record.getStartProperties());
+        checkScalarProperties(record.getEndProperties());
+        return record;
+    }
+
+    /**
+     * Neo4j 的属性值只能是基本类型或基本类型的列表；嵌套对象会让整批 SET 失败，解析时逐行拒绝
+     */
+    private static void checkScalarProperties(Map<String, Object> properties) {
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            Object value = property.getValue();
+            if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    if (!isScalar(element)) {
+                        throw new IllegalArgumentException("属性 '" + property.getKey() + "' 的列表元素必须是字符串、数值或布尔值");
+                    }
+                }
+            } else if (value != null && !isScalar(value)) {
+                throw new IllegalArgumentException("属性 '" + property.getKey() + "' 必须是字符串、数值、布尔值或它们的列表");
+            }
+        }
+    }
+
+    private static boolean isScalar(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean;
+    }
+
+    /**
+     * 影响因素之间的边在进入写入队列之前先做环路检查
+     */
+    private void checkCycle(EdgeRecord record) {
+        if (CachedNode.FACTOR_LABEL.equals(record.getEndLabel())) {
+            Optional<List<String>> cycle = cycleGuard.reserveEdge(record.getStartName(), record.getEndName());
+            if (cycle.isPresent()) {
+                throw new IllegalArgumentException("会形成环路: " + String.join(" -> ", cycle.get()));
+            }
+        }
+    }
+
+    private static boolean isNonBlankString(Object value) {
+        return value instanceof String && !((String) value).isBlank();
+    }
+
+    /**
+     * 简单的 RFC 4180 单行解析：支持双引号包裹和 "" 转义，不支持跨行的单元格
+     */
+    static String[] splitCsvLine(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        cell.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString().trim());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("引号未闭合（不支持跨行单元格）");
+        }
+        cells.add(cell.toString().trim());
+        return cells.toArray(new String[0]);
+    }
+
+    // --- 辅助方法 ---
+
+    private void enqueue(BlockingQueue<List<EdgeRecord>> queue, List<EdgeRecord> batch, Future<?> writer) throws InterruptedException {
+        // 队列满时阻塞解析线程（背压），同时防止写入线程意外退出后永久阻塞
+        while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+            if (writer.isDone()) {
+                awaitWriter(writer);
+                throw new IllegalStateException("写入线程已意外退出，导入中断。");
+            }
+        }
+    }
+
+    private void awaitWriter(Future<?> writer) throws InterruptedException {
+        try {
+            writer.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("写入线程异常退出: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void reject(ImportReportDto report, long lineNumber, String reason) {
+        synchronized (report) {
+            report.setRejectedRows(report.getRejectedRows() + 1);
+            if (report.getRejections().size() < maxReportedRejections) {
+                report.getRejections().add("第 " + lineNumber + " 行: " + reason);
+            }
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package edu.scut.qualitycontrol.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.GraphEdge;
+import edu.scut.qualitycontrol.graph.GraphNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 因果图的历史版本，用于按时间点 / 版本号做审计查询
+ * 1. 内存中保留最近 retained-versions 个版本的 CausalGraph。快照之间结构共享，每多保留一个版本只多占用被修改的那几条路径；
+ * 2. 磁盘上按分段保存：每段以一个完整快照开头，其后是逐版本的变更日志（只记录被修改节点的最新状态和出边）。
+ *    日志达到 snapshot-every 条、或内存图重新加载（初始化、批量导入）时开始新的一段，相当于定期压缩；
+ *    超过 disk-retention 的分段被删除。查询更早的版本时读取所在分段的快照并回放日志。
+ * 时间点以写操作提交后应用到内存图的时刻为准；绕过内存图的批量写入以重新加载的时刻为准。
+ * 每条产线的历史分别保存，版本号也分别编号。
+ */
+@Slf4j
+@Service
+public class GraphHistoryService implements CausalGraphStore.MutationListener {
+
+    private static final String SNAPSHOT_SUFFIX = ".snapshot.json.gz";
+    private static final String JOURNAL_SUFFIX = ".journal.jsonl";
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("v(\\d+)-(\\d+)\\.snapshot\\.json\\.gz");
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final Path baseDirectory;
+    private final int retainedVersions;
+    private final int snapshotEvery;
+    private final Duration diskRetention;
+    private final Map<String, LineHistory> lines = new ConcurrentHashMap<>();
+
+    // 各产线共用一个写盘线程，写盘不在请求路径上
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "graph-history");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public GraphHistoryService(CausalGraphStore causalGraphStore, ProductionLineHolder productionLineHolder,
+                               @Value("${qualitycontrol.history.dir:data/history}") String directory,
+                               @Value("${qualitycontrol.history.retained-versions:500}") int retainedVersions,
+                               @Value("${qualitycontrol.history.snapshot-every:200}") int snapshotEvery,
+                               @Value("${qualitycontrol.history.disk-retention:365d}") Duration diskRetention) {
+        this.baseDirectory = Paths.get(directory);
+        this.retainedVersions = retainedVersions;
+        this.snapshotEvery = snapshotEvery;
+        this.diskRetention = diskRetention;
+        for (String line : productionLineHolder.partitions()) {
+            long lastVersion = history(line).scanSegments();
+            // 版本号接上磁盘上的历史，保证跨重启唯一
+            causalGraphStore.resumeVersionsAfter(line, lastVersion);
+        }
+        causalGraphStore.addMutationListener(this);
+    }
+
+    // --- 查询 ---
+
+    /**
+     * 按版本号或时间点取当前产线的快照，version 优先
+     * @throws DateTimeParseException asOf 不是合法的 ISO-8601 日期或时间
+     */
+    public Optional<CausalGraph> resolve(String asOf, Long version) {
+        LineHistory history = history(ProductionLineHolder.current());
+        if (version != null) {
+            return history.atVersion(version);
+        }
+        return history.asOf(parseAsOf(asOf));
+    }
+
+    /**
+     * 支持 2024-05-01T08:00:00Z、2024-05-01T16:00+08:00、2024-05-01T16:00（服务器时区）以及 2024-05-01（当天结束时）
+     */
+    static Instant parseAsOf(String text) {
+        if (text == null || text.isBlank()) {
+            throw new DateTimeParseException("缺少 asOf", String.valueOf(text), 0);
+        }
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (DateTimeParseException ignored) {
+            // 尝试下一种格式
+        }
+        try {
+            return LocalDateTime.parse(text).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException ignored) {
+            // 尝试下一种格式
+        }
+        return LocalDate.parse(text).plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().minusMillis(1);
+    }
+
+    // --- 记录 ---
+
+    @Override
+    public void loaded(String line, CausalGraph graph) {
+        long now = System.currentTimeMillis();
+        LineHistory history = history(line);
+        history.remember(graph, now);
+        writer.execute(() -> history.writeSnapshot(graph, now));
+    }
+
+    @Override
+    public void applied(String line, CausalGraph before, CausalGraph after, Set<String> touched) {
+        long now = System.currentTimeMillis();
+        LineHistory history = history(line);
+        history.remember(after, now);
+        writer.execute(() -> history.appendJournal(after, touched, now));
+    }
+
+    private LineHistory history(String line) {
+        return lines.computeIfAbsent(line, LineHistory::new);
+    }
+
+    // --- 回放 ---
+
+    private static CausalGraph apply(CausalGraph graph, JournalEntry entry) {
+        // 先处理节点，再按记录的出边覆盖（被删除节点的入边已体现在其前驱的出边记录中）
+        for (NodeRecord change : entry.changes) {
+            graph = change.label == null ? graph.withoutNode(change.name) : graph.withNode(change.toNode());
+        }
+        for (NodeRecord change : entry.changes) {
+            if (change.label == null) {
+                continue;
+            }
+            for (String target : new ArrayList<>(graph.successors(change.name))) {
+                if (!change.outgoing.containsKey(target)) {
+                    graph = graph.withoutEdge(change.name, target);
+                }
+            }
+            for (Map.Entry<String, Double> edge : change.outgoing.entrySet()) {
+                graph = graph.withEdge(change.name, edge.getKey(), edge.getValue());
+            }
+        }
+        return graph.atVersion(entry.version);
+    }
+
+    /**
+     * 等待已排队的快照和日志写完再退出，避免丢失最后几个版本
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        writer.shutdown();
+        if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("因果图历史仍有未写完的记录，已放弃等待");
+        }
+    }
+
+    /**
+     * 一条产线的历史：默认分区存放在 history.dir 下，其他产线存放在 history.dir/{产线} 下
+     */
+    private final class LineHistory {
+        private final String line;
+        private final Path directory;
+
+        // 最近的版本：版本号 -> 快照
+        private final ConcurrentSkipListMap<Long, CausalGraph> recent = new ConcurrentSkipListMap<>();
+        // 应用时刻（毫秒）-> 该时刻的最新版本号
+        private final ConcurrentSkipListMap<Long, Long> recentByTime = new ConcurrentSkipListMap<>();
+        // 磁盘分段：起始版本号 / 起始时刻 -> 分段
+        private final ConcurrentSkipListMap<Long, Segment> segmentsByVersion = new ConcurrentSkipListMap<>();
+        private final ConcurrentSkipListMap<Long, Segment> segmentsByTime = new ConcurrentSkipListMap<>();
+        // 最近读取过的分段快照，避免反复解压
+        private final Cache<Long, CausalGraph> segmentSnapshots = Caffeine.newBuilder().maximumSize(8).build();
+
+        // 只在 graph-history 线程上访问
+        private Segment currentSegment;
+        private int journalLength;
+
+        private LineHistory(String line) {
+            this.line = line;
+            this.directory = line.isEmpty() ? baseDirectory : baseDirectory.resolve(line);
+        }
+
+        Optional<CausalGraph> atVersion(long version) {
+            CausalGraph graph = recent.get(version);
+            if (graph != null) {
+                return Optional.of(graph);
+            }
+            Map.Entry<Long, Segment> segment = segmentsByVersion.floorEntry(version);
+            if (segment == null) {
+                return Optional.empty();
+            }
+            return replay(segment.getValue(), entry -> entry.version <= version)
+                    .filter(replayed -> replayed.getVersion() == version);
+        }
+
+        /**
+         * 在 instant 时刻生效的版本
+         */
+        Optional<CausalGraph> asOf(Instant instant) {
+            long millis = instant.toEpochMilli();
+            Map.Entry<Long, Long> entry = recentByTime.floorEntry(millis);
+            if (entry != null) {
+                CausalGraph graph = recent.get(entry.getValue());
+                if (graph != null) {
+                    return Optional.of(graph);
+                }
+            }
+            Map.Entry<Long, Segment> segment = segmentsByTime.floorEntry(millis);
+            if (segment == null) {
+                return Optional.empty();
+            }
+            return replay(segment.getValue(), journalEntry -> journalEntry.timestamp <= millis);
+        }
+
+        // 在 CausalGraphStore 的锁内调用，版本号和时刻都单调递增
+        void remember(CausalGraph graph, long timestamp) {
+            recent.put(graph.getVersion(), graph);
+            recentByTime.put(timestamp, graph.getVersion());
+            recent.headMap(graph.getVersion() - retainedVersions + 1).clear();
+            Long oldest = recent.firstKey();
+            Map.Entry<Long, Long> first;
+            while ((first = recentByTime.firstEntry()) != null && first.getValue() < oldest) {
+                recentByTime.remove(first.getKey());
+            }
+        }
+
+        void writeSnapshot(CausalGraph graph, long timestamp) {
+            try {
+                Files.createDirectories(directory);
+                SnapshotFile file = new SnapshotFile();
+                file.version = graph.getVersion();
+                file.timestamp = timestamp;
+                file.nodes = new ArrayList<>();
+                for (GraphNode node : graph.nodes()) {
+                    file.nodes.add(NodeRecord.of(graph, node.getName()));
+                }
+                Path target = directory.resolve("v" + graph.getVersion() + "-" + timestamp + SNAPSHOT_SUFFIX);
+                // 先写临时文件再替换，避免进程中途退出留下损坏的快照
+                Path temp = Files.createTempFile(directory, "graph-snapshot", ".tmp");
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                    mapper.writeValue(out, file);
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Segment segment = new Segment(graph.getVersion(), timestamp, target,
+                        directory.resolve("v" + graph.getVersion() + JOURNAL_SUFFIX));
+                addSegment(segment);
+                currentSegment = segment;
+                journalLength = 0;
+                pruneSegments(timestamp);
+            } catch (IOException | RuntimeException e) {
+                currentSegment = null; // 下一次修改时重新写快照
+                log.warn("写入产线 {} 的因果图历史快照（版本 {}）失败：{}", CausalGraphStore.describe(line), graph.getVersion(),
+                        e.getMessage());
+            }
+        }
+
+        void appendJournal(CausalGraph after, Set<String> touched, long timestamp) {
+            if (currentSegment == null || journalLength >= snapshotEvery) {
+                writeSnapshot(after, timestamp);
+                return;
+            }
+            try {
+                JournalEntry entry = new JournalEntry();
+                entry.version = after.getVersion();
+                entry.timestamp = timestamp;
+                entry.changes = new ArrayList<>();
+                for (String name : touched) {
+                    entry.changes.add(NodeRecord.of(after, name));
+                }
+                byte[] bytes = (mapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+                Files.write(currentSegment.journal, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                journalLength++;
+            } catch (IOException | RuntimeException e) {
+                currentSegment = null;
+                log.warn("写入产线 {} 的因果图变更日志（版本 {}）失败：{}", CausalGraphStore.describe(line), after.getVersion(),
+                        e.getMessage());
+            }
+        }
+
+        // 同一毫秒内开始的多个分段按时间只能查到最后一个（它包含该时刻的最新版本），与目录的遍历顺序无关
+        private void addSegment(Segment segment) {
+            segmentsByVersion.put(segment.startVersion, segment);
+            segmentsByTime.merge(segment.startTime, segment,
+                    (existing, added) -> existing.startVersion > added.startVersion ? existing : added);
+        }
+
+        // 删除整段都早于保留期限的分段（以下一段的起始时刻为该段的结束时刻）
+        private void pruneSegments(long now) {
+            long cutoff = now - diskRetention.toMillis();
+            for (Segment segment : new ArrayList<>(segmentsByTime.values())) {
+                Map.Entry<Long, Segment> next = segmentsByTime.higherEntry(segment.startTime);
+                if (next == null || next.getKey() >= cutoff) {
+                    break;
+                }
+                segmentsByVersion.remove(segment.startVersion);
+                segmentsByTime.remove(segment.startTime);
+                segmentSnapshots.invalidate(segment.startVersion);
+                try {
+                    Files.deleteIfExists(segment.snapshot);
+                    Files.deleteIfExists(segment.journal);
+                } catch (IOException e) {
+                    log.warn("删除过期的因果图历史分段 {} 失败：{}", segment.snapshot, e.getMessage());
+                }
+            }
+        }
+
+        private Optional<CausalGraph> replay(Segment segment, Predicate<JournalEntry> include) {
+            CausalGraph graph = segmentSnapshots.get(segment.startVersion, key -> readSnapshot(segment));
+            if (graph == null) {
+                return Optional.empty();
+            }
+            if (!Files.exists(segment.journal)) {
+                return Optional.of(graph);
+            }
+            try (BufferedReader reader = Files.newBufferedReader(segment.journal, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JournalEntry entry;
+                    try {
+                        entry = mapper.readValue(line, JournalEntry.class);
+                    } catch (IOException e) {
+                        break; // 正在写入的最后一行
+                    }
+                    if (!include.test(entry)) {
+                        break;
+                    }
+                    graph = apply(graph, entry);
+                }
+            } catch (IOException e) {
+                log.warn("读取因果图变更日志 {} 失败：{}", segment.journal, e.getMessage());
+                return Optional.empty();
+            }
+            return Optional.of(graph);
+        }
+
+        private CausalGraph readSnapshot(Segment segment) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(segment.snapshot))) {
+                SnapshotFile file = mapper.readValue(in, SnapshotFile.class);
+                List<GraphNode> nodes = new ArrayList<>();
+                List<GraphEdge> edges = new ArrayList<>();
+                for (NodeRecord record : file.nodes) {
+                    nodes.add(record.toNode());
+                    record.outgoing.forEach((target, weight) -> edges.add(new GraphEdge(record.name, target, weight)));
+                }
+                return CausalGraph.of(file.version, nodes, edges);
+            } catch (IOException e) {
+                log.warn("读取因果图历史快照 {} 失败：{}", segment.snapshot, e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * @return 磁盘上最新的版本号，没有历史时返回 0
+         */
+        long scanSegments() {
+            if (!Files.isDirectory(directory)) {
+                return 0;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SNAPSHOT_SUFFIX)) {
+                for (Path file : files) {
+                    Matcher matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+                    if (matcher.matches()) {
+                        long startVersion = Long.parseLong(matcher.group(1));
+                        addSegment(new Segment(startVersion, Long.parseLong(matcher.group(2)), file,
+                                directory.resolve("v" + startVersion + JOURNAL_SUFFIX)));
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("扫描因果图历史目录 {} 失败：{}", directory, e.getMessage());
+                return 0;
+            }
+            if (segmentsByVersion.isEmpty()) {
+                return 0;
+            }
+            Segment last = segmentsByVersion.lastEntry().getValue();
+            long lastVersion = last.startVersion;
+            if (Files.exists(last.journal)) {
+                try (BufferedReader reader = Files.newBufferedReader(last.journal, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        try {
+                            lastVersion = Math.max(lastVersion, mapper.readValue(line, JournalEntry.class).version);
+                        } catch (IOException e) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    log.warn("读取因果图变更日志 {} 失败：{}", last.journal, e.getMessage());
+                }
+            }
+            log.info("已发现产线 {} 的 {} 个因果图历史分段，最新版本 {}", CausalGraphStore.describe(line),
+                    segmentsByVersion.size(), lastVersion);
+            return lastVersion;
+        }
+    }
+
+    // --- 磁盘格式 ---
+
+    private static final class Segment {
+        final long startVersion;
+        final long startTime;
+        final Path snapshot;
+        final Path journal;
+
+        Segment(long startVersion, long startTime, Path snapshot, Path journal) {
+            this.startVersion = startVersion;
+            this.startTime = startTime;
+            this.snapshot = snapshot;
+            this.journal = journal;
+        }
+    }
+
+    static final class SnapshotFile {
+        public long version;
+        public long timestamp;
+        public List<NodeRecord> nodes;
+    }
+
+    static final class JournalEntry {
+        public long version;
+        public long timestamp;
+        public List<NodeRecord> changes;
+    }
+
+    /**
+     * 一个节点的完整状态及其出边；label 为 null 表示节点已被删除
+     */
+    static final class NodeRecord {
+        public String name;
+        public String label;
+        public Map<String, Object> properties;
+        public Map<String, Double> outgoing = new HashMap<>();
+
+        static NodeRecord of(CausalGraph graph, String name) {
+            NodeRecord record = new NodeRecord();
+            record.name = name;
+            GraphNode node = graph.node(name);
+            if (node != null) {
+                record.label = node.getLabel();
+                record.properties = node.getProperties();
+                for (String target : graph.successors(name)) {
+                    record.outgoing.put(target, graph.weight(name, target));
+                }
+            }
+            return record;
+        }
+
+        GraphNode toNode() {
+            return new GraphNode(name, label, properties == null ? new HashMap<>() : properties);
+        }
+    }
+}
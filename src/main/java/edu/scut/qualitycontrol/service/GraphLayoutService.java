@@ -0,0 +1,154 @@
+package edu.scut.qualitycontrol.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.LayeredLayout;
+import edu.scut.qualitycontrol.graph.NodePosition;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务端计算并缓存的分层布局，前端拿到坐标后直接渲染，不必在浏览器里跑力导向布局
+ * 全图布局按内存因果图的版本缓存：图发生变化后在后台线程重新计算，
+ * 计算完成之前返回上一版本的布局（新增节点暂时没有坐标，由前端自行放置）。
+ * 单个缺陷的因果子图规模很小，按 (缺陷, 版本) 同步计算并缓存。
+ * 每条产线的布局独立缓存；后台线程池由各产线共享，同一产线的重算会合并，繁忙的产线不会阻塞其他产线。
+ */
+@Slf4j
+@Service
+public class GraphLayoutService {
+
+    private final CausalGraphStore causalGraphStore;
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2), runnable -> {
+                Thread thread = new Thread(runnable, "graph-layout-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final Map<String, LineLayout> layouts = new ConcurrentHashMap<>();
+    private final Cache<String, Map<String, NodePosition>> subgraphLayouts = Caffeine.newBuilder()
+            .maximumSize(256)
+            .build();
+
+    public GraphLayoutService(CausalGraphStore causalGraphStore) {
+        this.causalGraphStore = causalGraphStore;
+        causalGraphStore.addChangeListener(this::scheduleRecompute);
+    }
+
+    /**
+     * 当前产线的全图布局，节点名称 -> 坐标
+     */
+    public Map<String, NodePosition> fullLayout() {
+        String line = ProductionLineHolder.current();
+        VersionedLayout cached = layout(line).current;
+        if (cached == null) {
+            return recompute(line).positions;
+        }
+        if (cached.version != causalGraphStore.current(line).getVersion()) {
+            scheduleRecompute(line);
+        }
+        return cached.positions;
+    }
+
+    /**
+     * 指定缺陷的因果子图（缺陷本身及其全部上游影响因素）的布局
+     */
+    public Map<String, NodePosition> subgraphLayout(CausalGraph graph, String defectName) {
+        String key = ProductionLineHolder.current() + "|" + defectName + "@" + graph.getVersion();
+        return subgraphLayouts.get(key, k -> LayeredLayout.compute(graph, ancestorsOf(graph, defectName)));
+    }
+
+    /**
+     * 缺陷本身及所有能到达它的节点
+     */
+    public static Set<String> ancestorsOf(CausalGraph graph, String name) {
+        Set<String> result = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        result.add(name);
+        stack.push(name);
+        while (!stack.isEmpty()) {
+            for (String previous : graph.predecessors(stack.pop())) {
+                if (result.add(previous)) {
+                    stack.push(previous);
+                }
+            }
+        }
+        return result;
+    }
+
+    private LineLayout layout(String line) {
+        return layouts.computeIfAbsent(line, key -> new LineLayout());
+    }
+
+    private void scheduleRecompute(String line) {
+        // 合并连续的写入：已经排队的重算会读到最新的图
+        LineLayout layout = layout(line);
+        if (layout.recomputeScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                layout.recomputeScheduled.set(false);
+                try {
+                    recompute(line);
+                } catch (RuntimeException e) {
+                    log.warn("后台重新计算产线 {} 的图布局失败：{}", CausalGraphStore.describe(line), e.getMessage());
+                }
+            });
+        }
+    }
+
+    private VersionedLayout recompute(String line) {
+        LineLayout layout = layout(line);
+        CausalGraph graph = causalGraphStore.current(line);
+        VersionedLayout cached = layout.current;
+        if (cached != null && cached.version == graph.getVersion()) {
+            return cached;
+        }
+        long start = System.nanoTime();
+        VersionedLayout computed = new VersionedLayout(graph.getVersion(),
+                Collections.unmodifiableMap(LayeredLayout.compute(graph)));
+        synchronized (layout) {
+            // 并发计算时只保留较新的版本
+            if (layout.current == null || layout.current.version < computed.version) {
+                layout.current = computed;
+            }
+        }
+        log.debug("产线 {} 的图布局计算完成：版本 {}，{} 个节点，耗时 {} ms", CausalGraphStore.describe(line),
+                computed.version, computed.positions.size(), (System.nanoTime() - start) / 1_000_000);
+        return computed;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static final class LineLayout {
+        private final AtomicBoolean recomputeScheduled = new AtomicBoolean();
+        private volatile VersionedLayout current;
+    }
+
+    private static final class VersionedLayout {
+        private final long version;
+        private final Map<String, NodePosition> positions;
+
+        private VersionedLayout(long version, Map<String, NodePosition> positions) {
+            this.version = version;
+            this.positions = positions;
+        }
+    }
+}
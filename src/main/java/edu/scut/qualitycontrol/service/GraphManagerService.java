@@ -1,20 +1,31 @@
 package edu.scut.qualitycontrol.service;
 
+import edu.scut.qualitycontrol.model.dto.CachedNode;
 import edu.scut.qualitycontrol.model.dto.CausalPathNode;
 import edu.scut.qualitycontrol.model.dto.GraphDataDto;
 import edu.scut.qualitycontrol.model.dto.LinkDto;
+import edu.scut.qualitycontrol.model.dto.RankedPathDto;
 import edu.scut.qualitycontrol.model.entity.DefectType;
 import edu.scut.qualitycontrol.model.entity.InfluencingFactor;
 import edu.scut.qualitycontrol.repository.DefectTypeRepository;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.CausalPaths;
+import edu.scut.qualitycontrol.graph.GraphNode;
+import edu.scut.qualitycontrol.graph.KShortestPaths;
 import edu.scut.qualitycontrol.repository.InfluencingFactorRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.neo4j.core.Neo4jClient;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -24,16 +35,37 @@ public class GraphManagerService {
 
     private final InfluencingFactorRepository influencingFactorRepository;
     private final DefectTypeRepository defectRepository;
+    private final Neo4jClient neo4jClient;
+    private final NodeLookupCache nodeLookupCache;
+    private final CausalGraphStore causalGraphStore;
+    private final CycleGuard cycleGuard;
+    private final GraphLayoutService graphLayoutService;
+    private final RootIndexService rootIndexService;
 
-    public GraphManagerService(InfluencingFactorRepository influencingFactorRepository, DefectTypeRepository defectRepository) {
+    // 未设置 weight 的 “导致” 关系在排序时使用的默认概率
+    private final double defaultProbability;
+
+    public GraphManagerService(InfluencingFactorRepository influencingFactorRepository, DefectTypeRepository defectRepository,
+                               Neo4jClient neo4jClient, NodeLookupCache nodeLookupCache,
+                               CausalGraphStore causalGraphStore, CycleGuard cycleGuard,
+                               GraphLayoutService graphLayoutService, RootIndexService rootIndexService,
+                               @Value("${qualitycontrol.ranking.default-probability:0.5}") double defaultProbability) {
         this.influencingFactorRepository = influencingFactorRepository;
         this.defectRepository = defectRepository;
+        this.neo4jClient = neo4jClient;
+        this.nodeLookupCache = nodeLookupCache;
+        this.causalGraphStore = causalGraphStore;
+        this.cycleGuard = cycleGuard;
+        this.graphLayoutService = graphLayoutService;
+        this.rootIndexService = rootIndexService;
+        this.defaultProbability = defaultProbability;
         log.info("数据库连接成功，GraphManagerService 已初始化。");
     }
 
     // --- 增：创建和连接节点 ---
     public DefectType createOrUpdateDefect(String name, String manifestations) {
-        return defectRepository.findByName(name)
+        nodeLookupCache.evict(name);
+        DefectType saved = defectRepository.findByName(name)
                 .map(defect -> { // 更新
                     defect.setTypicalManifestations(manifestations);
                     log.info("已更新缺陷类型节点：" + name);
@@ -44,64 +76,113 @@ public class GraphManagerService {
                     log.info("已创建新的缺陷类型节点：" + name);
                     return defectRepository.save(newDefect);
                 });
+        rootIndexService.refresh(List.of(name));
+        causalGraphStore.upsertNode(toGraphNode(saved));
+        return saved;
     }
 
+    /**
+     * 更新已有影响因素时只改节点自身的属性：
+     * 保存实体会重写它的全部下游 “导致” 关系，关系上的 weight 会丢失（与 createRelationship 同理）。
+     */
     public InfluencingFactor createOrUpdateFactor(String name, String standard, String description) {
-        return influencingFactorRepository.findByName(name)
+        nodeLookupCache.evict(name);
+        InfluencingFactor saved = influencingFactorRepository.findByName(name)
                 .map(factor -> { // 更新
+                    neo4jClient.query(
+                                    "MATCH (f:影响因素 {name: $name}) " +
+                                    "SET f.standard = coalesce($standard, f.standard), " +
+                                    "    f.description = coalesce($description, f.description)")
+                            .bind(name).to("name")
+                            .bind(standard).to("standard")
+                            .bind(description).to("description")
+                            .run();
                     if (standard != null) factor.setStandard(standard);
                     if (description != null) factor.setDescription(description);
                     log.info("已更新影响因素节点：" + name);
-                    return influencingFactorRepository.save(factor);
+                    return factor;
                 })
                 .orElseGet(() -> { // 创建
                     InfluencingFactor newFactor = new InfluencingFactor(name, standard, description);
                     log.info("已创建新的影响因素节点：" + name);
                     return influencingFactorRepository.save(newFactor);
                 });
+        rootIndexService.refresh(List.of(name));
+        causalGraphStore.upsertNode(toGraphNode(saved));
+        return saved;
     }
 
     public boolean createRelationship(String startNodeName, String endNodeName) {
-        Optional<InfluencingFactor> startNodeOpt = influencingFactorRepository.findByName(startNodeName);
-        if (startNodeOpt.isEmpty()) {
+        return createRelationship(startNodeName, endNodeName, null);
+    }
+
+    /**
+     * 创建 “导致” 关系，可选地设置其发生概率 weight (0, 1]。
+     * 关系已存在时只更新 weight（weight 为 null 则保持原值）。
+     * 这里直接用 Cypher 按节点 ID 写关系，而不是保存整个实体：
+     * 保存实体会加载并重写起始节点的全部下游关系，既慢又可能丢失关系上的属性。
+     * @throws CausalCycleException 新关系会在影响因素之间形成环路时
+     */
+    public boolean createRelationship(String startNodeName, String endNodeName, Double weight) {
+        Optional<CachedNode> startRef = lookupNode(startNodeName);
+        if (startRef.isEmpty() || !startRef.get().isFactor()) {
             log.error("错误：起始节点 '影响因素' '" + startNodeName + "' 不存在。");
             return false;
         }
-        InfluencingFactor startNode = startNodeOpt.get();
 
-        // 尝试将结束节点作为影响因素查找
-        Optional<InfluencingFactor> endFactorOpt = influencingFactorRepository.findByName(endNodeName);
-        if (endFactorOpt.isPresent()) {
-            InfluencingFactor endNode = endFactorOpt.get();
-            if (startNode.getLeadsToFactor().stream().anyMatch(f -> f.getId().equals(endNode.getId()))) {
-                 log.info("关系已存在: (" + startNodeName + ") -[导致]-> (" + endNodeName + ")");
-            } else {
-                 startNode.getLeadsToFactor().add(endNode);
-                 influencingFactorRepository.save(startNode);
-                 log.info("已创建新关系: (" + startNodeName + ") -[导致]-> (" + endNodeName + ")");
+        // 通过缓存确定结束节点（影响因素优先，其次缺陷类型）
+        Optional<CachedNode> endRef = lookupNode(endNodeName);
+        if (endRef.isEmpty()) {
+            log.error("错误：结束节点 '{}' 不存在。", endNodeName);
+            return false;
+        }
+        nodeLookupCache.evict(startNodeName, endNodeName);
+
+        // 影响因素之间的边需要先通过环路检查
+        if (endRef.get().isFactor()) {
+            Optional<List<String>> cycle = cycleGuard.reserveEdge(startNodeName, endNodeName);
+            if (cycle.isPresent()) {
+                log.error("错误：关系 ({}) -[导致]-> ({}) 会形成环路：{}", startNodeName, endNodeName, String.join(" -> ", cycle.get()));
+                throw new CausalCycleException(cycle.get());
             }
-            return true;
         }
 
-        // 尝试将结束节点作为缺陷类型查找
-        Optional<DefectType> endDefectOpt = defectRepository.findByName(endNodeName);
-        if (endDefectOpt.isPresent()) {
-            DefectType endNode = endDefectOpt.get();
-             if (startNode.getLeadsToDefect().stream().anyMatch(d -> d.getId().equals(endNode.getId()))) {
-                log.info("关系已存在: (" + startNodeName + ") -[导致]-> (" + endNodeName + ")");
-            } else {
-                startNode.getLeadsToDefect().add(endNode);
-                influencingFactorRepository.save(startNode);
-                log.info("已创建新关系: (" + startNodeName + ") -[导致]-> (" + endNodeName + ")");
+        Optional<Boolean> existed = neo4jClient.query(
+                        "MATCH (s:影响因素) WHERE id(s) = $startId " +
+                        "MATCH (e) WHERE id(e) = $endId " +
+                        "OPTIONAL MATCH (s)-[old:导致]->(e) " +
+                        "WITH s, e, count(old) > 0 AS existed " +
+                        "MERGE (s)-[r:导致]->(e) " +
+                        "SET r.weight = coalesce($weight, r.weight) " +
+                        "RETURN existed")
+                .bind(startRef.get().getId()).to("startId")
+                .bind(endRef.get().getId()).to("endId")
+                .bind(weight).to("weight")
+                .fetchAs(Boolean.class)
+                .mappedBy((typeSystem, record) -> record.get("existed").asBoolean())
+                .first();
+        if (existed.isEmpty()) {
+            log.error("错误：节点 '{}' 或 '{}' 已被删除。", startNodeName, endNodeName);
+            // 事务照常提交，不会触发回滚时的撤销；没有写入的边要主动从环路守卫中移除，以免之后误判成环
+            if (endRef.get().isFactor()) {
+                cycleGuard.removeEdge(startNodeName, endNodeName);
             }
-            return true;
+            return false;
         }
 
-        log.error("错误：结束节点 '{}' 不存在。", endNodeName);
-        return false;
+        if (existed.get()) {
+            log.info("关系已存在: (" + startNodeName + ") -[导致]-> (" + endNodeName + ")");
+        } else {
+            rootIndexService.refresh(List.of(endNodeName));
+            log.info("已创建新关系: (" + startNodeName + ") -[导致]-> (" + endNodeName + ")");
+        }
+        causalGraphStore.addEdge(startNodeName, endNodeName, weight);
+        return true;
     }
 
     // --- 查：查询节点和关系 ---
+    // 只读事务在集群模式下会被路由到只读副本
+    @Transactional(readOnly = true)
     public List<?> findAllNodes(String label) {
         if ("缺陷类型".equals(label)) {
             return defectRepository.findAll();
@@ -115,12 +196,43 @@ public class GraphManagerService {
         }
     }
 
+    @Transactional(readOnly = true)
     public Optional<?> findNodeByName(String name) {
-        Optional<InfluencingFactor> factor = influencingFactorRepository.findByName(name);
-        if (factor.isPresent()) {
-            return factor;
+        Optional<CachedNode> ref = lookupNode(name);
+        if (ref.isEmpty()) {
+            return Optional.empty();
         }
-        return defectRepository.findByName(name);
+        if (ref.get().isDefect()) {
+            return defectRepository.findById(ref.get().getId());
+        }
+        return influencingFactorRepository.findById(ref.get().getId());
+    }
+
+    /**
+     * 通过缓存按名称查找节点的标签、ID 和属性（不加载关系）。
+     * 同名时影响因素优先，与 findNodeByName 的语义保持一致。
+     */
+    @Transactional(readOnly = true)
+    public Optional<CachedNode> lookupNode(String name) {
+        return nodeLookupCache.get(name, this::loadNode);
+    }
+
+    private Optional<CachedNode> loadNode(String name) {
+        return neo4jClient.query("CALL { " +
+                        "MATCH (f:影响因素 {name: $name}) RETURN f AS n, '影响因素' AS label, 0 AS priority " +
+                        "UNION " +
+                        "MATCH (d:缺陷类型 {name: $name}) RETURN d AS n, '缺陷类型' AS label, 1 AS priority " +
+                        "} " +
+                        "RETURN label, id(n) AS id, properties(n) AS props " +
+                        "ORDER BY priority LIMIT 1")
+                .bind(name).to("name")
+                .fetchAs(CachedNode.class)
+                .mappedBy((typeSystem, record) -> new CachedNode(
+                        record.get("label").asString(),
+                        record.get("id").asLong(),
+                        name,
+                        record.get("props").asMap()))
+                .first();
     }
 
     /**
@@ -128,6 +240,7 @@ public class GraphManagerService {
      * @param name 搜索关键词
      * @return 包含所有匹配的“影响因素”和“缺陷类型”节点的列表
      */
+    @Transactional(readOnly = true)
     public List<Object> findNodesByNameFuzzy(String name) {
         // 调用的是我们刚刚在 Repository 中新定义的方法
         List<InfluencingFactor> factors = influencingFactorRepository.findByNameContaining(name);
@@ -141,12 +254,14 @@ public class GraphManagerService {
         return results;
     }
     
+    @Transactional(readOnly = true)
     public List<DefectType> findAllDefectsCausedBy(String factorName) {
         return influencingFactorRepository.findByName(factorName)
                 .map(factor -> new ArrayList<>(factor.getLeadsToDefect()))
                 .orElse(new ArrayList<>());
     }
     
+    @Transactional(readOnly = true)
     public List<InfluencingFactor> findAllCausesForDefect(String defectName) {
         return influencingFactorRepository.findAllCausesForDefect(defectName);
     }
@@ -154,6 +269,7 @@ public class GraphManagerService {
     /**
      * 获取所有的影响因素链。
      */
+    @Transactional(readOnly = true)
     public List<List<InfluencingFactor>> findAllCausalPathsForDefect(String defectName) {
         // 1. 从 Repository 获取扁平化的路径节点列表
         List<CausalPathNode> pathNodes = influencingFactorRepository.findCausalPathNodesForDefect(defectName);
@@ -175,16 +291,85 @@ public class GraphManagerService {
         return finalResult;
     }
 
+    /**
+     * 在历史快照上查找导致指定缺陷的全部因果路径（不访问数据库）
+     */
+    public List<List<InfluencingFactor>> findAllCausalPathsInSnapshot(CausalGraph graph, String defectName) {
+        List<List<InfluencingFactor>> result = new ArrayList<>();
+        for (List<String> path : CausalPaths.enumerate(graph, defectName)) {
+            List<InfluencingFactor> factors = new ArrayList<>();
+            for (String name : path) {
+                GraphNode node = graph.node(name);
+                factors.add(new InfluencingFactor(name, node.getProperty("standard"), node.getProperty("description")));
+            }
+            result.add(factors);
+        }
+        return result;
+    }
+
+    /**
+     * 在历史快照上按名称查找节点（不含关系）
+     */
+    public Optional<Object> findNodeInSnapshot(CausalGraph graph, String name) {
+        GraphNode node = graph.node(name);
+        if (node == null) {
+            return Optional.empty();
+        }
+        if (node.isDefect()) {
+            return Optional.of(new DefectType(name, node.getProperty("typical_manifestations")));
+        }
+        return Optional.of(new InfluencingFactor(name, node.getProperty("standard"), node.getProperty("description")));
+    }
+
+    /**
+     * 获取最可能的 K 条根因链路（按各段 weight 乘积从大到小排列）。
+     * 在内存因果图上运行 K 最短路算法，不需要枚举全部路径。
+     */
+    @Transactional(readOnly = true)
+    public List<RankedPathDto> findTopCausalPathsForDefect(String defectName, int k) {
+        CausalGraph graph = causalGraphStore.current();
+        List<RankedPathDto> result = new ArrayList<>();
+        for (KShortestPaths.RankedPath path : KShortestPaths.find(graph, defectName, k, defaultProbability)) {
+            List<InfluencingFactor> factors = new ArrayList<>();
+            // 最后一个节点是缺陷本身，与 findAllCausalPathsForDefect 保持一致只返回影响因素
+            for (String name : path.getNodes().subList(0, path.getNodes().size() - 1)) {
+                GraphNode node = graph.node(name);
+                factors.add(new InfluencingFactor(name, node.getProperty("standard"), node.getProperty("description")));
+            }
+            result.add(new RankedPathDto(factors, path.getProbability()));
+        }
+        return result;
+    }
+
+    /**
+     * 列出影响因素之间已经存在的环路
+     */
+    @Transactional(readOnly = true)
+    public List<List<String>> findExistingCycles() {
+        return cycleGuard.findExistingCycles();
+    }
+
     // --- 删：删除节点和关系 ---
     public boolean deleteNodeByName(String name) {
-        Optional<?> nodeOpt = findNodeByName(name);
+        Optional<CachedNode> nodeOpt = lookupNode(name);
+        nodeLookupCache.evict(name);
         if (nodeOpt.isPresent()) {
-            Object node = nodeOpt.get();
-            if (node instanceof DefectType) {
-                defectRepository.delete((DefectType) node);
+            CachedNode node = nodeOpt.get();
+            if (node.isDefect()) {
+                defectRepository.deleteById(node.getId());
             } else {
-                influencingFactorRepository.delete((InfluencingFactor) node);
+                // 删除前记下直接下游，它们的根因标签和深度可能随之变化
+                Collection<String> successors = neo4jClient.query(
+                                "MATCH (n:影响因素)-[:导致]->(next) WHERE id(n) = $id RETURN next.name AS name")
+                        .bind(node.getId()).to("id")
+                        .fetchAs(String.class)
+                        .mappedBy((typeSystem, record) -> record.get("name").asString())
+                        .all();
+                influencingFactorRepository.deleteById(node.getId());
+                rootIndexService.refresh(successors);
             }
+            causalGraphStore.removeNode(name);
+            cycleGuard.removeNode(name);
             log.info("已删除节点 '" + name + "'。");
             return true;
         } else {
@@ -194,20 +379,21 @@ public class GraphManagerService {
     }
     
     public boolean deleteRelationship(String startName, String endName) {
-        Optional<InfluencingFactor> startNodeOpt = influencingFactorRepository.findByName(startName);
-        if (startNodeOpt.isEmpty()) {
-             log.error("错误：无法找到起始节点。");
-             return false;
-        }
-        InfluencingFactor startNode = startNodeOpt.get();
-        
-        boolean removed = startNode.getLeadsToFactor().removeIf(factor -> factor.getName().equals(endName));
-        if (!removed) {
-             removed = startNode.getLeadsToDefect().removeIf(defect -> defect.getName().equals(endName));
-        }
+        nodeLookupCache.evict(startName, endName);
+        long removed = neo4jClient.query(
+                        "MATCH (s:影响因素 {name: $startName})-[r:导致]->(e {name: $endName}) " +
+                        "DELETE r RETURN count(r) AS removed")
+                .bind(startName).to("startName")
+                .bind(endName).to("endName")
+                .fetchAs(Long.class)
+                .mappedBy((typeSystem, record) -> record.get("removed").asLong())
+                .first()
+                .orElse(0L);
 
-        if (removed) {
-            influencingFactorRepository.save(startNode);
+        if (removed > 0) {
+            rootIndexService.refresh(List.of(endName));
+            causalGraphStore.removeEdge(startName, endName);
+            cycleGuard.removeEdge(startName, endName);
             log.info("已断开关系: (" + startName + ") -[导致]-> (" + endName + ")");
             return true;
         }
@@ -245,7 +431,51 @@ public class GraphManagerService {
             }
         }
 
-        // 3. 封装并返回
-        return new GraphDataDto(allNodes, allLinks);
+        // 3. 封装并返回，附带服务端计算好的分层布局
+        return new GraphDataDto(allNodes, allLinks, graphLayoutService.fullLayout());
+    }
+
+    /**
+     * 指定缺陷的因果子图（缺陷本身及其全部上游影响因素）及其分层布局
+     */
+    @Transactional(readOnly = true)
+    public Optional<GraphDataDto> getCausalSubgraph(String defectName) {
+        CausalGraph graph = causalGraphStore.current();
+        GraphNode defect = graph.node(defectName);
+        if (defect == null || !defect.isDefect()) {
+            return Optional.empty();
+        }
+        Set<String> members = GraphLayoutService.ancestorsOf(graph, defectName);
+        List<Object> nodes = new ArrayList<>();
+        List<LinkDto> links = new ArrayList<>();
+        for (String name : members) {
+            GraphNode node = graph.node(name);
+            if (node.isDefect()) {
+                nodes.add(new DefectType(name, node.getProperty("typical_manifestations")));
+                continue;
+            }
+            nodes.add(new InfluencingFactor(name, node.getProperty("standard"), node.getProperty("description")));
+            for (String target : graph.successors(name)) {
+                if (members.contains(target)) {
+                    links.add(new LinkDto(name, target));
+                }
+            }
+        }
+        return Optional.of(new GraphDataDto(nodes, links, graphLayoutService.subgraphLayout(graph, defectName)));
+    }
+
+    private static GraphNode toGraphNode(InfluencingFactor factor) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("name", factor.getName());
+        if (factor.getStandard() != null) properties.put("standard", factor.getStandard());
+        if (factor.getDescription() != null) properties.put("description", factor.getDescription());
+        return new GraphNode(factor.getName(), GraphNode.FACTOR_LABEL, properties);
+    }
+
+    private static GraphNode toGraphNode(DefectType defect) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("name", defect.getName());
+        if (defect.getTypicalManifestations() != null) properties.put("typical_manifestations", defect.getTypicalManifestations());
+        return new GraphNode(defect.getName(), GraphNode.DEFECT_LABEL, properties);
     }
-}
\ No newline at end of file
+}
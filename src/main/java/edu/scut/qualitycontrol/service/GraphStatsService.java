@@ -0,0 +1,135 @@
+package edu.scut.qualitycontrol.service;
+
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.GraphStatistics;
+import edu.scut.qualitycontrol.model.dto.GraphStatsDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 因果图统计量
+ * 统计量在内存图每次加载和修改时增量维护（GraphManagerService 的写操作提交后逐条应用；
+ * 初始化、批量导入使内存图失效，重新加载时全量计算一次），读取时直接返回缓存的快照，
+ * 只有两次写之间的第一次读取需要复制一次统计量。
+ * recompute 可在怀疑增量结果有偏差时按需全量重算。每条产线的统计量和锁相互独立。
+ */
+@Slf4j
+@Service
+public class GraphStatsService implements CausalGraphStore.MutationListener {
+
+    private final CausalGraphStore causalGraphStore;
+    private final Map<String, LineStats> lines = new ConcurrentHashMap<>();
+
+    public GraphStatsService(CausalGraphStore causalGraphStore) {
+        this.causalGraphStore = causalGraphStore;
+        causalGraphStore.addMutationListener(this);
+    }
+
+    /**
+     * 当前产线的统计量
+     */
+    public GraphStatsDto stats() {
+        String line = ProductionLineHolder.current();
+        LineStats stats = stats(line);
+        GraphStatsDto current = stats.snapshot;
+        if (current != null) {
+            return current;
+        }
+        causalGraphStore.current(line); // 未加载时触发加载，加载回调中完成全量计算
+        synchronized (stats) {
+            if (stats.snapshot == null && stats.statistics != null) {
+                stats.snapshot = toDto(stats.version, stats.statistics);
+            }
+            current = stats.snapshot;
+        }
+        // recompute 需要先取内存图，不能在持有本类锁时调用（锁顺序为 CausalGraphStore -> 本类）
+        return current != null ? current : recompute();
+    }
+
+    /**
+     * 基于当前产线的内存图全量重算
+     */
+    public GraphStatsDto recompute() {
+        String line = ProductionLineHolder.current();
+        LineStats stats = stats(line);
+        while (true) {
+            CausalGraph graph = causalGraphStore.current(line);
+            GraphStatistics computed = GraphStatistics.compute(graph);
+            // 计算期间内存图若已被修改或重新加载，则基于新版本再算一次，避免发布已经过时的结果
+            if (causalGraphStore.current(line) != graph) {
+                continue;
+            }
+            synchronized (stats) {
+                // 上面的比较与加锁之间仍可能有修改到达（applied 可能已把 statistics 清空），以监听器见过的最新版本为准
+                if (graph.getVersion() >= stats.latestVersion) {
+                    stats.statistics = computed;
+                    stats.version = graph.getVersion();
+                    stats.snapshot = toDto(stats.version, stats.statistics);
+                    log.info("产线 {} 的因果图统计量已全量重算，版本 {}", CausalGraphStore.describe(line), stats.version);
+                    return stats.snapshot;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void loaded(String line, CausalGraph graph) {
+        GraphStatistics computed = GraphStatistics.compute(graph);
+        LineStats stats = stats(line);
+        synchronized (stats) {
+            stats.statistics = computed;
+            stats.version = graph.getVersion();
+            stats.latestVersion = graph.getVersion();
+            stats.snapshot = null;
+        }
+    }
+
+    @Override
+    public void applied(String line, CausalGraph before, CausalGraph after, Set<String> touched) {
+        LineStats stats = stats(line);
+        synchronized (stats) {
+            if (stats.statistics == null || stats.version != before.getVersion()) {
+                // 统计量与内存图不同步（例如尚未计算过），交给下次读取时全量计算
+                stats.statistics = null;
+            } else {
+                stats.statistics.apply(before, after, touched);
+                stats.version = after.getVersion();
+            }
+            stats.latestVersion = after.getVersion();
+            stats.snapshot = null;
+        }
+    }
+
+    private LineStats stats(String line) {
+        return lines.computeIfAbsent(line, key -> new LineStats());
+    }
+
+    private static GraphStatsDto toDto(long version, GraphStatistics statistics) {
+        return new GraphStatsDto(version,
+                new LinkedHashMap<>(statistics.getNodesByLabel()),
+                statistics.getEdgeCount(),
+                statistics.getRootCount(),
+                statistics.getMaxDepth(),
+                new TreeMap<>(statistics.getInDegreeHistogram()),
+                new TreeMap<>(statistics.getOutDegreeHistogram()),
+                new TreeMap<>(statistics.getPathsPerDefect()));
+    }
+
+    /**
+     * 一条产线的统计量，guarded by this
+     */
+    private static final class LineStats {
+        private GraphStatistics statistics;
+        private long version;
+        // 监听器收到的内存图最新版本（statistics 被清空时 version 不再代表内存图的版本）
+        private long latestVersion;
+        private volatile GraphStatsDto snapshot;
+    }
+}
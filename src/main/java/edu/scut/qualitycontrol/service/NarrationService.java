@@ -0,0 +1,351 @@
+package edu.scut.qualitycontrol.service;
+
+import dev.langchain4j.service.TokenStream;
+import edu.scut.qualitycontrol.model.dto.RankedPathDto;
+import edu.scut.qualitycontrol.model.entity.InfluencingFactor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 带时限的缺陷成因解读
+ * 大模型在首字时限 (first-token-timeout) 内没有输出，或者在总时限 (total-timeout) 内没有完成、或者调用出错时，
+ * 立即改用由因果路径直接生成的模板文本（确定性输出，标准和备注以条目形式列出），并标记为降级结果。
+ * 超时后 Ollama 端的请求不会被取消，会在模型自身的 timeout 到达后结束。
+ * 指标：narration.requests（按 mode / outcome）、narration.fallback（按原因）、
+ *      narration.latency（端到端耗时）、narration.first-token（首字耗时）。
+ */
+@Slf4j
+@Service
+public class NarrationService {
+
+    public static final String REASON_FIRST_TOKEN = "first-token-timeout";
+    public static final String REASON_TOTAL = "total-timeout";
+    public static final String REASON_ERROR = "model-error";
+
+    private final GraphManagerService graphManagerService;
+    private final GraphNarratorService narratorService;
+    private final Duration firstTokenTimeout;
+    private final Duration totalTimeout;
+    private final MeterRegistry meterRegistry;
+    private final Timer firstTokenTimer;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "narration-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // narratorService 为延迟代理，第一次解读时才创建 Ollama 模型 (见 AiConfig)
+    public NarrationService(GraphManagerService graphManagerService, @Lazy GraphNarratorService narratorService,
+                            MeterRegistry meterRegistry,
+                            @Value("${qualitycontrol.narration.first-token-timeout:8s}") Duration firstTokenTimeout,
+                            @Value("${qualitycontrol.narration.total-timeout:30s}") Duration totalTimeout) {
+        this.graphManagerService = graphManagerService;
+        this.narratorService = narratorService;
+        this.meterRegistry = meterRegistry;
+        this.firstTokenTimeout = firstTokenTimeout;
+        this.totalTimeout = totalTimeout;
+        this.firstTokenTimer = Timer.builder("narration.first-token")
+                .description("大模型输出第一个字的耗时")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 查询因果路径，没有路径时返回 empty
+     * @param topK 为 null 时使用全部路径，否则只使用最可能的 K 条
+     */
+    public Optional<NarrationContext> buildContext(String defectName, Integer topK) {
+        if (topK == null) {
+            List<List<InfluencingFactor>> paths = graphManagerService.findAllCausalPathsForDefect(defectName);
+            return paths.isEmpty() ? Optional.empty() : Optional.of(new NarrationContext(defectName, paths, null));
+        }
+        List<RankedPathDto> rankedPaths = graphManagerService.findTopCausalPathsForDefect(defectName, topK);
+        if (rankedPaths.isEmpty()) {
+            return Optional.empty();
+        }
+        List<List<InfluencingFactor>> paths = new ArrayList<>();
+        List<Double> probabilities = new ArrayList<>();
+        for (RankedPathDto rankedPath : rankedPaths) {
+            paths.add(rankedPath.getPath());
+            probabilities.add(rankedPath.getProbability());
+        }
+        return Optional.of(new NarrationContext(defectName, paths, probabilities));
+    }
+
+    /**
+     * 同步解读：在总时限内返回大模型的完整输出，否则返回模板文本
+     */
+    public NarrationResult narrate(NarrationContext context) {
+        long start = System.nanoTime();
+        long deadline = start + totalTimeout.toNanos();
+        CompletableFuture<Void> firstToken = new CompletableFuture<>();
+        CompletableFuture<String> answer = new CompletableFuture<>();
+        try {
+            narratorService.streamAnalyzeDefectCauses(context.getDefectName(), formatForAI(context))
+                    .onNext(token -> {
+                        if (firstToken.complete(null)) {
+                            firstTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .onComplete(response -> answer.complete(response.content().text()))
+                    .onError(answer::completeExceptionally)
+                    .start();
+            CompletableFuture.anyOf(firstToken, answer).get(firstTokenTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            String text = answer.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            record("sync", "ai", start);
+            return new NarrationResult(text, null);
+        } catch (TimeoutException e) {
+            return fallback("sync", context, firstToken.isDone() ? REASON_TOTAL : REASON_FIRST_TOKEN, start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback("sync", context, REASON_ERROR, start);
+        } catch (ExecutionException | RuntimeException e) {
+            log.warn("大模型解读缺陷“{}”失败：{}", context.getDefectName(), e.getMessage());
+            return fallback("sync", context, REASON_ERROR, start);
+        }
+    }
+
+    /**
+     * 流式解读：逐字回调；超时或出错时停止转发并回调一次 onFallback
+     * onComplete 与 onFallback 只会有一个被调用，且只调用一次；两者之后不会再有 onToken。
+     */
+    public void stream(NarrationContext context, NarrationListener listener) {
+        long start = System.nanoTime();
+        // 转发 token 与结束 / 降级的切换都在这把锁下进行，计时线程不会在 onToken 执行期间插入 onFallback
+        Object lock = new Object();
+        AtomicBoolean finished = new AtomicBoolean();
+        AtomicBoolean receivedToken = new AtomicBoolean();
+        List<ScheduledFuture<?>> timers = new ArrayList<>();
+        Runnable cancelTimers = () -> timers.forEach(timer -> timer.cancel(false));
+
+        synchronized (lock) {
+            timers.add(scheduler.schedule(() -> {
+                synchronized (lock) {
+                    if (!receivedToken.get() && finished.compareAndSet(false, true)) {
+                        cancelTimers.run();
+                        listener.onFallback(fallback("stream", context, REASON_FIRST_TOKEN, start));
+                    }
+                }
+            }, firstTokenTimeout.toNanos(), TimeUnit.NANOSECONDS));
+            timers.add(scheduler.schedule(() -> {
+                synchronized (lock) {
+                    if (finished.compareAndSet(false, true)) {
+                        listener.onFallback(fallback("stream", context, REASON_TOTAL, start));
+                    }
+                }
+            }, totalTimeout.toNanos(), TimeUnit.NANOSECONDS));
+        }
+
+        try {
+            TokenStream tokenStream = narratorService.streamAnalyzeDefectCauses(context.getDefectName(), formatForAI(context));
+            tokenStream
+                    .onNext(token -> {
+                        synchronized (lock) {
+                            if (finished.get()) {
+                                return;
+                            }
+                            if (receivedToken.compareAndSet(false, true)) {
+                                firstTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                            }
+                            listener.onToken(token);
+                        }
+                    })
+                    .onComplete(response -> {
+                        synchronized (lock) {
+                            if (finished.compareAndSet(false, true)) {
+                                cancelTimers.run();
+                                record("stream", "ai", start);
+                                listener.onComplete();
+                            }
+                        }
+                    })
+                    .onError(error -> {
+                        synchronized (lock) {
+                            if (finished.compareAndSet(false, true)) {
+                                cancelTimers.run();
+                                log.warn("大模型流式解读缺陷“{}”失败：{}", context.getDefectName(), error.getMessage());
+                                listener.onFallback(fallback("stream", context, REASON_ERROR, start));
+                            }
+                        }
+                    })
+                    .start();
+        } catch (RuntimeException e) {
+            synchronized (lock) {
+                if (finished.compareAndSet(false, true)) {
+                    cancelTimers.run();
+                    log.warn("大模型流式解读缺陷“{}”失败：{}", context.getDefectName(), e.getMessage());
+                    listener.onFallback(fallback("stream", context, REASON_ERROR, start));
+                }
+            }
+        }
+    }
+
+    /**
+     * 模板解读：只依赖因果路径，输出确定
+     */
+    public static String renderTemplate(NarrationContext context) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("【").append(context.getDefectName()).append("】可能的成因如下（AI 解读暂不可用，以下内容由知识图谱直接生成）：\n");
+
+        Map<String, InfluencingFactor> factors = new LinkedHashMap<>();
+        List<List<InfluencingFactor>> paths = context.getPaths();
+        for (int i = 0; i < paths.size(); i++) {
+            sb.append("\n路径 ").append(i + 1);
+            if (context.getProbabilities() != null) {
+                sb.append("（可能性 ").append(String.format("%.1f%%", context.getProbabilities().get(i) * 100)).append("）");
+            }
+            sb.append("：")
+                    .append(paths.get(i).stream().map(InfluencingFactor::getName).collect(Collectors.joining(" -> ")))
+                    .append(" -> ").append(context.getDefectName());
+            for (InfluencingFactor factor : paths.get(i)) {
+                factors.putIfAbsent(factor.getName(), factor);
+            }
+        }
+
+        sb.append("\n\n涉及的影响因素：\n");
+        for (InfluencingFactor factor : factors.values()) {
+            sb.append("• ").append(factor.getName()).append("\n");
+            if (factor.getStandard() != null && !factor.getStandard().isEmpty()) {
+                sb.append("    - 标准：").append(factor.getStandard()).append("\n");
+            }
+            if (factor.getDescription() != null && !factor.getDescription().isEmpty()) {
+                sb.append("    - 备注：").append(factor.getDescription()).append("\n");
+            }
+        }
+
+        List<InfluencingFactor> firstPath = paths.get(0);
+        if (!firstPath.isEmpty()) {
+            sb.append("\n排查建议：从路径 1 的根因“").append(firstPath.get(0).getName())
+                    .append("”开始，沿路径逐项对照上述标准检查。");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 将路径转换为提供给大模型的文本描述
+     */
+    static String formatForAI(NarrationContext context) {
+        StringBuilder sb = new StringBuilder();
+        if (context.getProbabilities() != null) {
+            sb.append("（以下路径按可能性从高到低排列）\n");
+        }
+        List<List<InfluencingFactor>> paths = context.getPaths();
+        for (int i = 0; i < paths.size(); i++) {
+            sb.append("路径 ").append(i + 1);
+            if (context.getProbabilities() != null) {
+                sb.append("（可能性 ").append(String.format("%.1f%%", context.getProbabilities().get(i) * 100)).append("）");
+            }
+            sb.append("：").append(formatPath(paths.get(i))).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 将单条路径中的节点用 "->" 连接
+     */
+    private static String formatPath(List<InfluencingFactor> path) {
+        // 将路径中的节点用 "->" 连接，并附带标准信息
+        return path.stream()
+                .map(factor -> {
+                    String info = factor.getName();
+                    // 如果有标准或描述，拼接到名字后面，帮助AI理解
+                    if (factor.getStandard() != null && !factor.getStandard().isEmpty()) {
+                        info += "(标准:" + factor.getStandard() + ")";
+                    }
+                    if (factor.getDescription() != null && !factor.getDescription().isEmpty()) {
+                        info += "(备注:" + factor.getDescription() + ")";
+                    }
+                    return info;
+                })
+                .collect(Collectors.joining(" -> "));
+    }
+
+    private NarrationResult fallback(String mode, NarrationContext context, String reason, long start) {
+        Counter.builder("narration.fallback").tag("mode", mode).tag("reason", reason).register(meterRegistry).increment();
+        record(mode, "fallback", start);
+        log.warn("缺陷“{}”的 AI 解读降级为模板输出，原因：{}", context.getDefectName(), reason);
+        return new NarrationResult(renderTemplate(context), reason);
+    }
+
+    private void record(String mode, String outcome, long start) {
+        Counter.builder("narration.requests").tag("mode", mode).tag("outcome", outcome).register(meterRegistry).increment();
+        Timer.builder("narration.latency").tag("mode", mode).tag("outcome", outcome).register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 一次解读所需的因果路径；probabilities 为 null 表示未按可能性排序
+     */
+    public static final class NarrationContext {
+        private final String defectName;
+        private final List<List<InfluencingFactor>> paths;
+        private final List<Double> probabilities;
+
+        public NarrationContext(String defectName, List<List<InfluencingFactor>> paths, List<Double> probabilities) {
+            this.defectName = defectName;
+            this.paths = paths;
+            this.probabilities = probabilities;
+        }
+
+        // Getters
+        public String getDefectName() { return defectName; }
+        public List<List<InfluencingFactor>> getPaths() { return paths; }
+        public List<Double> getProbabilities() { return probabilities; }
+    }
+
+    /**
+     * 解读结果；fallbackReason 不为 null 表示这是模板生成的降级结果
+     */
+    public static final class NarrationResult {
+        private final String text;
+        private final String fallbackReason;
+
+        public NarrationResult(String text, String fallbackReason) {
+            this.text = text;
+            this.fallbackReason = fallbackReason;
+        }
+
+        public boolean isFallback() { return fallbackReason != null; }
+
+        // Getters
+        public String getText() { return text; }
+        public String getFallbackReason() { return fallbackReason; }
+    }
+
+    /**
+     * 流式解读的回调
+     */
+    public interface NarrationListener {
+        void onToken(String token);
+
+        void onComplete();
+
+        void onFallback(NarrationResult fallback);
+    }
+}
@@ -0,0 +1,92 @@
+package edu.scut.qualitycontrol.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.model.dto.CachedNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 名称 -> 节点 的有界缓存，位于 findByName 查询之前
+ * 未命中的结果（节点不存在）同样会被缓存，所有写操作都必须调用 evict 使其失效。
+ * 命中率通过 Caffeine 统计导出为 cache.* 指标，查找耗时导出为 graph.node.lookup 指标。
+ * 每条产线一个独立的缓存（容量与过期时间相同），指标以 line 标签区分。
+ */
+@Component
+public class NodeLookupCache {
+
+    private final Map<String, Cache<String, Optional<CachedNode>>> caches = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final long maximumSize;
+    private final Duration expireAfterWrite;
+    private final Timer lookupTimer;
+
+    public NodeLookupCache(MeterRegistry meterRegistry,
+                           @Value("${qualitycontrol.node-cache.maximum-size:10000}") long maximumSize,
+                           @Value("${qualitycontrol.node-cache.expire-after-write:10m}") Duration expireAfterWrite) {
+        this.meterRegistry = meterRegistry;
+        this.maximumSize = maximumSize;
+        this.expireAfterWrite = expireAfterWrite;
+        this.lookupTimer = Timer.builder("graph.node.lookup")
+                .description("按名称查找节点的耗时（含缓存命中）")
+                .register(meterRegistry);
+    }
+
+    public Optional<CachedNode> get(String name, Function<String, Optional<CachedNode>> loader) {
+        Cache<String, Optional<CachedNode>> cache = cache();
+        return lookupTimer.record(() -> cache.get(name, loader));
+    }
+
+    /**
+     * 使指定名称的缓存失效。
+     * 在事务中调用时，提交后会再失效一次，避免并发读取在提交前把旧值重新放回缓存。
+     */
+    public void evict(String... names) {
+        Cache<String, Optional<CachedNode>> cache = cache();
+        for (String name : names) {
+            cache.invalidate(name);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    for (String name : names) {
+                        cache.invalidate(name);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 使当前产线的全部缓存失效
+     */
+    public void evictAll() {
+        cache().invalidateAll();
+    }
+
+    private Cache<String, Optional<CachedNode>> cache() {
+        return caches.computeIfAbsent(ProductionLineHolder.current(), line -> {
+            Cache<String, Optional<CachedNode>> cache = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    // 兜底：防止其他实例或直接改库造成的数据长期不一致
+                    .expireAfterWrite(expireAfterWrite)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "nodeLookup", "line", line.isEmpty() ? "default" : line);
+            return cache;
+        });
+    }
+}
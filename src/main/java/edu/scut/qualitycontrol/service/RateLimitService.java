@@ -0,0 +1,153 @@
+package edu.scut.qualitycontrol.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.scut.qualitycontrol.model.dto.RateLimitDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 高开销接口的准入控制
+ * 每类接口（AI 解读、语义检索、整图 / 路径查询）有独立的预算：每个客户端（API Key 或 IP）一个令牌桶，另有一个全局令牌桶，
+ * 两者都放行才算准入。配置可以通过 /api/admin/rate-limits 在运行时修改，立即生效。
+ * 指标：http.admission（按 class / result 统计 admitted、throttled-client、throttled-global）。
+ */
+@Slf4j
+@Service
+public class RateLimitService {
+
+    public static final String NARRATE = "narrate";
+    public static final String SEMANTIC = "semantic";
+    public static final String GRAPH_READ = "graph-read";
+
+    // 配置整体替换，读取方无需加锁
+    private final Map<String, RateLimitDto> limits = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> globalBuckets = new ConcurrentHashMap<>();
+    // 长时间不活跃的客户端桶自动淘汰（届时桶本来就已回满）
+    private final Cache<String, TokenBucket> clientBuckets = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .maximumSize(100_000)
+            .build();
+    private final Map<String, Counter> admittedCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> clientThrottledCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> globalThrottledCounters = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+
+    public RateLimitService(MeterRegistry meterRegistry,
+                            @Value("${qualitycontrol.rate-limit.enabled:true}") boolean enabled,
+                            @Value("${qualitycontrol.rate-limit.narrate.client-rate:0.2}") double narrateClientRate,
+                            @Value("${qualitycontrol.rate-limit.narrate.client-burst:3}") int narrateClientBurst,
+                            @Value("${qualitycontrol.rate-limit.narrate.global-rate:2}") double narrateGlobalRate,
+                            @Value("${qualitycontrol.rate-limit.narrate.global-burst:10}") int narrateGlobalBurst,
+                            @Value("${qualitycontrol.rate-limit.semantic.client-rate:2}") double semanticClientRate,
+                            @Value("${qualitycontrol.rate-limit.semantic.client-burst:10}") int semanticClientBurst,
+                            @Value("${qualitycontrol.rate-limit.semantic.global-rate:20}") double semanticGlobalRate,
+                            @Value("${qualitycontrol.rate-limit.semantic.global-burst:40}") int semanticGlobalBurst,
+                            @Value("${qualitycontrol.rate-limit.graph-read.client-rate:1}") double graphClientRate,
+                            @Value("${qualitycontrol.rate-limit.graph-read.client-burst:5}") int graphClientBurst,
+                            @Value("${qualitycontrol.rate-limit.graph-read.global-rate:20}") double graphGlobalRate,
+                            @Value("${qualitycontrol.rate-limit.graph-read.global-burst:40}") int graphGlobalBurst) {
+        this.enabled = enabled;
+        limits.put(NARRATE, new RateLimitDto(narrateClientRate, narrateClientBurst, narrateGlobalRate, narrateGlobalBurst));
+        limits.put(SEMANTIC, new RateLimitDto(semanticClientRate, semanticClientBurst, semanticGlobalRate, semanticGlobalBurst));
+        limits.put(GRAPH_READ, new RateLimitDto(graphClientRate, graphClientBurst, graphGlobalRate, graphGlobalBurst));
+        long now = System.nanoTime();
+        for (String endpointClass : limits.keySet()) {
+            globalBuckets.put(endpointClass, new TokenBucket(now));
+            admittedCounters.put(endpointClass, counter(meterRegistry, endpointClass, "admitted"));
+            clientThrottledCounters.put(endpointClass, counter(meterRegistry, endpointClass, "throttled-client"));
+            globalThrottledCounters.put(endpointClass, counter(meterRegistry, endpointClass, "throttled-global"));
+        }
+    }
+
+    /**
+     * 尝试准入一次请求
+     * @return 0 表示放行；否则为客户端需要等待的纳秒数
+     */
+    public long tryAcquire(String endpointClass, String clientKey) {
+        RateLimitDto limit = limits.get(endpointClass);
+        if (!enabled || limit == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        TokenBucket clientBucket = null;
+        if (limit.getClientRate() > 0) {
+            clientBucket = clientBuckets.get(endpointClass + '|' + clientKey, key -> new TokenBucket(now));
+            long wait = clientBucket.tryAcquire(now, limit.getClientRate(), limit.getClientBurst());
+            if (wait > 0) {
+                clientThrottledCounters.get(endpointClass).increment();
+                return wait;
+            }
+        }
+        if (limit.getGlobalRate() > 0) {
+            long wait = globalBuckets.get(endpointClass).tryAcquire(now, limit.getGlobalRate(), limit.getGlobalBurst());
+            if (wait > 0) {
+                // 全局预算不足时不应扣减客户端自己的预算
+                if (clientBucket != null) {
+                    clientBucket.refund(limit.getClientRate());
+                }
+                globalThrottledCounters.get(endpointClass).increment();
+                return wait;
+            }
+        }
+        admittedCounters.get(endpointClass).increment();
+        return 0;
+    }
+
+    /**
+     * 当前配置及累计计数
+     */
+    public Map<String, RateLimitDto> getLimits() {
+        Map<String, RateLimitDto> result = new LinkedHashMap<>();
+        limits.forEach((endpointClass, limit) -> {
+            RateLimitDto view = new RateLimitDto(limit.getClientRate(), limit.getClientBurst(),
+                    limit.getGlobalRate(), limit.getGlobalBurst());
+            view.setAdmitted((long) admittedCounters.get(endpointClass).count());
+            view.setThrottled((long) (clientThrottledCounters.get(endpointClass).count()
+                    + globalThrottledCounters.get(endpointClass).count()));
+            result.put(endpointClass, view);
+        });
+        return result;
+    }
+
+    /**
+     * 运行时修改某类接口的限流配置
+     * @return 接口类别不存在时返回 false
+     */
+    public boolean updateLimits(String endpointClass, RateLimitDto update) {
+        if (!limits.containsKey(endpointClass)) {
+            return false;
+        }
+        limits.put(endpointClass, new RateLimitDto(update.getClientRate(), update.getClientBurst(),
+                update.getGlobalRate(), update.getGlobalBurst()));
+        log.info("接口类别 {} 的限流配置已更新：客户端 {}/s (突发 {})，全局 {}/s (突发 {})", endpointClass,
+                update.getClientRate(), update.getClientBurst(), update.getGlobalRate(), update.getGlobalBurst());
+        return true;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        log.info("接口限流已{}。", enabled ? "开启" : "关闭");
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String endpointClass, String result) {
+        return Counter.builder("http.admission")
+                .description("高开销接口的准入结果")
+                .tag("class", endpointClass)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,266 @@
+package edu.scut.qualitycontrol.service;
+
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.GraphEdge;
+import edu.scut.qualitycontrol.graph.GraphNode;
+import edu.scut.qualitycontrol.graph.GraphStatistics;
+import edu.scut.qualitycontrol.model.dto.RootIndexReportDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 根因标签与深度属性
+ * 在数据库中为没有上游影响因素的影响因素加上 根因 标签，并为每个节点维护 depth 属性（从根因出发的最长链长度，根因为 0），
+ * 路径查询据此直接从根因出发，不再对每个候选起点判断 “是否存在上游因素”。
+ * 1. GraphManagerService 的每次节点 / 关系写入在同一事务中调用 refresh：重新计算受影响节点，
+ *    深度变化时逐轮向下游传播，直到不再变化；
+ * 2. 初始化、批量导入等整体写入之后调用 repair；
+ * 3. 定时任务逐条产线检查一致性，发现不一致时修复。
+ * 环路中以及环路下游的节点没有确定的深度（depth 为空）；写入都经过环路检查，只有历史数据中可能出现。
+ */
+@Slf4j
+@Service
+public class RootIndexService {
+
+    public static final String DEPTH_PROPERTY = "depth";
+
+    // 单次传播的最大轮数；超过时说明存在环路，留给一致性检查处理
+    private static final int MAX_PASSES = 256;
+    private static final int MAX_SAMPLES = 50;
+    private static final int REPAIR_BATCH_SIZE = 1000;
+
+    // depth 只在路径扩展时逐节点比较，不按值查找，因此不建索引
+    private static final List<String> SCHEMA = List.of(
+            "CREATE INDEX factor_name IF NOT EXISTS FOR (n:影响因素) ON (n.name)",
+            "CREATE INDEX defect_name IF NOT EXISTS FOR (n:缺陷类型) ON (n.name)");
+
+    // 按上游影响因素重新计算一批节点，返回深度发生变化的节点的下游节点
+    private static final String REFRESH_QUERY =
+            "UNWIND $names AS name " +
+            "OPTIONAL MATCH (f:影响因素 {name: name}) " +
+            "OPTIONAL MATCH (d:缺陷类型 {name: name}) " +
+            "WITH coalesce(f, d) AS n WHERE n IS NOT NULL " +
+            "OPTIONAL MATCH (cause:影响因素)-[:导致]->(n) " +
+            "WITH n, count(cause) AS causes, max(cause.depth) AS deepest " +
+            "FOREACH (ignored IN CASE WHEN n:影响因素 AND causes = 0 THEN [1] ELSE [] END | SET n:根因) " +
+            "FOREACH (ignored IN CASE WHEN causes > 0 THEN [1] ELSE [] END | REMOVE n:根因) " +
+            "WITH n, CASE WHEN causes = 0 THEN 0 ELSE coalesce(deepest, 0) + 1 END AS depth " +
+            "WHERE n.depth IS NULL OR n.depth <> depth " +
+            "SET n.depth = depth " +
+            "WITH n " +
+            "MATCH (n)-[:导致]->(next) " +
+            "RETURN DISTINCT next.name AS name";
+
+    // 环路中以及环路下游的节点
+    private static final String CLEAR_UNRESOLVED_QUERY =
+            "UNWIND $names AS name " +
+            "OPTIONAL MATCH (f:影响因素 {name: name}) " +
+            "OPTIONAL MATCH (d:缺陷类型 {name: name}) " +
+            "WITH coalesce(f, d) AS n WHERE n IS NOT NULL " +
+            "REMOVE n.depth, n:根因";
+
+    private final Neo4jClient neo4jClient;
+    private final ProductionLineHolder productionLineHolder;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "root-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RootIndexService(Neo4jClient neo4jClient, ProductionLineHolder productionLineHolder) {
+        this.neo4jClient = neo4jClient;
+        this.productionLineHolder = productionLineHolder;
+    }
+
+    /**
+     * 启动后在后台为每条产线建立索引，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(() -> {
+            for (String line : productionLineHolder.partitions()) {
+                ProductionLineHolder.runIn(line, this::ensureSchema);
+            }
+        });
+    }
+
+    private void ensureSchema() {
+        for (String statement : SCHEMA) {
+            try {
+                neo4jClient.query(statement).run();
+            } catch (RuntimeException e) {
+                log.warn("产线 {} 创建索引失败（{}）：{}", CausalGraphStore.describe(ProductionLineHolder.current()),
+                        statement, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 重新计算 names 及其下游节点的根因标签和深度
+     * 在调用方的事务中执行：names 为上游关系发生变化的节点（新建节点、新增 / 删除关系的终点、被删除节点的下游）。
+     */
+    public void refresh(Collection<String> names) {
+        Set<String> frontier = new LinkedHashSet<>(names);
+        int passes = 0;
+        while (!frontier.isEmpty()) {
+            if (++passes > MAX_PASSES) {
+                log.warn("根因深度传播超过 {} 轮仍未结束，可能存在环路，请运行一致性检查。", MAX_PASSES);
+                return;
+            }
+            frontier = new LinkedHashSet<>(neo4jClient.query(REFRESH_QUERY)
+                    .bind(new ArrayList<>(frontier)).to("names")
+                    .fetchAs(String.class)
+                    .mappedBy((typeSystem, record) -> record.get("name").asString())
+                    .all());
+        }
+    }
+
+    /**
+     * 检查当前产线的根因标签和深度是否与图结构一致
+     */
+    public RootIndexReportDto check() {
+        return inspect(false);
+    }
+
+    /**
+     * 修复当前产线的不一致：按当前数据重新计算不一致的节点（及其下游），环路上的节点清除深度
+     */
+    public RootIndexReportDto repair() {
+        return inspect(true);
+    }
+
+    /**
+     * 定时逐条产线检查，发现不一致时修复
+     */
+    @Scheduled(initialDelayString = "${qualitycontrol.root-index.check-initial-delay-ms:60000}",
+            fixedDelayString = "${qualitycontrol.root-index.check-interval-ms:3600000}")
+    public void checkAndRepair() {
+        for (String line : productionLineHolder.partitions()) {
+            ProductionLineHolder.runIn(line, () -> {
+                try {
+                    RootIndexReportDto report = check();
+                    if (!report.isConsistent()) {
+                        log.warn("产线 {} 的根因标签 / 深度不一致（标签 {} 个，深度 {} 个，例如 {}），开始修复。",
+                                CausalGraphStore.describe(line), report.getRootMismatches(),
+                                report.getDepthMismatches(), report.getSamples());
+                        repair();
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("产线 {} 的根因一致性检查失败：{}", CausalGraphStore.describe(line), e.getMessage());
+                }
+            });
+        }
+    }
+
+    private RootIndexReportDto inspect(boolean fix) {
+        Map<String, IndexedState> stored = new HashMap<>();
+        List<GraphNode> nodes = new ArrayList<>();
+        for (IndexedState state : neo4jClient.query(
+                        "MATCH (n) WHERE n:影响因素 OR n:缺陷类型 " +
+                        "RETURN n.name AS name, CASE WHEN n:影响因素 THEN '影响因素' ELSE '缺陷类型' END AS label, " +
+                        "n:根因 AS root, n.depth AS depth")
+                .fetchAs(IndexedState.class)
+                .mappedBy((typeSystem, record) -> new IndexedState(
+                        record.get("name").asString(),
+                        record.get("label").asString(),
+                        record.get("root").asBoolean(),
+                        record.get("depth").isNull() ? null : record.get("depth").asInt()))
+                .all()) {
+            stored.put(state.name, state);
+            nodes.add(new GraphNode(state.name, state.label, Map.of()));
+        }
+        Collection<GraphEdge> edges = neo4jClient.query(
+                        "MATCH (a:影响因素)-[:导致]->(b) WHERE b:影响因素 OR b:缺陷类型 " +
+                        "RETURN a.name AS source, b.name AS target")
+                .fetchAs(GraphEdge.class)
+                .mappedBy((typeSystem, record) -> new GraphEdge(
+                        record.get("source").asString(), record.get("target").asString(), null))
+                .all();
+        CausalGraph graph = CausalGraph.of(0, nodes, edges);
+        GraphStatistics statistics = GraphStatistics.compute(graph);
+
+        int rootMismatches = 0;
+        int depthMismatches = 0;
+        List<String> stale = new ArrayList<>();
+        List<String> unresolved = new ArrayList<>();
+        List<String> samples = new ArrayList<>();
+        for (IndexedState state : stored.values()) {
+            Integer expectedDepth = statistics.depthOf(state.name);
+            boolean rootMismatch = state.root != graph.isRoot(state.name);
+            boolean depthMismatch = !Objects.equals(state.depth, expectedDepth);
+            if (expectedDepth == null) {
+                unresolved.add(state.name);
+            }
+            if (rootMismatch) {
+                rootMismatches++;
+            }
+            if (depthMismatch) {
+                depthMismatches++;
+            }
+            if (rootMismatch || depthMismatch) {
+                if (expectedDepth != null) {
+                    stale.add(state.name);
+                }
+                if (samples.size() < MAX_SAMPLES) {
+                    samples.add(state.name);
+                }
+            }
+        }
+
+        boolean repaired = false;
+        if (fix && (rootMismatches > 0 || depthMismatches > 0)) {
+            for (int from = 0; from < stale.size(); from += REPAIR_BATCH_SIZE) {
+                refresh(stale.subList(from, Math.min(stale.size(), from + REPAIR_BATCH_SIZE)));
+            }
+            // 环路上及其下游的节点不会是根因，深度在传播中也可能被写入，最后统一清除
+            for (int from = 0; from < unresolved.size(); from += REPAIR_BATCH_SIZE) {
+                neo4jClient.query(CLEAR_UNRESOLVED_QUERY)
+                        .bind(unresolved.subList(from, Math.min(unresolved.size(), from + REPAIR_BATCH_SIZE))).to("names")
+                        .run();
+            }
+            repaired = true;
+            log.info("产线 {} 的根因标签 / 深度已修复：标签 {} 个，深度 {} 个，环路相关节点 {} 个。",
+                    CausalGraphStore.describe(ProductionLineHolder.current()), rootMismatches, depthMismatches,
+                    unresolved.size());
+        }
+        return new RootIndexReportDto(stored.size(), rootMismatches, depthMismatches, unresolved.size(), samples,
+                repaired);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // 数据库中已保存的根因标签和深度
+    private static final class IndexedState {
+        private final String name;
+        private final String label;
+        private final boolean root;
+        private final Integer depth;
+
+        private IndexedState(String name, String label, boolean root, Integer depth) {
+            this.name = name;
+            this.label = label;
+            this.root = root;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package edu.scut.qualitycontrol.service;
+
+import com.github.jelmerk.knn.DistanceFunctions;
+import com.github.jelmerk.knn.Item;
+import com.github.jelmerk.knn.SearchResult;
+import com.github.jelmerk.knn.hnsw.HnswIndex;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.GraphNode;
+import edu.scut.qualitycontrol.model.dto.SemanticMatchDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 节点的语义检索：把缺陷名称 + 典型表现、影响因素名称 + 描述 + 标准编码为向量，存入 HNSW 近邻索引
+ * 1. 向量模型在进程内运行（bge-small-zh，仅 CPU），不依赖外部服务；
+ * 2. 内存因果图每次变化后，在后台线程比较节点文本与索引中的文本，只为新增 / 修改的节点重新计算向量；
+ * 3. 索引连同节点文本一起保存到磁盘，重启时加载后只需补算期间变化的节点。
+ * 索引就绪之前检索返回空结果。每条产线有独立的索引文件（默认分区之外的产线在文件名后加 -{产线}）。
+ */
+@Slf4j
+@Service
+public class SemanticIndexService {
+
+    // bge 模型推荐的 “短查询 -> 长文本” 检索指令
+    private static final String QUERY_INSTRUCTION = "为这个句子生成表示以用于检索相关文章：";
+    private static final int M = 16;
+    private static final int EF = 64;
+    private static final int EF_CONSTRUCTION = 200;
+    private static final int INITIAL_CAPACITY = 1024;
+    // 命中影响因素时，经由因果链推出的缺陷打折计分，直接命中的缺陷优先
+    private static final double FACTOR_HIT_DISCOUNT = 0.9;
+
+    private final CausalGraphStore causalGraphStore;
+    private final ProductionLineHolder productionLineHolder;
+    private final EmbeddingModel embeddingModel;
+    private final Path indexPath;
+    private final double minScore;
+    // 启动后延迟多久开始加载模型和构建索引，避免与启动争抢 CPU
+    private final Duration startDelay;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "semantic-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, LineIndex> lines = new ConcurrentHashMap<>();
+
+    // embeddingModel 为延迟代理，在后台线程第一次使用时才加载模型 (见 AiConfig)
+    public SemanticIndexService(CausalGraphStore causalGraphStore, ProductionLineHolder productionLineHolder,
+                                @Lazy EmbeddingModel embeddingModel,
+                                @Value("${qualitycontrol.semantic.index-path:data/semantic-index.hnsw}") String indexPath,
+                                @Value("${qualitycontrol.semantic.min-score:0.55}") double minScore,
+                                @Value("${qualitycontrol.semantic.start-delay:0s}") Duration startDelay) {
+        this.causalGraphStore = causalGraphStore;
+        this.productionLineHolder = productionLineHolder;
+        this.embeddingModel = embeddingModel;
+        this.indexPath = Paths.get(indexPath);
+        this.minScore = minScore;
+        this.startDelay = startDelay;
+        causalGraphStore.addChangeListener(this::scheduleSync);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        CompletableFuture.delayedExecutor(startDelay.toMillis(), TimeUnit.MILLISECONDS, executor).execute(() -> {
+            for (String line : productionLineHolder.partitions()) {
+                load(line);
+                scheduleSync(line);
+            }
+        });
+    }
+
+    /**
+     * 从磁盘加载一条产线的索引；与 sync 一样只在 semantic-index 线程上调用
+     */
+    void load(String line) {
+        LineIndex lineIndex = lineIndex(line);
+        try {
+            lineIndex.index = loadOrCreate(lineIndex.path);
+        } catch (RuntimeException e) {
+            log.warn("加载语义索引 {} 失败，将重新构建：{}", lineIndex.path, e.getMessage());
+        }
+    }
+
+    /**
+     * 当前产线的索引是否已就绪
+     */
+    public boolean isReady() {
+        return lineIndex(ProductionLineHolder.current()).index != null;
+    }
+
+    /**
+     * 与输入文本最相近的 k 个节点（影响因素和缺陷类型）
+     */
+    public List<SemanticMatchDto> search(String text, int k) {
+        HnswIndex<String, float[], IndexedNode, Float> current = lineIndex(ProductionLineHolder.current()).index;
+        if (current == null || current.size() == 0) {
+            return List.of();
+        }
+        float[] query = embeddingModel.embed(QUERY_INSTRUCTION + text).content().vector();
+        List<SemanticMatchDto> result = new ArrayList<>();
+        for (SearchResult<IndexedNode, Float> hit : current.findNearest(query, k)) {
+            result.add(new SemanticMatchDto(hit.item().id(), hit.item().label, 1.0 - hit.distance()));
+        }
+        return result;
+    }
+
+    /**
+     * 把自由文本映射为最相近的 k 个缺陷类型
+     * 直接命中缺陷时用其相似度；命中影响因素时，该因素下游可达的缺陷按折扣后的相似度计分。
+     */
+    public List<SemanticMatchDto> findDefects(String text, int k) {
+        CausalGraph graph = causalGraphStore.current();
+        Map<String, Double> scores = new HashMap<>();
+        for (SemanticMatchDto hit : search(text, k * 4)) {
+            GraphNode node = graph.node(hit.getName());
+            if (node == null) {
+                continue; // 索引尚未同步到最新的删除
+            }
+            if (node.isDefect()) {
+                scores.merge(hit.getName(), hit.getScore(), Math::max);
+            } else {
+                for (String defect : downstreamDefects(graph, hit.getName())) {
+                    scores.merge(defect, hit.getScore() * FACTOR_HIT_DISCOUNT, Math::max);
+                }
+            }
+        }
+        List<SemanticMatchDto> result = new ArrayList<>();
+        scores.forEach((name, score) -> result.add(new SemanticMatchDto(name, GraphNode.DEFECT_LABEL, score)));
+        result.sort(Comparator.comparingDouble(SemanticMatchDto::getScore).reversed());
+        return result.size() > k ? result.subList(0, k) : result;
+    }
+
+    /**
+     * 最相近且相似度不低于阈值的缺陷类型
+     */
+    public Optional<String> findBestDefect(String text) {
+        return findDefects(text, 1).stream()
+                .filter(match -> match.getScore() >= minScore)
+                .map(SemanticMatchDto::getName)
+                .findFirst();
+    }
+
+    private void scheduleSync(String line) {
+        LineIndex lineIndex = lineIndex(line);
+        // 合并连续的写入：已经排队的同步会读到最新的图
+        if (lineIndex.syncScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                lineIndex.syncScheduled.set(false);
+                try {
+                    sync(line);
+                } catch (RuntimeException e) {
+                    log.warn("同步产线 {} 的语义索引失败：{}", CausalGraphStore.describe(line), e.getMessage());
+                }
+            });
+        }
+    }
+
+    private LineIndex lineIndex(String line) {
+        return lines.computeIfAbsent(line, key -> new LineIndex(key, key.isEmpty() ? indexPath : pathFor(key)));
+    }
+
+    // data/semantic-index.hnsw -> data/semantic-index-{产线}.hnsw
+    private Path pathFor(String line) {
+        String fileName = indexPath.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String name = dot > 0
+                ? fileName.substring(0, dot) + "-" + line + fileName.substring(dot)
+                : fileName + "-" + line;
+        return indexPath.resolveSibling(name);
+    }
+
+    /**
+     * 让索引与内存因果图一致，只为文本发生变化的节点重新计算向量
+     */
+    void sync(String line) {
+        LineIndex lineIndex = lineIndex(line);
+        HnswIndex<String, float[], IndexedNode, Float> target = lineIndex.index;
+        if (target == null) {
+            target = newIndex(dimensions(), INITIAL_CAPACITY);
+        }
+        CausalGraph graph = causalGraphStore.current(lineIndex.line);
+        long start = System.nanoTime();
+        int embedded = 0;
+        int removed = 0;
+        Set<String> live = new HashSet<>();
+        for (GraphNode node : graph.nodes()) {
+            live.add(node.getName());
+            String text = textOf(node);
+            Optional<IndexedNode> existing = target.get(node.getName());
+            if (existing.isPresent() && existing.get().text.equals(text) && existing.get().label.equals(node.getLabel())) {
+                continue;
+            }
+            float[] vector = embeddingModel.embed(text).content().vector();
+            if (target.size() >= target.getMaxItemCount()) {
+                target.resize(target.getMaxItemCount() * 2);
+            }
+            long version = existing.map(item -> item.version + 1).orElse(0L);
+            target.add(new IndexedNode(node.getName(), node.getLabel(), text, vector, version));
+            embedded++;
+        }
+        for (IndexedNode item : new ArrayList<>(target.items())) {
+            if (!live.contains(item.id())) {
+                target.remove(item.id(), item.version());
+                removed++;
+            }
+        }
+        lineIndex.index = target;
+        if (embedded > 0 || removed > 0) {
+            log.info("语义索引 {} 已同步：重新编码 {} 个节点，移除 {} 个节点，共 {} 个，耗时 {} ms", lineIndex.path,
+                    embedded, removed, target.size(), (System.nanoTime() - start) / 1_000_000);
+            save(target, lineIndex.path);
+        }
+    }
+
+    private HnswIndex<String, float[], IndexedNode, Float> loadOrCreate(Path indexPath) {
+        if (!Files.exists(indexPath)) {
+            return null;
+        }
+        try {
+            HnswIndex<String, float[], IndexedNode, Float> loaded = HnswIndex.load(indexPath);
+            if (loaded.getDimensions() != dimensions()) {
+                log.warn("语义索引的向量维度与当前模型不一致，将重新构建。");
+                return null;
+            }
+            log.info("已从 {} 加载语义索引，共 {} 个节点。", indexPath, loaded.size());
+            return loaded;
+        } catch (IOException e) {
+            log.warn("读取语义索引文件 {} 失败，将重新构建：{}", indexPath, e.getMessage());
+            return null;
+        }
+    }
+
+    private void save(HnswIndex<String, float[], IndexedNode, Float> target, Path indexPath) {
+        try {
+            Path parent = indexPath.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            // 先写临时文件再替换，避免进程中途退出留下损坏的索引
+            Path temp = Files.createTempFile(parent, "semantic-index", ".tmp");
+            target.save(temp);
+            Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存语义索引到 {} 失败：{}", indexPath, e.getMessage());
+        }
+    }
+
+    private HnswIndex<String, float[], IndexedNode, Float> newIndex(int dimensions, int capacity) {
+        return HnswIndex.newBuilder(dimensions, DistanceFunctions.FLOAT_COSINE_DISTANCE, capacity)
+                .withM(M)
+                .withEf(EF)
+                .withEfConstruction(EF_CONSTRUCTION)
+                .withRemoveEnabled()
+                .build();
+    }
+
+    private int dimensions() {
+        return embeddingModel.embed("缺陷").content().dimension();
+    }
+
+    private static String textOf(GraphNode node) {
+        StringBuilder text = new StringBuilder(node.getName());
+        String[] keys = node.isDefect()
+                ? new String[]{"typical_manifestations"}
+                : new String[]{"description", "standard"};
+        for (String key : keys) {
+            String value = node.getProperty(key);
+            if (value != null && !value.isBlank()) {
+                text.append("：").append(value);
+            }
+        }
+        return text.toString();
+    }
+
+    private static Set<String> downstreamDefects(CausalGraph graph, String factor) {
+        Set<String> defects = new HashSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(factor);
+        visited.add(factor);
+        while (!stack.isEmpty()) {
+            for (String next : graph.successors(stack.pop())) {
+                GraphNode node = graph.node(next);
+                if (node != null && node.isDefect()) {
+                    defects.add(next);
+                } else if (visited.add(next)) {
+                    stack.push(next);
+                }
+            }
+        }
+        return defects;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 一条产线的索引
+     */
+    private static final class LineIndex {
+        private final String line;
+        private final Path path;
+        private final AtomicBoolean syncScheduled = new AtomicBoolean();
+        // 只在 semantic-index 线程上修改结构；HnswIndex 本身支持并发检索
+        private volatile HnswIndex<String, float[], IndexedNode, Float> index;
+
+        private LineIndex(String line, Path path) {
+            this.line = line;
+            this.path = path;
+        }
+    }
+
+    /**
+     * 索引中的条目，连同原文一起持久化，用于判断节点文本是否变化
+     */
+    static final class IndexedNode implements Item<String, float[]>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final String label;
+        private final String text;
+        private final float[] vector;
+        private final long version;
+
+        IndexedNode(String name, String label, String text, float[] vector, long version) {
+            this.name = name;
+            this.label = label;
+            this.text = text;
+            this.vector = vector;
+            this.version = version;
+        }
+
+        @Override
+        public String id() { return name; }
+
+        @Override
+        public float[] vector() { return vector; }
+
+        @Override
+        public int dimensions() { return vector.length; }
+
+        @Override
+        public long version() { return version; }
+    }
+}
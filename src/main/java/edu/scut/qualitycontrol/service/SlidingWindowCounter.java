@@ -0,0 +1,65 @@
+package edu.scut.qualitycontrol.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁滑动时间窗口计数器（环形桶）
+ * 每个桶是一个 long：高 24 位存放桶的时间序号（取模），低 40 位存放计数。
+ * 写入时用一次 CAS 同时完成“过期桶清零”和“累加”，不会出现清零与累加交错导致的计数丢失。
+ */
+public class SlidingWindowCounter {
+
+    private static final int COUNT_BITS = 40;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long EPOCH_MASK = (1L << (Long.SIZE - COUNT_BITS)) - 1;
+
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final AtomicLongArray buckets;
+
+    public SlidingWindowCounter(long bucketMillis, int bucketCount) {
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+        this.buckets = new AtomicLongArray(bucketCount);
+    }
+
+    /**
+     * @param delta 本次计数，0 ~ 2^40-1；桶内累计超过 2^40-1 时停在上限，不会进位到时间序号
+     * @throws IllegalArgumentException delta 为负数或超出单个桶的计数范围
+     */
+    public void add(long nowMillis, long delta) {
+        if (delta < 0 || delta > COUNT_MASK) {
+            throw new IllegalArgumentException("计数超出范围：" + delta);
+        }
+        long epoch = nowMillis / bucketMillis;
+        int slot = (int) (epoch % bucketCount);
+        long tag = epoch & EPOCH_MASK;
+        while (true) {
+            long current = buckets.get(slot);
+            long count = (current >>> COUNT_BITS) == tag
+                    ? Math.min((current & COUNT_MASK) + delta, COUNT_MASK) // 同一个桶，直接累加
+                    : delta; // 桶已过期，重置为本次计数
+            long next = (tag << COUNT_BITS) | count;
+            if (buckets.compareAndSet(slot, current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 统计最近 windowBuckets 个桶（含当前桶）的计数之和
+     */
+    public long sum(long nowMillis, int windowBuckets) {
+        long currentTag = (nowMillis / bucketMillis) & EPOCH_MASK;
+        int window = Math.min(windowBuckets, bucketCount);
+        long total = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            long value = buckets.get(i);
+            long age = (currentTag - (value >>> COUNT_BITS)) & EPOCH_MASK;
+            if (age < window) {
+                total += value & COUNT_MASK;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,344 @@
+package edu.scut.qualitycontrol.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.scut.qualitycontrol.model.dto.SlowQueryDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Query;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.summary.Plan;
+import org.neo4j.driver.summary.ProfiledPlan;
+import org.neo4j.driver.summary.QueryType;
+import org.neo4j.driver.summary.ResultSummary;
+import org.neo4j.driver.summary.SummaryCounters;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Neo4j 慢查询日志
+ * 所有经过 Driver 的语句（Neo4jClient、@Query 方法、SDN 生成的 save / findAll 等）在结果消费完毕时交给这里，
+ * 超过阈值的记入日志并保留最近 capacity 条，供 /api/admin/slow-queries 查看：
+ * 1. 参数默认只记录类型和长度（redact-parameters），避免把业务数据写进日志；
+ * 2. 行数由包装后的结果计数，更新计数和服务端耗时取自驱动的结果摘要；
+ * 3. 按 profile-sample-rate 抽样，在后台用原始 Driver 重新执行一次以采集执行计划：只读语句用 PROFILE（带 db hits），
+ *    写语句只用 EXPLAIN（不会真正执行），同一语句在 profile-interval 内只采集一次。
+ * 指标：neo4j.slow.queries（按 type 统计）。
+ */
+@Slf4j
+@Service
+public class SlowQueryLog {
+
+    private static final int MAX_PARAMETER_LENGTH = 200;
+
+    private final MeterRegistry meterRegistry;
+    private final int capacity;
+    private final boolean redactParameters;
+    // 最近采集过执行计划的语句
+    private final Cache<String, Boolean> recentlyProfiled;
+    // 采集执行计划的后台线程；积压时直接丢弃，不影响业务查询
+    private final ThreadPoolExecutor profiler = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(16), runnable -> {
+                Thread thread = new Thread(runnable, "slow-query-profile");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    // 最近的慢查询，最新的在队尾
+    private final Deque<Entry> entries = new ArrayDeque<>();
+
+    private volatile long thresholdMillis;
+    private volatile double profileSampleRate;
+
+    public SlowQueryLog(MeterRegistry meterRegistry,
+                        @Value("${qualitycontrol.slow-query.threshold:500ms}") Duration threshold,
+                        @Value("${qualitycontrol.slow-query.capacity:200}") int capacity,
+                        @Value("${qualitycontrol.slow-query.redact-parameters:true}") boolean redactParameters,
+                        @Value("${qualitycontrol.slow-query.profile-sample-rate:0.2}") double profileSampleRate,
+                        @Value("${qualitycontrol.slow-query.profile-interval:10m}") Duration profileInterval) {
+        this.meterRegistry = meterRegistry;
+        this.thresholdMillis = threshold.toMillis();
+        this.capacity = Math.max(1, capacity);
+        this.redactParameters = redactParameters;
+        this.profileSampleRate = profileSampleRate;
+        this.recentlyProfiled = Caffeine.newBuilder()
+                .expireAfterWrite(profileInterval)
+                .maximumSize(10_000)
+                .build();
+    }
+
+    /**
+     * 一条语句的结果已消费完毕
+     * @param driver 原始（未包装的）Driver，用于重新执行 PROFILE / EXPLAIN
+     */
+    public void observe(Driver driver, ResultSummary summary, long elapsedNanos, long rows) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (elapsedMillis < thresholdMillis || summary == null) {
+            return;
+        }
+        Query query = summary.query();
+        QueryType queryType = summary.queryType();
+        Entry entry = new Entry(Instant.now(),
+                summary.database() == null ? null : summary.database().name(),
+                query.text(),
+                describeParameters(query.parameters()),
+                queryType == null ? null : queryType.name(),
+                elapsedMillis,
+                summary.resultAvailableAfter(TimeUnit.MILLISECONDS) + summary.resultConsumedAfter(TimeUnit.MILLISECONDS),
+                rows,
+                describeUpdates(summary.counters()));
+        log.warn("Neo4j 慢查询 {} ms（服务端 {} ms，{} 行，数据库 {}）：{} 参数：{}", entry.elapsedMs, entry.serverMs,
+                entry.rows, entry.database, oneLine(entry.statement), entry.parameters);
+        meterRegistry.counter("neo4j.slow.queries", "type", String.valueOf(entry.queryType)).increment();
+        synchronized (entries) {
+            entries.addLast(entry);
+            while (entries.size() > capacity) {
+                entries.removeFirst();
+            }
+        }
+
+        if (summary.hasProfile()) {
+            // 语句本身就带 PROFILE
+            entry.plan("PROFILE", render(summary.profile()), totalDbHits(summary.profile()));
+        } else if (shouldProfile(query.text(), queryType)) {
+            profiler.execute(() -> profile(driver, entry, query, queryType));
+        }
+    }
+
+    /**
+     * 最近的慢查询，最新的在前
+     */
+    public List<SlowQueryDto> recent(int limit) {
+        List<SlowQueryDto> result = new ArrayList<>();
+        synchronized (entries) {
+            Iterator<Entry> iterator = entries.descendingIterator();
+            while (iterator.hasNext() && result.size() < limit) {
+                result.add(iterator.next().toDto());
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        recentlyProfiled.invalidateAll();
+    }
+
+    public long getThresholdMillis() {
+        return thresholdMillis;
+    }
+
+    public double getProfileSampleRate() {
+        return profileSampleRate;
+    }
+
+    /**
+     * 运行时调整阈值和抽样比例，立即生效；参数为 null 时保持不变
+     */
+    public void update(Long thresholdMillis, Double profileSampleRate) {
+        if (thresholdMillis != null) {
+            this.thresholdMillis = Math.max(0, thresholdMillis);
+        }
+        if (profileSampleRate != null) {
+            this.profileSampleRate = Math.min(1, Math.max(0, profileSampleRate));
+        }
+        log.info("慢查询阈值 {} ms，执行计划抽样比例 {}", this.thresholdMillis, this.profileSampleRate);
+    }
+
+    // --- 执行计划 ---
+
+    private boolean shouldProfile(String text, QueryType queryType) {
+        if (queryType == null || queryType == QueryType.SCHEMA_WRITE) {
+            return false;
+        }
+        String head = text.stripLeading().toUpperCase(Locale.ROOT);
+        if (head.startsWith("EXPLAIN") || head.startsWith("PROFILE")) {
+            return false;
+        }
+        double rate = profileSampleRate;
+        if (rate <= 0 || ThreadLocalRandom.current().nextDouble() >= rate) {
+            return false;
+        }
+        return recentlyProfiled.asMap().putIfAbsent(text, Boolean.TRUE) == null;
+    }
+
+    private void profile(Driver driver, Entry entry, Query query, QueryType queryType) {
+        // 写语句重新执行会重复写入，只取估算的执行计划
+        boolean readOnly = queryType == QueryType.READ_ONLY;
+        String mode = readOnly ? "PROFILE" : "EXPLAIN";
+        SessionConfig.Builder config = SessionConfig.builder()
+                .withDefaultAccessMode(readOnly ? AccessMode.READ : AccessMode.WRITE);
+        if (entry.database != null) {
+            config.withDatabase(entry.database);
+        }
+        try (Session session = driver.session(config.build())) {
+            ResultSummary summary = session.run(new Query(mode + " " + query.text(), query.parameters())).consume();
+            if (summary.hasProfile()) {
+                entry.plan(mode, render(summary.profile()), totalDbHits(summary.profile()));
+            } else if (summary.hasPlan()) {
+                entry.plan(mode, render(summary.plan()), null);
+            } else {
+                return;
+            }
+            log.info("已采集慢查询的执行计划（{}）：{}\n{}", mode, oneLine(entry.statement), entry.plan);
+        } catch (RuntimeException e) {
+            log.warn("采集慢查询的执行计划失败：{}", e.getMessage());
+        }
+    }
+
+    private static String render(Plan plan) {
+        StringBuilder out = new StringBuilder();
+        render(plan, 0, out);
+        return out.toString();
+    }
+
+    private static void render(Plan plan, int depth, StringBuilder out) {
+        out.append("  ".repeat(depth)).append(plan.operatorType());
+        if (plan instanceof ProfiledPlan) {
+            ProfiledPlan profiled = (ProfiledPlan) plan;
+            out.append(" rows=").append(profiled.records()).append(" dbHits=").append(profiled.dbHits());
+        } else {
+            org.neo4j.driver.Value estimated = plan.arguments().get("EstimatedRows");
+            if (estimated != null) {
+                out.append(" estimatedRows=").append(Math.round(estimated.asDouble()));
+            }
+        }
+        org.neo4j.driver.Value details = plan.arguments().get("Details");
+        if (details != null) {
+            out.append("  ").append(details.asObject());
+        }
+        out.append('\n');
+        for (Plan child : plan.children()) {
+            render(child, depth + 1, out);
+        }
+    }
+
+    private static long totalDbHits(ProfiledPlan plan) {
+        long total = plan.dbHits();
+        for (ProfiledPlan child : plan.children()) {
+            total += totalDbHits(child);
+        }
+        return total;
+    }
+
+    // --- 格式化 ---
+
+    private String describeParameters(org.neo4j.driver.Value parameters) {
+        if (parameters == null || parameters.isNull() || parameters.isEmpty()) {
+            return "{}";
+        }
+        Map<String, String> described = new LinkedHashMap<>();
+        for (String key : parameters.keys()) {
+            org.neo4j.driver.Value value = parameters.get(key);
+            described.put(key, redactParameters ? shapeOf(value) : truncate(value.toString()));
+        }
+        return described.toString();
+    }
+
+    // 只保留类型和长度，例如 STRING(4)、LIST OF ANY?(1000)
+    private static String shapeOf(org.neo4j.driver.Value value) {
+        if (value.isNull()) {
+            return "NULL";
+        }
+        String type = value.type().name();
+        if ("STRING".equals(type)) {
+            return type + "(" + value.asString().length() + ")";
+        }
+        if ("MAP".equals(type) || type.startsWith("LIST")) {
+            return type + "(" + value.size() + ")";
+        }
+        return type;
+    }
+
+    private static String describeUpdates(SummaryCounters counters) {
+        if (counters == null || !counters.containsUpdates()) {
+            return "";
+        }
+        Map<String, Integer> updates = new LinkedHashMap<>();
+        updates.put("nodesCreated", counters.nodesCreated());
+        updates.put("nodesDeleted", counters.nodesDeleted());
+        updates.put("relationshipsCreated", counters.relationshipsCreated());
+        updates.put("relationshipsDeleted", counters.relationshipsDeleted());
+        updates.put("propertiesSet", counters.propertiesSet());
+        updates.put("labelsAdded", counters.labelsAdded());
+        updates.put("labelsRemoved", counters.labelsRemoved());
+        updates.values().removeIf(count -> count == 0);
+        return updates.toString();
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= MAX_PARAMETER_LENGTH ? text : text.substring(0, MAX_PARAMETER_LENGTH) + "…";
+    }
+
+    private static String oneLine(String statement) {
+        return statement.replaceAll("\\s+", " ").trim();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        profiler.shutdownNow();
+    }
+
+    /**
+     * 一条慢查询；执行计划由后台线程稍后补上
+     */
+    private static final class Entry {
+        private final Instant executedAt;
+        private final String database;
+        private final String statement;
+        private final String parameters;
+        private final String queryType;
+        private final long elapsedMs;
+        private final long serverMs;
+        private final long rows;
+        private final String updates;
+        private volatile Long dbHits;
+        private volatile String planMode;
+        private volatile String plan;
+
+        private Entry(Instant executedAt, String database, String statement, String parameters, String queryType,
+                      long elapsedMs, long serverMs, long rows, String updates) {
+            this.executedAt = executedAt;
+            this.database = database;
+            this.statement = statement;
+            this.parameters = parameters;
+            this.queryType = queryType;
+            this.elapsedMs = elapsedMs;
+            this.serverMs = serverMs;
+            this.rows = rows;
+            this.updates = updates;
+        }
+
+        private void plan(String mode, String plan, Long dbHits) {
+            this.dbHits = dbHits;
+            this.planMode = mode;
+            this.plan = plan;
+        }
+
+        private SlowQueryDto toDto() {
+            return new SlowQueryDto(executedAt, database, statement, parameters, queryType, elapsedMs, serverMs,
+                    rows, updates, dbHits, planMode, plan);
+        }
+    }
+}
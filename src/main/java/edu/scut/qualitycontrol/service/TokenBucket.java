@@ -0,0 +1,49 @@
+package edu.scut.qualitycontrol.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶（GCRA 形式）
+ * 只保存一个 “理论到达时间” TAT：每放行一个请求，TAT 向后推进一个发放间隔 interval = 1 / rate；
+ * 只要推进后的 TAT 不超过 now + burst * interval 就放行，否则拒绝并返回需要等待的时间。
+ * 速率和突发量在每次调用时传入，因此修改配置后无需重建桶。
+ */
+public class TokenBucket {
+
+    private final AtomicLong theoreticalArrival;
+
+    public TokenBucket(long nowNanos) {
+        this.theoreticalArrival = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * @return 0 表示放行；否则为被拒绝时需要等待的纳秒数
+     */
+    public long tryAcquire(long nowNanos, double ratePerSecond, int burst) {
+        long interval = interval(ratePerSecond);
+        long tolerance = interval * Math.max(1, burst);
+        while (true) {
+            long tat = theoreticalArrival.get();
+            // 用差值比较，nanoTime 可能为负数
+            long next = (tat - nowNanos > 0 ? tat : nowNanos) + interval;
+            long wait = next - nowNanos - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 退还一次 tryAcquire 占用的令牌（例如全局桶拒绝时退还客户端桶）
+     */
+    public void refund(double ratePerSecond) {
+        theoreticalArrival.addAndGet(-interval(ratePerSecond));
+    }
+
+    private static long interval(double ratePerSecond) {
+        return (long) (1_000_000_000L / ratePerSecond);
+    }
+}
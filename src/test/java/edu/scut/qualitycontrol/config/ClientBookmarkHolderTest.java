@@ -0,0 +1,108 @@
+package edu.scut.qualitycontrol.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.Bookmark;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 不依赖真实集群：模拟“写请求返回书签 -> 读请求带回书签”的往返
+ */
+class ClientBookmarkHolderTest {
+
+    private final ClientBookmarkHolder holder = new ClientBookmarkHolder();
+
+    @AfterEach
+    void tearDown() {
+        ClientBookmarkHolder.clear();
+        ProductionLineHolder.clear();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void writtenBookmarkIsReturnedAndReplayedOnNextRequest() {
+        // 写请求：事务提交后把书签写回响应头
+        MockHttpServletRequest writeRequest = new MockHttpServletRequest("POST", "/api/graph/relationship");
+        MockHttpServletResponse writeResponse = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(writeRequest, writeResponse));
+        holder.preHandle(writeRequest, writeResponse, null);
+        assertTrue(ClientBookmarkHolder.current().isEmpty());
+
+        holder.publish(Collections.singleton(Bookmark.from(Set.of("FB:bookmark-1"))));
+        assertEquals("FB:bookmark-1", writeResponse.getHeader(ClientBookmarkHolder.BOOKMARK_HEADER));
+        holder.afterCompletion(writeRequest, writeResponse, null, null);
+        assertTrue(ClientBookmarkHolder.current().isEmpty());
+
+        // 读请求：带回书签，事务开启时会等待副本追上该书签
+        MockHttpServletRequest readRequest = new MockHttpServletRequest("GET", "/api/graph/causal-paths");
+        readRequest.addHeader(ClientBookmarkHolder.BOOKMARK_HEADER, writeResponse.getHeader(ClientBookmarkHolder.BOOKMARK_HEADER));
+        holder.preHandle(readRequest, new MockHttpServletResponse(), null);
+
+        Set<Bookmark> bookmarks = ClientBookmarkHolder.current();
+        assertEquals(1, bookmarks.size());
+        assertEquals(Set.of("FB:bookmark-1"), bookmarks.iterator().next().values());
+    }
+
+    @Test
+    void bookmarksStayWithTheirLineWhenAlternating() {
+        // line-a 写入
+        MockHttpServletResponse first = handle("line-a", null, Set.of(), "FB:a-1");
+        assertEquals("line-a@FB:a-1", first.getHeader(ClientBookmarkHolder.BOOKMARK_HEADER));
+
+        // 带着 line-a 的书签访问 line-b：不等待 line-a 的书签，但原样写回
+        MockHttpServletResponse second = handle("line-b", first.getHeader(ClientBookmarkHolder.BOOKMARK_HEADER),
+                Set.of(), "FB:b-1");
+        assertEquals(Set.of("line-a@FB:a-1", "line-b@FB:b-1"), headerValues(second));
+
+        // 回到 line-a：只等待 line-a 的书签
+        MockHttpServletResponse third = handle("line-a", second.getHeader(ClientBookmarkHolder.BOOKMARK_HEADER),
+                Set.of("FB:a-1"), "FB:a-2");
+        assertEquals(Set.of("line-a@FB:a-2", "line-b@FB:b-1"), headerValues(third));
+
+        // 默认分区不带前缀，也不会用到其他产线的书签
+        handle(ProductionLineHolder.DEFAULT_LINE, third.getHeader(ClientBookmarkHolder.BOOKMARK_HEADER), Set.of(), null);
+        handle("line-b", third.getHeader(ClientBookmarkHolder.BOOKMARK_HEADER), Set.of("FB:b-1"), null);
+    }
+
+    /**
+     * 模拟一次请求：检查开启事务时可见的书签，必要时提交并产生新书签
+     */
+    private MockHttpServletResponse handle(String line, String header, Set<String> expectedBookmarks, String committed) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/graph/relationship");
+        if (header != null) {
+            request.addHeader(ClientBookmarkHolder.BOOKMARK_HEADER, header);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        ProductionLineHolder.set(line);
+        holder.preHandle(request, response, null);
+
+        Set<String> visible = new HashSet<>();
+        ClientBookmarkHolder.current().forEach(bookmark -> visible.addAll(bookmark.values()));
+        assertEquals(expectedBookmarks, visible, "产线 " + line);
+        if (committed != null) {
+            holder.publish(Collections.singleton(Bookmark.from(Set.of(committed))));
+            // 同一请求内后续的事务等待新书签
+            assertEquals(Set.of(committed), ClientBookmarkHolder.current().iterator().next().values());
+        }
+
+        holder.afterCompletion(request, response, null, null);
+        ProductionLineHolder.clear();
+        RequestContextHolder.resetRequestAttributes();
+        return response;
+    }
+
+    private static Set<String> headerValues(MockHttpServletResponse response) {
+        return Set.of(response.getHeader(ClientBookmarkHolder.BOOKMARK_HEADER).split(","));
+    }
+}
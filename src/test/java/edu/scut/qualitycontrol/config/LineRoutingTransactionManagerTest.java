@@ -0,0 +1,95 @@
+package edu.scut.qualitycontrol.config;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.Bookmark;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.TransactionConfig;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 在两条产线之间交替开启事务：每个事务只等待本产线上一次提交的书签，不会带上另一条产线数据库的书签
+ */
+class LineRoutingTransactionManagerTest {
+
+    private final List<SessionConfig> sessions = new ArrayList<>();
+
+    @Test
+    void bookmarksAreKeptPerLine() {
+        Driver driver = mock(Driver.class);
+        when(driver.session(any(SessionConfig.class))).thenAnswer(invocation -> openSession(invocation.getArgument(0)));
+        LineRoutingTransactionManager manager = new LineRoutingTransactionManager(driver,
+                new PartitionConfig().databaseSelectionProvider(""));
+        TransactionTemplate template = new TransactionTemplate(manager);
+
+        ProductionLineHolder.runIn("line-a", () -> template.executeWithoutResult(status -> { }));
+        ProductionLineHolder.runIn("line-b", () -> template.executeWithoutResult(status -> { }));
+        ProductionLineHolder.runIn("line-a", () -> template.executeWithoutResult(status -> { }));
+        ProductionLineHolder.runIn("line-b", () -> template.executeWithoutResult(status -> { }));
+
+        assertEquals(4, sessions.size());
+        assertEquals("line-a", sessions.get(0).database().orElse(null));
+        assertEquals("line-b", sessions.get(1).database().orElse(null));
+        assertTrue(bookmarkValues(sessions.get(0)).isEmpty());
+        // 第一次在 line-b 上开启事务时，line-a 刚提交的书签不能出现
+        assertTrue(bookmarkValues(sessions.get(1)).isEmpty());
+        assertEquals(Set.of("line-a#1"), bookmarkValues(sessions.get(2)));
+        assertEquals(Set.of("line-b#2"), bookmarkValues(sessions.get(3)));
+    }
+
+    @Test
+    void clientBookmarkIsUsedOnlyOnItsLine() {
+        Driver driver = mock(Driver.class);
+        when(driver.session(any(SessionConfig.class))).thenAnswer(invocation -> openSession(invocation.getArgument(0)));
+        LineRoutingTransactionManager manager = new LineRoutingTransactionManager(driver,
+                new PartitionConfig().databaseSelectionProvider(""));
+        TransactionTemplate template = new TransactionTemplate(manager);
+
+        try {
+            ProductionLineHolder.runIn("line-a", () -> {
+                ClientBookmarkHolder.set(Set.of(Bookmark.from(Set.of("client-a"))));
+                template.executeWithoutResult(status -> { });
+            });
+            ProductionLineHolder.runIn("line-b", () -> template.executeWithoutResult(status -> { }));
+        } finally {
+            ClientBookmarkHolder.clear();
+        }
+
+        assertEquals(Set.of("client-a"), bookmarkValues(sessions.get(0)));
+        assertTrue(bookmarkValues(sessions.get(1)).isEmpty());
+    }
+
+    // 每个会话提交后返回 “数据库#序号” 形式的书签
+    private Session openSession(SessionConfig config) {
+        sessions.add(config);
+        String bookmark = config.database().orElse("") + "#" + sessions.size();
+        Session session = mock(Session.class);
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.isOpen()).thenReturn(true);
+        when(session.isOpen()).thenReturn(true);
+        when(session.beginTransaction(any(TransactionConfig.class))).thenReturn(transaction);
+        when(session.lastBookmark()).thenReturn(Bookmark.from(Set.of(bookmark)));
+        return session;
+    }
+
+    private static Set<String> bookmarkValues(SessionConfig config) {
+        Set<String> values = new HashSet<>();
+        if (config.bookmarks() != null) {
+            config.bookmarks().forEach(bookmark -> values.addAll(bookmark.values()));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,95 @@
+package edu.scut.qualitycontrol.config;
+
+import edu.scut.qualitycontrol.service.RateLimitService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.DispatcherType;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 准入结果、Retry-After、异步分派以及 X-API-Key 的识别
+ */
+class RateLimitInterceptorTest {
+
+    // 每类接口每个客户端只允许 1 个请求（速率很低，测试期间不会回填），不设全局限制
+    private final RateLimitService rateLimitService = new RateLimitService(new SimpleMeterRegistry(), true,
+            0.01, 1, 0, 1,
+            0.01, 1, 0, 1,
+            0.01, 1, 0, 1);
+    private final RateLimitInterceptor interceptor = new RateLimitInterceptor(rateLimitService, List.of("registered-key"));
+
+    @Test
+    void throttledRequestGets429WithRetryAfter() throws IOException {
+        assertTrue(admit(request("/api/graph/narrate", "10.0.0.1", null)));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(request("/api/graph/narrate", "10.0.0.1", null), response, null));
+        assertEquals(429, response.getStatus());
+        // 速率 0.01/s：下一个令牌在 100 秒后
+        assertEquals("100", response.getHeader("Retry-After"));
+    }
+
+    @Test
+    void asyncDispatchIsNotChargedAgain() throws IOException {
+        assertTrue(admit(request("/api/graph/narrate/stream", "10.0.0.2", null)));
+
+        MockHttpServletRequest asyncDispatch = request("/api/graph/narrate/stream", "10.0.0.2", null);
+        asyncDispatch.setDispatcherType(DispatcherType.ASYNC);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertTrue(interceptor.preHandle(asyncDispatch, response, null));
+        assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    void onlyRegisteredKeysGetTheirOwnBucket() throws IOException {
+        assertTrue(admit(request("/api/graph/nodes", "10.0.0.3", null)));
+        // 已登记的 Key 有独立的预算
+        assertTrue(admit(request("/api/graph/nodes", "10.0.0.3", "registered-key")));
+        // 随意编造的 Key 仍按来源 IP 计算
+        assertFalse(admit(request("/api/graph/nodes", "10.0.0.3", "random-" + System.nanoTime())));
+    }
+
+    @Test
+    void semanticSearchHasItsOwnBudget() throws IOException {
+        assertTrue(admit(request("/api/graph/nodes", "10.0.0.4", null)));
+        assertTrue(admit(request("/api/graph/nodes/semantic", "10.0.0.4", null)));
+        assertFalse(admit(request("/api/graph/nodes/semantic", "10.0.0.4", null)));
+    }
+
+    @Test
+    void defectSemanticSearchSharesTheSemanticBudget() throws IOException {
+        assertTrue(admit(request("/api/graph/defects/semantic", "10.0.0.5", null)));
+        assertFalse(admit(request("/api/graph/nodes/semantic", "10.0.0.5", null)));
+        // 图谱读取类接口的预算不受影响
+        assertTrue(admit(request("/api/graph/nodes", "10.0.0.5", null)));
+    }
+
+    @Test
+    void retryAfterRoundsUpToWholeSeconds() {
+        assertEquals(1, RateLimitInterceptor.retryAfterSeconds(1));
+        assertEquals(1, RateLimitInterceptor.retryAfterSeconds(TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(2, RateLimitInterceptor.retryAfterSeconds(TimeUnit.SECONDS.toNanos(1) + 1));
+    }
+
+    private boolean admit(MockHttpServletRequest request) throws IOException {
+        return interceptor.preHandle(request, new MockHttpServletResponse(), null);
+    }
+
+    private static MockHttpServletRequest request(String uri, String remoteAddr, String apiKey) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setRemoteAddr(remoteAddr);
+        if (apiKey != null) {
+            request.addHeader(RateLimitInterceptor.API_KEY_HEADER, apiKey);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,75 @@
+package edu.scut.qualitycontrol.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 全图环路审计：每个强连通分量给出一条真实存在的环路
+ */
+class CycleFinderTest {
+
+    @Test
+    void acyclicGraphHasNoCycles() {
+        CausalGraph graph = graph(List.of("a", "b", "c"),
+                List.of(edge("a", "b"), edge("b", "c"), edge("a", "c"), edge("c", "缺陷")));
+        assertTrue(CycleFinder.findCycles(graph).isEmpty());
+    }
+
+    @Test
+    void reportsOneCyclePerComponent() {
+        // 分量 {a, b, c} 和 {d, e}，以及 f 的自环
+        CausalGraph graph = graph(List.of("a", "b", "c", "d", "e", "f", "g"),
+                List.of(edge("a", "b"), edge("b", "c"), edge("c", "a"),
+                        edge("c", "d"), edge("d", "e"), edge("e", "d"),
+                        edge("f", "f"), edge("e", "g")));
+
+        List<List<String>> cycles = CycleFinder.findCycles(graph);
+        assertEquals(3, cycles.size());
+        Set<Set<String>> members = new HashSet<>();
+        for (List<String> cycle : cycles) {
+            assertEquals(cycle.get(0), cycle.get(cycle.size() - 1), "环路必须回到起点：" + cycle);
+            for (int i = 0; i < cycle.size() - 1; i++) {
+                assertTrue(graph.hasEdge(cycle.get(i), cycle.get(i + 1)), "环路中的边不存在：" + cycle);
+            }
+            members.add(new HashSet<>(cycle));
+        }
+        assertEquals(Set.of(Set.of("a", "b", "c"), Set.of("d", "e"), Set.of("f")), members);
+    }
+
+    @Test
+    void deepChainDoesNotOverflowTheStack() {
+        List<String> names = new ArrayList<>();
+        List<GraphEdge> edges = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            names.add("n" + i);
+            if (i > 0) {
+                edges.add(edge("n" + (i - 1), "n" + i));
+            }
+        }
+        edges.add(edge("n99999", "n0"));
+        List<List<String>> cycles = CycleFinder.findCycles(graph(names, edges));
+        assertEquals(1, cycles.size());
+        assertEquals(100_001, cycles.get(0).size());
+    }
+
+    private static CausalGraph graph(List<String> factors, List<GraphEdge> edges) {
+        List<GraphNode> nodes = new ArrayList<>();
+        for (String name : factors) {
+            nodes.add(new GraphNode(name, GraphNode.FACTOR_LABEL, Map.of()));
+        }
+        nodes.add(new GraphNode("缺陷", GraphNode.DEFECT_LABEL, Map.of()));
+        return CausalGraph.of(1, nodes, edges);
+    }
+
+    private static GraphEdge edge(String source, String target) {
+        return new GraphEdge(source, target, null);
+    }
+}
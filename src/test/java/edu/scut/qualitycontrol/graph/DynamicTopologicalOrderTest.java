@@ -0,0 +1,108 @@
+package edu.scut.qualitycontrol.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在线插入边时的成环检测与拓扑序维护
+ */
+class DynamicTopologicalOrderTest {
+
+    @Test
+    void edgeClosingACycleIsRejectedWithThePath() {
+        DynamicTopologicalOrder order = new DynamicTopologicalOrder();
+        assertTrue(order.addEdge("a", "b").isEmpty());
+        assertTrue(order.addEdge("b", "c").isEmpty());
+
+        Optional<List<String>> cycle = order.addEdge("c", "a");
+        assertEquals(Optional.of(List.of("c", "a", "b", "c")), cycle);
+        // 被拒绝的边不会留下
+        assertFalse(order.containsEdge("c", "a"));
+    }
+
+    @Test
+    void selfLoopIsRejected() {
+        DynamicTopologicalOrder order = new DynamicTopologicalOrder();
+        assertEquals(Optional.of(List.of("a", "a")), order.addEdge("a", "a"));
+    }
+
+    @Test
+    void edgeAgainstCurrentOrderIsReorderedWhenAcyclic() {
+        DynamicTopologicalOrder order = new DynamicTopologicalOrder();
+        order.addNode("a");
+        order.addNode("b");
+        order.addNode("c");
+        assertTrue(order.addEdge("b", "c").isEmpty());
+        // c 排在 a 之后，插入 c -> a 需要重排，但不成环
+        assertTrue(order.addEdge("c", "a").isEmpty());
+        // 重排之后 a -> b 才会成环
+        assertEquals(Optional.of(List.of("a", "b", "c", "a")), order.addEdge("a", "b"));
+    }
+
+    @Test
+    void removedEdgeNoLongerBlocksTheReverseEdge() {
+        DynamicTopologicalOrder order = new DynamicTopologicalOrder();
+        order.addEdge("a", "b");
+        assertTrue(order.addEdge("b", "a").isPresent());
+
+        order.removeEdge("a", "b");
+        assertTrue(order.addEdge("b", "a").isEmpty());
+
+        order.removeNode("a");
+        assertFalse(order.containsEdge("b", "a"));
+        assertTrue(order.addEdge("a", "b").isEmpty());
+    }
+
+    /**
+     * 随机插入边，与每次都做完整 DFS 的朴素判断结果一致
+     */
+    @Test
+    void agreesWithFullSearchOnRandomGraphs() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            DynamicTopologicalOrder order = new DynamicTopologicalOrder();
+            CausalGraph graph = CausalGraph.of(0, List.of(), List.of());
+            for (int i = 0; i < 200; i++) {
+                String source = "n" + random.nextInt(30);
+                String target = "n" + random.nextInt(30);
+                if (source.equals(target)) {
+                    continue;
+                }
+                boolean expectedCycle = reaches(graph, target, source);
+                Optional<List<String>> cycle = order.addEdge(source, target);
+                assertEquals(expectedCycle, cycle.isPresent(), source + " -> " + target);
+                if (cycle.isEmpty()) {
+                    graph = graph.withEdge(source, target, null);
+                }
+            }
+        }
+    }
+
+    private static boolean reaches(CausalGraph graph, String from, String to) {
+        Deque<String> stack = new ArrayDeque<>(List.of(from));
+        Set<String> seen = new HashSet<>(List.of(from));
+        while (!stack.isEmpty()) {
+            String node = stack.pop();
+            if (node.equals(to)) {
+                return true;
+            }
+            for (String next : graph.successors(node)) {
+                if (seen.add(next)) {
+                    stack.push(next);
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,129 @@
+package edu.scut.qualitycontrol.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 增量维护的统计量必须与对修改后的图全量计算的结果一致；touched 集合与 CausalGraphStore 中的取法相同
+ */
+class GraphStatisticsTest {
+
+    @Test
+    void computeOnSmallChain() {
+        CausalGraph graph = CausalGraph.of(1,
+                List.of(factor("a"), factor("b"), defect("d")),
+                List.of(new GraphEdge("a", "b", 0.5), new GraphEdge("b", "d", null), new GraphEdge("a", "d", null)));
+        GraphStatistics statistics = GraphStatistics.compute(graph);
+
+        assertEquals(Map.of(GraphNode.FACTOR_LABEL, 2, GraphNode.DEFECT_LABEL, 1), statistics.getNodesByLabel());
+        assertEquals(3, statistics.getEdgeCount());
+        assertEquals(1, statistics.getRootCount());
+        assertEquals(2, statistics.getMaxDepth());
+        assertEquals(2, statistics.depthOf("d"));
+        // a -> d 与 a -> b -> d
+        assertEquals(Map.of("d", 2L), statistics.getPathsPerDefect());
+    }
+
+    @Test
+    void cycleIsUnresolvedUntilBroken() {
+        CausalGraph before = CausalGraph.of(1,
+                List.of(factor("a"), factor("b"), factor("c"), defect("d")),
+                List.of(new GraphEdge("a", "b", null), new GraphEdge("b", "c", null), new GraphEdge("c", "d", null)));
+        GraphStatistics statistics = GraphStatistics.compute(before);
+
+        CausalGraph cyclic = before.withEdge("c", "b", null);
+        statistics.apply(before, cyclic, Set.of("c", "b"));
+        assertSame(GraphStatistics.compute(cyclic), statistics, cyclic);
+        assertNull(statistics.depthOf("b"));
+        assertNull(statistics.depthOf("d"));
+
+        CausalGraph broken = cyclic.withoutEdge("b", "c");
+        statistics.apply(cyclic, broken, Set.of("b", "c"));
+        assertSame(GraphStatistics.compute(broken), statistics, broken);
+        assertEquals(0, statistics.depthOf("c"));
+        assertEquals(1, statistics.depthOf("d"));
+    }
+
+    @Test
+    void incrementalApplyMatchesFullComputation() {
+        Random random = new Random(42);
+        CausalGraph graph = CausalGraph.of(0, List.of(), List.of());
+        GraphStatistics statistics = GraphStatistics.compute(graph);
+        int nextId = 0;
+        for (int step = 0; step < 3000; step++) {
+            List<String> names = new ArrayList<>();
+            for (GraphNode node : graph.nodes()) {
+                names.add(node.getName());
+            }
+            names.sort(null);
+            int op = names.size() < 4 ? 0 : random.nextInt(10);
+            CausalGraph after;
+            Set<String> touched;
+            if (op <= 1) {
+                // 新增节点，或把已有节点改成另一种标签
+                String name = op == 0 ? "n" + nextId++ : pick(random, names);
+                after = graph.withNode(random.nextInt(4) == 0 ? defect(name) : factor(name));
+                touched = Set.of(name);
+            } else if (op == 2) {
+                String name = pick(random, names);
+                touched = new HashSet<>(graph.predecessors(name));
+                touched.addAll(graph.successors(name));
+                touched.add(name);
+                after = graph.withoutNode(name);
+            } else if (op <= 7) {
+                String source = pick(random, names);
+                String target = pick(random, names);
+                after = graph.withEdge(source, target, random.nextBoolean() ? null : random.nextDouble());
+                touched = new HashSet<>(List.of(source, target));
+            } else {
+                String source = pick(random, names);
+                List<String> targets = new ArrayList<>(graph.successors(source));
+                if (targets.isEmpty()) {
+                    continue;
+                }
+                targets.sort(null);
+                String target = pick(random, targets);
+                after = graph.withoutEdge(source, target);
+                touched = new HashSet<>(List.of(source, target));
+            }
+            statistics.apply(graph, after, touched);
+            assertSame(GraphStatistics.compute(after), statistics, after);
+            graph = after;
+        }
+    }
+
+    private static void assertSame(GraphStatistics expected, GraphStatistics actual, CausalGraph graph) {
+        String at = "版本 " + graph.getVersion();
+        assertEquals(expected.getNodesByLabel(), actual.getNodesByLabel(), at);
+        assertEquals(expected.getEdgeCount(), actual.getEdgeCount(), at);
+        assertEquals(expected.getRootCount(), actual.getRootCount(), at);
+        assertEquals(expected.getMaxDepth(), actual.getMaxDepth(), at);
+        assertEquals(expected.getInDegreeHistogram(), actual.getInDegreeHistogram(), at);
+        assertEquals(expected.getOutDegreeHistogram(), actual.getOutDegreeHistogram(), at);
+        assertEquals(expected.getPathsPerDefect(), actual.getPathsPerDefect(), at);
+        for (GraphNode node : graph.nodes()) {
+            assertEquals(expected.depthOf(node.getName()), actual.depthOf(node.getName()), at + " 节点 " + node.getName());
+        }
+    }
+
+    private static String pick(Random random, List<String> names) {
+        return names.get(random.nextInt(names.size()));
+    }
+
+    private static GraphNode factor(String name) {
+        return new GraphNode(name, GraphNode.FACTOR_LABEL, Map.of());
+    }
+
+    private static GraphNode defect(String name) {
+        return new GraphNode(name, GraphNode.DEFECT_LABEL, Map.of());
+    }
+}
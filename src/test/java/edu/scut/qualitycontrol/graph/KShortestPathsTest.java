@@ -0,0 +1,78 @@
+package edu.scut.qualitycontrol.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Top-K 根因链路：按各段概率乘积从大到小排列，未设置 weight 的关系使用默认概率
+ */
+class KShortestPathsTest {
+
+    private static final double DEFAULT_PROBABILITY = 0.5;
+
+    // A、B 为根因：A -> C -> D (0.9 * 0.8)，B -> C -> D (0.5 * 0.8)，A -> D (0.3)
+    private final CausalGraph graph = CausalGraph.of(1,
+            List.of(factor("A"), factor("B"), factor("C"), defect("D"), defect("E")),
+            List.of(new GraphEdge("A", "C", 0.9),
+                    new GraphEdge("B", "C", 0.5),
+                    new GraphEdge("C", "D", 0.8),
+                    new GraphEdge("A", "D", 0.3)));
+
+    @Test
+    void pathsAreRankedByProbability() {
+        List<KShortestPaths.RankedPath> paths = KShortestPaths.find(graph, "D", 3, DEFAULT_PROBABILITY);
+
+        assertEquals(3, paths.size());
+        assertEquals(List.of("A", "C", "D"), paths.get(0).getNodes());
+        assertEquals(0.72, paths.get(0).getProbability(), 1e-9);
+        assertEquals(List.of("B", "C", "D"), paths.get(1).getNodes());
+        assertEquals(0.4, paths.get(1).getProbability(), 1e-9);
+        assertEquals(List.of("A", "D"), paths.get(2).getNodes());
+        assertEquals(0.3, paths.get(2).getProbability(), 1e-9);
+    }
+
+    @Test
+    void returnsAtMostTheExistingPaths() {
+        assertEquals(3, KShortestPaths.find(graph, "D", 10, DEFAULT_PROBABILITY).size());
+        assertEquals(1, KShortestPaths.find(graph, "D", 1, DEFAULT_PROBABILITY).size());
+    }
+
+    @Test
+    void missingWeightUsesDefaultProbability() {
+        CausalGraph unweighted = graph.withEdge("B", "D", null);
+        List<KShortestPaths.RankedPath> paths = KShortestPaths.find(unweighted, "D", 4, DEFAULT_PROBABILITY);
+
+        assertEquals(4, paths.size());
+        assertEquals(List.of("B", "D"), paths.get(1).getNodes());
+        assertEquals(DEFAULT_PROBABILITY, paths.get(1).getProbability(), 1e-9);
+    }
+
+    @Test
+    void onlyStartsFromRootFactors() {
+        // C 有上游，不能作为链路起点，即使直接连到缺陷
+        for (KShortestPaths.RankedPath path : KShortestPaths.find(graph, "D", 10, DEFAULT_PROBABILITY)) {
+            assertTrue(graph.isRoot(path.getNodes().get(0)), "起点 " + path.getNodes().get(0) + " 不是根因");
+        }
+    }
+
+    @Test
+    void unreachableOrNonDefectTargetHasNoPaths() {
+        assertTrue(KShortestPaths.find(graph, "E", 3, DEFAULT_PROBABILITY).isEmpty());
+        assertTrue(KShortestPaths.find(graph, "C", 3, DEFAULT_PROBABILITY).isEmpty());
+        assertTrue(KShortestPaths.find(graph, "不存在", 3, DEFAULT_PROBABILITY).isEmpty());
+        assertTrue(KShortestPaths.find(graph, "D", 0, DEFAULT_PROBABILITY).isEmpty());
+    }
+
+    private static GraphNode factor(String name) {
+        return new GraphNode(name, GraphNode.FACTOR_LABEL, Map.of());
+    }
+
+    private static GraphNode defect(String name) {
+        return new GraphNode(name, GraphNode.DEFECT_LABEL, Map.of());
+    }
+}
@@ -0,0 +1,130 @@
+package edu.scut.qualitycontrol.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分层布局：最长路径分层、缺陷类型置底、交叉最小化以及环路容错
+ */
+class LayeredLayoutTest {
+
+    @Test
+    void layersFollowLongestPathAndDefectsSitAtTheBottom() {
+        // a -> b -> c -> 缺陷1，a -> c，b -> 缺陷2
+        CausalGraph graph = graph(List.of("a", "b", "c"), List.of("缺陷1", "缺陷2"),
+                List.of(edge("a", "b"), edge("b", "c"), edge("a", "c"), edge("c", "缺陷1"), edge("b", "缺陷2")));
+        Map<String, NodePosition> layout = LayeredLayout.compute(graph);
+
+        assertEquals(0, layout.get("a").getLayer());
+        assertEquals(1, layout.get("b").getLayer());
+        assertEquals(2, layout.get("c").getLayer());
+        assertEquals(3, layout.get("缺陷1").getLayer());
+        assertEquals(3, layout.get("缺陷2").getLayer());
+        assertEquals(3 * LayeredLayout.LAYER_SPACING, layout.get("缺陷2").getY(), 1e-9);
+    }
+
+    @Test
+    void everyEdgePointsDownward() {
+        CausalGraph graph = randomDag(60, 150, 11);
+        Map<String, NodePosition> layout = LayeredLayout.compute(graph);
+
+        assertEquals(graph.nodes().size(), layout.size());
+        for (GraphNode node : graph.nodes()) {
+            for (String target : graph.successors(node.getName())) {
+                assertTrue(layout.get(node.getName()).getLayer() < layout.get(target).getLayer(),
+                        node.getName() + " -> " + target);
+            }
+        }
+    }
+
+    @Test
+    void barycenterRemovesASimpleCrossing() {
+        // 字典序初始排列为 a b / c d，a -> d 与 b -> c 交叉，重排后应消除
+        CausalGraph graph = graph(List.of("a", "b"), List.of("c", "d"), List.of(edge("a", "d"), edge("b", "c")));
+        Map<String, NodePosition> layout = LayeredLayout.compute(graph);
+
+        boolean aLeftOfB = layout.get("a").getX() < layout.get("b").getX();
+        boolean dLeftOfC = layout.get("d").getX() < layout.get("c").getX();
+        assertEquals(aLeftOfB, dLeftOfC);
+    }
+
+    @Test
+    void rowsAreCenteredAndEvenlySpaced() {
+        CausalGraph graph = graph(List.of("a", "b", "c"), List.of(), List.of());
+        Map<String, NodePosition> layout = LayeredLayout.compute(graph);
+
+        double sum = 0;
+        List<Double> xs = new ArrayList<>();
+        for (NodePosition position : layout.values()) {
+            sum += position.getX();
+            xs.add(position.getX());
+        }
+        xs.sort(Double::compare);
+        assertEquals(0.0, sum, 1e-9);
+        assertEquals(LayeredLayout.NODE_SPACING, xs.get(1) - xs.get(0), 1e-9);
+        assertEquals(LayeredLayout.NODE_SPACING, xs.get(2) - xs.get(1), 1e-9);
+    }
+
+    @Test
+    void cyclesAndSubsetsAreHandled() {
+        CausalGraph graph = graph(List.of("a", "b", "c"), List.of("缺陷"),
+                List.of(edge("a", "b"), edge("b", "a"), edge("b", "c"), edge("c", "缺陷")));
+        Map<String, NodePosition> layout = LayeredLayout.compute(graph);
+        assertEquals(4, layout.size());
+
+        Map<String, NodePosition> subset = LayeredLayout.compute(graph, List.of("c", "缺陷"));
+        assertEquals(2, subset.size());
+        assertEquals(0, subset.get("c").getLayer());
+        assertEquals(1, subset.get("缺陷").getLayer());
+    }
+
+    @Test
+    void sameGraphGivesSameLayout() {
+        CausalGraph graph = randomDag(40, 80, 3);
+        Map<String, NodePosition> first = LayeredLayout.compute(graph);
+        Map<String, NodePosition> second = LayeredLayout.compute(graph);
+        for (Map.Entry<String, NodePosition> entry : first.entrySet()) {
+            assertEquals(entry.getValue().getX(), second.get(entry.getKey()).getX(), 0.0);
+            assertEquals(entry.getValue().getLayer(), second.get(entry.getKey()).getLayer());
+        }
+    }
+
+    private static CausalGraph randomDag(int factors, int edges, long seed) {
+        Random random = new Random(seed);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < factors; i++) {
+            names.add(String.format("f%03d", i));
+        }
+        List<GraphEdge> result = new ArrayList<>();
+        for (int i = 0; i < edges; i++) {
+            int source = random.nextInt(factors - 1);
+            String target = random.nextInt(4) == 0
+                    ? "缺陷" + random.nextInt(5)
+                    : names.get(source + 1 + random.nextInt(factors - source - 1));
+            result.add(edge(names.get(source), target));
+        }
+        return graph(names, List.of("缺陷0", "缺陷1", "缺陷2", "缺陷3", "缺陷4"), result);
+    }
+
+    private static CausalGraph graph(List<String> factors, List<String> defects, List<GraphEdge> edges) {
+        List<GraphNode> nodes = new ArrayList<>();
+        for (String name : factors) {
+            nodes.add(new GraphNode(name, GraphNode.FACTOR_LABEL, Map.of()));
+        }
+        for (String name : defects) {
+            nodes.add(new GraphNode(name, GraphNode.DEFECT_LABEL, Map.of()));
+        }
+        return CausalGraph.of(1, nodes, edges);
+    }
+
+    private static GraphEdge edge(String source, String target) {
+        return new GraphEdge(source, target, null);
+    }
+}
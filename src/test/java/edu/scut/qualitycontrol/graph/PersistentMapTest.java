@@ -0,0 +1,153 @@
+package edu.scut.qualitycontrol.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 持久化映射与 HashMap 逐步对照，并检查旧版本在修改后保持不变、哈希完全冲突的键能正确存取
+ */
+class PersistentMapTest {
+
+    @Test
+    void matchesHashMapUnderRandomUpdates() {
+        Random random = new Random(7);
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int step = 0; step < 20_000; step++) {
+            // 键的范围较小，保证插入、覆盖和删除都经常发生
+            int key = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expected.remove(key);
+            } else {
+                int value = random.nextInt();
+                map = map.plus(key, value);
+                expected.put(key, value);
+            }
+        }
+        assertEquals(expected, toHashMap(map));
+        assertEquals(expected.size(), map.size());
+        for (int key = -1000; key < 1000; key++) {
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    void olderVersionsAreUnchanged() {
+        List<PersistentMap<String, Integer>> versions = new ArrayList<>();
+        PersistentMap<String, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 500; i++) {
+            map = map.plus("k" + i, i);
+            versions.add(map);
+        }
+        for (int i = 0; i < 500; i += 2) {
+            map = map.minus("k" + i);
+        }
+        map = map.plus("k1", -1);
+
+        for (int i = 0; i < versions.size(); i++) {
+            PersistentMap<String, Integer> version = versions.get(i);
+            assertEquals(i + 1, version.size());
+            assertEquals(0, version.get("k0"));
+            assertEquals(i == 0 ? -2 : 1, version.getOrDefault("k1", -2));
+            assertFalse(version.containsKey("k" + (i + 1)));
+        }
+        assertEquals(250, map.size());
+        assertEquals(-1, map.get("k1"));
+        assertNull(map.get("k0"));
+    }
+
+    @Test
+    void unchangedUpdatesReturnTheSameInstance() {
+        Integer value = 1000;
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("a", value);
+        assertSame(map, map.plus("a", value));
+        assertSame(map, map.minus("b"));
+        assertSame(PersistentMap.empty(), PersistentMap.<String, Integer>empty().minus("a"));
+    }
+
+    @Test
+    void collidingKeysAreKeptApart() {
+        PersistentMap<Collider, String> map = PersistentMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.plus(new Collider(i), "v" + i);
+        }
+        // 哈希不同的键插入到冲突节点所在的位置
+        map = map.plus(new Collider(100, 1), "other");
+        assertEquals(11, map.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("v" + i, map.get(new Collider(i)));
+        }
+        assertEquals("other", map.get(new Collider(100, 1)));
+
+        for (int i = 0; i < 10; i += 2) {
+            map = map.minus(new Collider(i));
+        }
+        assertEquals(6, map.size());
+        assertNull(map.get(new Collider(0)));
+        assertEquals("v1", map.get(new Collider(1)));
+        assertEquals(6, map.values().size());
+    }
+
+    @Test
+    void valuesIteratesEveryEntryOnce() {
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        long sum = 0;
+        for (int i = 0; i < 5000; i++) {
+            map = map.plus(i * 31, i);
+            sum += i;
+        }
+        long iterated = 0;
+        int count = 0;
+        for (Integer value : map.values()) {
+            iterated += value;
+            count++;
+        }
+        assertEquals(5000, count);
+        assertEquals(sum, iterated);
+        assertTrue(PersistentMap.empty().values().isEmpty());
+    }
+
+    private static <K, V> Map<K, V> toHashMap(PersistentMap<K, V> map) {
+        Map<K, V> copy = new HashMap<>();
+        map.forEach(copy::put);
+        return copy;
+    }
+
+    // 哈希值可以指定的键，用于构造冲突
+    private static final class Collider {
+        private final int id;
+        private final int hash;
+
+        Collider(int id) {
+            this(id, 42);
+        }
+
+        Collider(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Collider && ((Collider) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package edu.scut.qualitycontrol.model.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import edu.scut.qualitycontrol.graph.NodePosition;
+import edu.scut.qualitycontrol.model.entity.DefectType;
+import edu.scut.qualitycontrol.model.entity.InfluencingFactor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 各传输格式的体积对比（基于合成的图数据，规模接近生产环境）
+ * 默认只对体积及其比例做断言；各格式的编码耗时由带 benchmark 标签的 encodingTimes 给出，
+ * 只打印结果、不做断言，默认的测试运行中排除（见 pom.xml 的 excludedGroups）。
+ * 注意：合成数据的实体没有填充 leadsToFactor / leadsToDefect，
+ * 真实的 /nodes 响应中这两个集合还会嵌套下游节点，默认 JSON 的实际体积比这里更大。
+ */
+class WireFormatBenchmarkTest {
+
+    private static final int FACTORS = 3000;
+    private static final int DEFECTS = 200;
+    private static final int LINKS_PER_FACTOR = 3;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 200;
+
+    private static GraphDataDto graph;
+    private static List<List<InfluencingFactor>> paths;
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+    private final ObjectMapper smile = new ObjectMapper(new SmileFactory());
+
+    @BeforeAll
+    static void buildGraph() {
+        Random random = new Random(42);
+        List<Object> nodes = new ArrayList<>();
+        List<InfluencingFactor> factors = new ArrayList<>();
+        for (int i = 0; i < FACTORS; i++) {
+            InfluencingFactor factor = new InfluencingFactor("影响因素-" + i, "工艺标准 GB/T " + i, "设备参数偏离标准范围导致的异常 " + i);
+            factors.add(factor);
+            nodes.add(factor);
+        }
+        for (int i = 0; i < DEFECTS; i++) {
+            nodes.add(new DefectType("缺陷类型-" + i, "表面出现裂纹、气泡或尺寸超差 " + i));
+        }
+        List<LinkDto> links = new ArrayList<>();
+        Map<String, NodePosition> layout = new HashMap<>();
+        for (int i = 0; i < FACTORS; i++) {
+            for (int j = 0; j < LINKS_PER_FACTOR; j++) {
+                String target = random.nextBoolean() && i + 1 < FACTORS
+                        ? "影响因素-" + (i + 1 + random.nextInt(FACTORS - i - 1))
+                        : "缺陷类型-" + random.nextInt(DEFECTS);
+                links.add(new LinkDto("影响因素-" + i, target));
+            }
+            layout.put("影响因素-" + i, new NodePosition(i % 100 * 120.0, i / 100 * 150.0, i / 100));
+        }
+        graph = new GraphDataDto(nodes, links, layout);
+
+        paths = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            List<InfluencingFactor> path = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                path.add(factors.get(random.nextInt(50))); // 路径之间大量共享节点
+            }
+            paths.add(path);
+        }
+    }
+
+    @Test
+    void dictionaryEncodingKeepsNodesAndLinks() {
+        DictionaryGraphDto encoded = DictionaryGraphDto.encode(graph);
+        assertEquals(graph.getNodes().size(), encoded.getNodes().size());
+        assertEquals(graph.getLinks().size(), encoded.getLinks().length);
+
+        LinkDto first = graph.getLinks().get(0);
+        int[] pair = encoded.getLinks()[0];
+        assertEquals(first.getSource(), encoded.getNodes().get(pair[0]).get("name"));
+        assertEquals(first.getTarget(), encoded.getNodes().get(pair[1]).get("name"));
+
+        NodePosition position = graph.getLayout().get("影响因素-0");
+        assertArrayEquals(new double[]{position.getX(), position.getY()}, encoded.getLayout()[0]);
+    }
+
+    @Test
+    void linkToUnknownNodeIsSkipped() {
+        List<Object> nodes = List.of(graph.getNodes().get(0), graph.getNodes().get(1));
+        String first = "影响因素-0";
+        String second = "影响因素-1";
+        GraphDataDto partial = new GraphDataDto(nodes,
+                List.of(new LinkDto(first, second), new LinkDto(first, "已删除的节点")), null);
+
+        DictionaryGraphDto encoded = DictionaryGraphDto.encode(partial);
+        assertEquals(1, encoded.getLinks().length);
+        assertArrayEquals(new int[]{0, 1}, encoded.getLinks()[0]);
+    }
+
+    @Test
+    void graphPayloadSizes() throws IOException {
+        DictionaryGraphDto dictionary = DictionaryGraphDto.encode(graph);
+        byte[] plainJson = json.writeValueAsBytes(graph);
+        byte[] dictionaryJson = json.writeValueAsBytes(dictionary);
+        byte[] plainCbor = cbor.writeValueAsBytes(graph);
+        byte[] plainSmile = smile.writeValueAsBytes(graph);
+        byte[] dictionarySmile = smile.writeValueAsBytes(dictionary);
+
+        // 字典编码去掉了每条关系中重复的名称，体积至少减少 30%，压缩后仍然更小
+        assertTrue(dictionaryJson.length < plainJson.length * 0.7,
+                "字典编码 " + dictionaryJson.length + " 字节，原始 JSON " + plainJson.length + " 字节");
+        assertTrue(gzip(dictionaryJson) < gzip(plainJson));
+        assertTrue(plainCbor.length < plainJson.length);
+        assertTrue(plainSmile.length < plainJson.length);
+        assertTrue(dictionarySmile.length < dictionaryJson.length);
+    }
+
+    @Test
+    void causalPathPayloadSizes() throws IOException {
+        byte[] plainJson = json.writeValueAsBytes(paths);
+        byte[] dictionaryJson = json.writeValueAsBytes(DictionaryPathsDto.encode(paths));
+        // 路径之间大量共享节点，字典编码后只剩下标，体积不到原来的十分之一
+        assertTrue(dictionaryJson.length < plainJson.length * 0.1,
+                "字典编码 " + dictionaryJson.length + " 字节，原始 JSON " + plainJson.length + " 字节");
+    }
+
+    /**
+     * 整图响应各编码方式的序列化耗时（字典编码包括构建字典的时间），预热后取多轮的平均值
+     */
+    @Tag("benchmark")
+    @Test
+    void encodingTimes() throws Exception {
+        Map<String, Callable<byte[]>> encodings = new LinkedHashMap<>();
+        encodings.put("JSON", () -> json.writeValueAsBytes(graph));
+        encodings.put("字典 JSON", () -> json.writeValueAsBytes(DictionaryGraphDto.encode(graph)));
+        encodings.put("CBOR", () -> cbor.writeValueAsBytes(graph));
+        encodings.put("Smile", () -> smile.writeValueAsBytes(graph));
+        encodings.put("字典 Smile", () -> smile.writeValueAsBytes(DictionaryGraphDto.encode(graph)));
+        for (Map.Entry<String, Callable<byte[]>> encoding : encodings.entrySet()) {
+            int size = 0;
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                size = encoding.getValue().call().length;
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                encoding.getValue().call();
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+            System.out.printf("%-10s %9d 字节  %8.3f ms/次%n", encoding.getKey(), size, millis);
+        }
+    }
+
+    private static int gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,126 @@
+package edu.scut.qualitycontrol.service;
+
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.GraphEdge;
+import edu.scut.qualitycontrol.graph.GraphNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 历史版本的记录与回放：内存只保留最近两个版本、每段日志三条，更早的版本必须从磁盘分段的快照加日志回放得到；
+ * 重启后从磁盘接上版本号，并能回放出全部历史版本
+ */
+class GraphHistoryServiceTest {
+
+    private static final String LINE = ProductionLineHolder.DEFAULT_LINE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysEveryVersionFromMemoryAndDisk() throws InterruptedException {
+        GraphHistoryService history = newService(mock(CausalGraphStore.class));
+        List<CausalGraph> versions = record(history);
+        history.shutdown();
+
+        for (CausalGraph expected : versions) {
+            assertSameGraph(expected, history.resolve(null, expected.getVersion()));
+        }
+        assertFalse(history.resolve(null, 0L).isPresent());
+        assertFalse(history.resolve(null, versions.get(versions.size() - 1).getVersion() + 1).isPresent());
+    }
+
+    @Test
+    void restartResumesVersionsAndReplaysFromDisk() throws InterruptedException {
+        GraphHistoryService first = newService(mock(CausalGraphStore.class));
+        List<CausalGraph> versions = record(first);
+        first.shutdown();
+
+        CausalGraphStore store = mock(CausalGraphStore.class);
+        GraphHistoryService restarted = newService(store);
+        long lastVersion = versions.get(versions.size() - 1).getVersion();
+        verify(store).resumeVersionsAfter(LINE, lastVersion);
+        for (CausalGraph expected : versions) {
+            assertSameGraph(expected, restarted.resolve(null, expected.getVersion()));
+        }
+        // 当前时刻对应最新版本
+        assertSameGraph(versions.get(versions.size() - 1), restarted.resolve("2999-01-01", null));
+    }
+
+    private GraphHistoryService newService(CausalGraphStore store) {
+        return new GraphHistoryService(store, new ProductionLineHolder(List.of()), directory.toString(),
+                2, 3, Duration.ofDays(365));
+    }
+
+    /**
+     * 按 CausalGraphStore 的方式通知一次加载和一串修改，返回每个版本的图
+     */
+    private static List<CausalGraph> record(GraphHistoryService history) {
+        CausalGraph graph = CausalGraph.of(1,
+                List.of(factor("温度"), factor("压力"), defect("气孔")),
+                List.of(new GraphEdge("温度", "气孔", 0.4)));
+        history.loaded(LINE, graph);
+        List<CausalGraph> versions = new ArrayList<>(List.of(graph));
+
+        versions.add(graph = applied(history, graph, graph.withEdge("压力", "气孔", 0.7), Set.of("压力", "气孔")));
+        versions.add(graph = applied(history, graph, graph.withNode(factor("湿度")), Set.of("湿度")));
+        versions.add(graph = applied(history, graph, graph.withEdge("湿度", "温度", null), Set.of("湿度", "温度")));
+        versions.add(graph = applied(history, graph, graph.withEdge("温度", "气孔", 0.9), Set.of("温度", "气孔")));
+        versions.add(graph = applied(history, graph, graph.withNode(defect("裂纹")), Set.of("裂纹")));
+        versions.add(graph = applied(history, graph, graph.withEdge("压力", "裂纹", 0.2), Set.of("压力", "裂纹")));
+        versions.add(graph = applied(history, graph, graph.withoutEdge("压力", "气孔"), Set.of("压力", "气孔")));
+        // 删除节点时 touched 包括它的前驱和后继
+        versions.add(graph = applied(history, graph, graph.withoutNode("温度"), Set.of("温度", "湿度", "气孔")));
+        GraphNode updated = new GraphNode("湿度", GraphNode.FACTOR_LABEL, Map.of("standard", "≤ 60%"));
+        versions.add(applied(history, graph, graph.withNode(updated), Set.of("湿度")));
+        return versions;
+    }
+
+    private static CausalGraph applied(GraphHistoryService history, CausalGraph before, CausalGraph after,
+                                       Set<String> touched) {
+        history.applied(LINE, before, after, touched);
+        return after;
+    }
+
+    private static void assertSameGraph(CausalGraph expected, Optional<CausalGraph> resolved) {
+        String at = "版本 " + expected.getVersion();
+        assertTrue(resolved.isPresent(), at);
+        CausalGraph actual = resolved.get();
+        assertEquals(expected.getVersion(), actual.getVersion(), at);
+        assertEquals(expected.nodes().size(), actual.nodes().size(), at);
+        assertEquals(expected.edgeCount(), actual.edgeCount(), at);
+        for (GraphNode node : expected.nodes()) {
+            GraphNode replayed = actual.node(node.getName());
+            assertTrue(replayed != null, at + " 缺少节点 " + node.getName());
+            assertEquals(node.getLabel(), replayed.getLabel(), at);
+            assertEquals(node.getProperties(), replayed.getProperties(), at);
+            assertEquals(expected.successors(node.getName()), actual.successors(node.getName()), at);
+            for (String target : expected.successors(node.getName())) {
+                assertEquals(expected.weight(node.getName(), target), actual.weight(node.getName(), target), at);
+            }
+        }
+    }
+
+    private static GraphNode factor(String name) {
+        return new GraphNode(name, GraphNode.FACTOR_LABEL, Map.of());
+    }
+
+    private static GraphNode defect(String name) {
+        return new GraphNode(name, GraphNode.DEFECT_LABEL, Map.of());
+    }
+}
@@ -0,0 +1,63 @@
+package edu.scut.qualitycontrol.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.neo4j.core.Neo4jClient;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 与 QualityControlApplicationTests 一样需要可用的 Neo4j；测试节点使用独立的名称，结束后删除
+ */
+@SpringBootTest
+class GraphManagerServiceTests {
+
+    private static final String CAUSE = "测试-上游因素";
+    private static final String EFFECT = "测试-下游因素";
+
+    @Autowired
+    private GraphManagerService graphManagerService;
+    @Autowired
+    private CausalGraphStore causalGraphStore;
+    @Autowired
+    private Neo4jClient neo4jClient;
+
+    @AfterEach
+    void cleanUp() {
+        graphManagerService.deleteNodeByName(CAUSE);
+        graphManagerService.deleteNodeByName(EFFECT);
+    }
+
+    @Test
+    void updatingFactorKeepsRelationshipWeight() {
+        graphManagerService.createOrUpdateFactor(CAUSE, "标准 1", "描述 1");
+        graphManagerService.createOrUpdateFactor(EFFECT, "标准 2", "描述 2");
+        assertTrue(graphManagerService.createRelationship(CAUSE, EFFECT, 0.8));
+
+        // 只改起始节点的属性，关系上的 weight 不能丢失
+        graphManagerService.createOrUpdateFactor(CAUSE, "标准 1（修订）", null);
+
+        Optional<Double> weight = neo4jClient.query(
+                        "MATCH (:影响因素 {name: $start})-[r:导致]->(:影响因素 {name: $end}) RETURN r.weight AS weight")
+                .bind(CAUSE).to("start")
+                .bind(EFFECT).to("end")
+                .fetchAs(Double.class)
+                .mappedBy((typeSystem, record) -> record.get("weight").asDouble())
+                .one();
+        assertEquals(Optional.of(0.8), weight);
+        assertEquals(0.8, causalGraphStore.current().weight(CAUSE, EFFECT), 1e-9);
+
+        String description = neo4jClient.query("MATCH (f:影响因素 {name: $name}) RETURN f.description AS description")
+                .bind(CAUSE).to("name")
+                .fetchAs(String.class)
+                .mappedBy((typeSystem, record) -> record.get("description").asString())
+                .one()
+                .orElseThrow();
+        assertEquals("描述 1", description);
+    }
+}
@@ -0,0 +1,254 @@
+package edu.scut.qualitycontrol.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.service.TokenStream;
+import edu.scut.qualitycontrol.model.entity.InfluencingFactor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 首字超时、总超时、模型出错时降级为模板文本，降级与 token 转发互斥，以及模板文本本身；大模型由可手动推送 token 的假实现代替
+ */
+class NarrationServiceTest {
+
+    private static final NarrationService.NarrationContext CONTEXT = new NarrationService.NarrationContext("气孔",
+            List.of(List.of(new InfluencingFactor("预热温度", "180 ± 5 ℃", "温度偏低时助焊剂挥发不充分"),
+                            new InfluencingFactor("助焊剂残留", null, "")),
+                    List.of(new InfluencingFactor("湿度", "≤ 60%", null))),
+            List.of(0.6, 0.25));
+
+    private final FakeNarrator narrator = new FakeNarrator();
+    private final RecordingListener listener = new RecordingListener();
+    private NarrationService service;
+
+    @AfterEach
+    void shutdown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void firstTokenTimeoutFallsBackToTemplate() throws Exception {
+        service = newService(Duration.ofMillis(50), Duration.ofSeconds(10));
+        service.stream(CONTEXT, listener);
+
+        NarrationService.NarrationResult fallback = listener.awaitFallback();
+        assertEquals(NarrationService.REASON_FIRST_TOKEN, fallback.getFallbackReason());
+        assertEquals(NarrationService.renderTemplate(CONTEXT), fallback.getText());
+
+        // 降级之后模型才开始输出：不再转发，也不会再回调 onComplete
+        narrator.stream.next("迟到");
+        narrator.stream.complete("迟到");
+        assertTrue(listener.tokens.isEmpty());
+        assertFalse(listener.completed);
+
+        assertEquals(NarrationService.REASON_FIRST_TOKEN, service.narrate(CONTEXT).getFallbackReason());
+    }
+
+    @Test
+    void totalTimeoutStopsForwardingTokens() throws Exception {
+        narrator.onStart = stream -> stream.next("气孔");
+        service = newService(Duration.ofSeconds(10), Duration.ofMillis(100));
+        service.stream(CONTEXT, listener);
+
+        NarrationService.NarrationResult fallback = listener.awaitFallback();
+        assertEquals(NarrationService.REASON_TOTAL, fallback.getFallbackReason());
+        narrator.stream.next("的成因");
+        assertEquals(List.of("气孔"), listener.tokens);
+        assertFalse(listener.completed);
+    }
+
+    @Test
+    void fallbackWaitsForTokenBeingForwarded() throws Exception {
+        CountDownLatch forwarding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener slowListener = new RecordingListener() {
+            @Override
+            public void onToken(String token) {
+                forwarding.countDown();
+                awaitQuietly(release);
+                super.onToken(token);
+            }
+        };
+        service = newService(Duration.ofSeconds(10), Duration.ofMillis(50));
+        service.stream(CONTEXT, slowListener);
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> narrator.stream.next("气孔"));
+        assertTrue(forwarding.await(5, TimeUnit.SECONDS));
+
+        // 总时限已到，但 onToken 尚未返回，降级必须等它结束
+        Thread.sleep(200);
+        assertTrue(slowListener.fallbacks.isEmpty());
+        release.countDown();
+        producer.get(5, TimeUnit.SECONDS);
+        assertEquals(NarrationService.REASON_TOTAL, slowListener.awaitFallback().getFallbackReason());
+        assertEquals(List.of("气孔"), slowListener.tokens);
+    }
+
+    @Test
+    void modelErrorFallsBackOnce() throws Exception {
+        narrator.onStart = stream -> stream.error(new IllegalStateException("连接被拒绝"));
+        service = newService(Duration.ofSeconds(10), Duration.ofSeconds(10));
+        service.stream(CONTEXT, listener);
+
+        assertEquals(NarrationService.REASON_ERROR, listener.awaitFallback().getFallbackReason());
+        narrator.stream.error(new IllegalStateException("重复的错误"));
+        assertEquals(1, listener.fallbacks.size());
+
+        NarrationService.NarrationResult result = service.narrate(CONTEXT);
+        assertTrue(result.isFallback());
+        assertEquals(NarrationService.REASON_ERROR, result.getFallbackReason());
+    }
+
+    @Test
+    void completedAnswerIsNotReplacedByTemplate() {
+        narrator.onStart = stream -> {
+            stream.next("预热");
+            stream.next("不足");
+            stream.complete("预热不足");
+        };
+        service = newService(Duration.ofSeconds(10), Duration.ofSeconds(10));
+        service.stream(CONTEXT, listener);
+
+        assertEquals(List.of("预热", "不足"), listener.tokens);
+        assertTrue(listener.completed);
+        assertTrue(listener.fallbacks.isEmpty());
+
+        NarrationService.NarrationResult result = service.narrate(CONTEXT);
+        assertFalse(result.isFallback());
+        assertNull(result.getFallbackReason());
+        assertEquals("预热不足", result.getText());
+    }
+
+    @Test
+    void templateListsPathsFactorsAndFirstRootCause() {
+        String expected = "【气孔】可能的成因如下（AI 解读暂不可用，以下内容由知识图谱直接生成）：\n" +
+                "\n路径 1（可能性 60.0%）：预热温度 -> 助焊剂残留 -> 气孔" +
+                "\n路径 2（可能性 25.0%）：湿度 -> 气孔" +
+                "\n\n涉及的影响因素：\n" +
+                "• 预热温度\n" +
+                "    - 标准：180 ± 5 ℃\n" +
+                "    - 备注：温度偏低时助焊剂挥发不充分\n" +
+                "• 助焊剂残留\n" +
+                "• 湿度\n" +
+                "    - 标准：≤ 60%\n" +
+                "\n排查建议：从路径 1 的根因“预热温度”开始，沿路径逐项对照上述标准检查。";
+        assertEquals(expected, NarrationService.renderTemplate(CONTEXT));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private NarrationService newService(Duration firstTokenTimeout, Duration totalTimeout) {
+        return new NarrationService(mock(GraphManagerService.class), narrator, new SimpleMeterRegistry(),
+                firstTokenTimeout, totalTimeout);
+    }
+
+    /**
+     * 每次调用返回一个新的假 TokenStream；start 时执行 onStart，测试之后还可以继续推送
+     */
+    private static final class FakeNarrator implements GraphNarratorService {
+        private volatile Consumer<FakeTokenStream> onStart = stream -> { };
+        private volatile FakeTokenStream stream;
+
+        @Override
+        public String analyzeDefectCauses(String defectName, String pathsContext) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TokenStream streamAnalyzeDefectCauses(String defectName, String pathsContext) {
+            stream = new FakeTokenStream(onStart);
+            return stream;
+        }
+    }
+
+    private static final class FakeTokenStream implements TokenStream {
+        private final Consumer<FakeTokenStream> onStart;
+        private Consumer<String> onNext = token -> { };
+        private Consumer<Response<AiMessage>> onComplete = response -> { };
+        private Consumer<Throwable> onError = error -> { };
+
+        private FakeTokenStream(Consumer<FakeTokenStream> onStart) {
+            this.onStart = onStart;
+        }
+
+        void next(String token) { onNext.accept(token); }
+
+        void complete(String text) { onComplete.accept(Response.from(AiMessage.from(text))); }
+
+        void error(Throwable error) { onError.accept(error); }
+
+        @Override
+        public TokenStream onRetrieved(Consumer<List<Content>> consumer) { return this; }
+
+        @Override
+        public TokenStream onNext(Consumer<String> consumer) {
+            onNext = consumer;
+            return this;
+        }
+
+        @Override
+        public TokenStream onComplete(Consumer<Response<AiMessage>> consumer) {
+            onComplete = consumer;
+            return this;
+        }
+
+        @Override
+        public TokenStream onError(Consumer<Throwable> consumer) {
+            onError = consumer;
+            return this;
+        }
+
+        @Override
+        public TokenStream ignoreErrors() { return this; }
+
+        @Override
+        public void start() { onStart.accept(this); }
+    }
+
+    private static class RecordingListener implements NarrationService.NarrationListener {
+        private final List<String> tokens = new CopyOnWriteArrayList<>();
+        private final List<NarrationService.NarrationResult> fallbacks = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<NarrationService.NarrationResult> firstFallback = new CompletableFuture<>();
+        private volatile boolean completed;
+
+        @Override
+        public void onToken(String token) { tokens.add(token); }
+
+        @Override
+        public void onComplete() { completed = true; }
+
+        @Override
+        public void onFallback(NarrationService.NarrationResult fallback) {
+            fallbacks.add(fallback);
+            firstFallback.complete(fallback);
+        }
+
+        NarrationService.NarrationResult awaitFallback() throws Exception {
+            return firstFallback.get(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package edu.scut.qualitycontrol.service;
+
+import edu.scut.qualitycontrol.model.dto.RootIndexReportDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.neo4j.core.Neo4jClient;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 与 QualityControlApplicationTests 一样需要可用的 Neo4j；测试节点使用独立的名称，结束后删除
+ * 覆盖写入时的深度传播、绕过服务写入后的检查与修复，以及环路相关节点的清除
+ */
+@SpringBootTest
+class RootIndexServiceTests {
+
+    private static final String A = "测试-根因-A";
+    private static final String B = "测试-根因-B";
+    private static final String C = "测试-根因-C";
+    private static final String DEFECT = "测试-根因-缺陷";
+    private static final List<String> NAMES = List.of(A, B, C, DEFECT);
+
+    @Autowired
+    private GraphManagerService graphManagerService;
+    @Autowired
+    private RootIndexService rootIndexService;
+    @Autowired
+    private CausalGraphStore causalGraphStore;
+    @Autowired
+    private CycleGuard cycleGuard;
+    @Autowired
+    private Neo4jClient neo4jClient;
+
+    @AfterEach
+    void cleanUp() {
+        neo4jClient.query("MATCH (n) WHERE n.name IN $names DETACH DELETE n").bind(NAMES).to("names").run();
+        causalGraphStore.invalidate();
+        cycleGuard.invalidate();
+    }
+
+    @Test
+    void refreshPropagatesDepthDownstream() {
+        graphManagerService.createOrUpdateFactor(A, null, null);
+        graphManagerService.createOrUpdateFactor(B, null, null);
+        graphManagerService.createOrUpdateDefect(DEFECT, null);
+        assertTrue(graphManagerService.createRelationship(A, B));
+        assertTrue(graphManagerService.createRelationship(B, DEFECT));
+        assertState(A, true, 0);
+        assertState(B, false, 1);
+        assertState(DEFECT, false, 2);
+
+        // 在 A 的上游加一个新根因：A 不再是根因，下游深度逐轮加一
+        graphManagerService.createOrUpdateFactor(C, null, null);
+        assertTrue(graphManagerService.createRelationship(C, A));
+        assertState(C, true, 0);
+        assertState(A, false, 1);
+        assertState(B, false, 2);
+        assertState(DEFECT, false, 3);
+
+        // 删除关系后恢复
+        assertTrue(graphManagerService.deleteRelationship(C, A));
+        assertState(A, true, 0);
+        assertState(DEFECT, false, 2);
+    }
+
+    @Test
+    void repairFixesWritesThatBypassedTheService() {
+        neo4jClient.query("CREATE (a:影响因素 {name: $a})-[:导致]->(b:影响因素 {name: $b})-[:导致]->(:缺陷类型 {name: $d})")
+                .bind(A).to("a").bind(B).to("b").bind(DEFECT).to("d")
+                .run();
+
+        RootIndexReportDto before = rootIndexService.check();
+        assertFalse(before.isConsistent());
+        assertFalse(before.isRepaired());
+
+        assertTrue(rootIndexService.repair().isRepaired());
+        assertState(A, true, 0);
+        assertState(B, false, 1);
+        assertState(DEFECT, false, 2);
+        assertTrue(rootIndexService.check().isConsistent());
+    }
+
+    @Test
+    void repairClearsNodesOnAndBelowCycles() {
+        neo4jClient.query("CREATE (a:影响因素 {name: $a, depth: 0})-[:导致]->(b:影响因素 {name: $b, depth: 1})" +
+                        "-[:导致]->(:缺陷类型 {name: $d, depth: 2}), (b)-[:导致]->(a) SET a:根因")
+                .bind(A).to("a").bind(B).to("b").bind(DEFECT).to("d")
+                .run();
+
+        RootIndexReportDto report = rootIndexService.repair();
+        assertTrue(report.getUnresolvedNodes() >= 3);
+        assertState(A, false, null);
+        assertState(B, false, null);
+        assertState(DEFECT, false, null);
+        assertTrue(rootIndexService.check().isConsistent());
+    }
+
+    private void assertState(String name, boolean root, Integer depth) {
+        boolean actualRoot = neo4jClient.query("MATCH (n {name: $name}) RETURN n:根因 AS root")
+                .bind(name).to("name")
+                .fetchAs(Boolean.class)
+                .mappedBy((typeSystem, record) -> record.get("root").asBoolean())
+                .one()
+                .orElseThrow();
+        // 没有深度时记为 -1
+        int actualDepth = neo4jClient.query("MATCH (n {name: $name}) RETURN n.depth AS depth")
+                .bind(name).to("name")
+                .fetchAs(Integer.class)
+                .mappedBy((typeSystem, record) -> record.get("depth").isNull() ? -1 : record.get("depth").asInt())
+                .one()
+                .orElseThrow();
+        assertEquals(root, actualRoot, name + " 的根因标签");
+        assertEquals(depth == null ? -1 : depth, actualDepth, name + " 的深度");
+    }
+}
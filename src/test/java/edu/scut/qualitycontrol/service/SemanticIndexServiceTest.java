@@ -0,0 +1,138 @@
+package edu.scut.qualitycontrol.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import edu.scut.qualitycontrol.config.ProductionLineHolder;
+import edu.scut.qualitycontrol.graph.CausalGraph;
+import edu.scut.qualitycontrol.graph.GraphEdge;
+import edu.scut.qualitycontrol.graph.GraphNode;
+import edu.scut.qualitycontrol.model.dto.SemanticMatchDto;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 语义索引的增量同步、缺陷映射的计分以及索引文件的保存与加载；向量模型用按关键词编码的桩代替
+ */
+class SemanticIndexServiceTest {
+
+    private static final String LINE = ProductionLineHolder.DEFAULT_LINE;
+    // 每个关键词占一维，最后一维为常量，避免出现零向量
+    private static final List<String> KEYWORDS = List.of("温度", "压力", "气孔", "裂纹");
+
+    @TempDir
+    Path directory;
+
+    private final List<String> embedded = new ArrayList<>();
+    private CausalGraph graph = CausalGraph.of(1,
+            List.of(factor("温度", "炉温"), factor("压力", "模具压力"), defect("气孔"), defect("裂纹")),
+            List.of(new GraphEdge("温度", "气孔", null)));
+
+    @Test
+    void syncReembedsOnlyChangedNodes() {
+        SemanticIndexService service = newService();
+        assertFalse(service.isReady());
+        service.sync(LINE);
+        assertTrue(service.isReady());
+        assertTrue(embedded.containsAll(List.of("温度：炉温", "压力：模具压力", "气孔", "裂纹")));
+
+        embedded.clear();
+        service.sync(LINE);
+        assertTrue(embedded.isEmpty(), "文本未变化时不应重新编码：" + embedded);
+
+        graph = graph.withNode(factor("温度", "炉温偏高"));
+        graph = graph.withoutNode("裂纹");
+        service.sync(LINE);
+        assertEquals(List.of("温度：炉温偏高"), embedded);
+        assertFalse(names(service.search("裂纹", 10)).contains("裂纹"));
+    }
+
+    @Test
+    void factorHitsAreDiscountedAgainstDirectDefectHits() {
+        SemanticIndexService service = newService();
+        service.sync(LINE);
+
+        // 只命中影响因素：下游的缺陷按折扣计分
+        List<SemanticMatchDto> viaFactor = service.findDefects("温度", 5);
+        assertEquals("气孔", viaFactor.get(0).getName());
+        assertEquals(GraphNode.DEFECT_LABEL, viaFactor.get(0).getLabel());
+        assertEquals(0.9, viaFactor.get(0).getScore(), 1e-3);
+
+        // 同时命中影响因素和缺陷，相似度相同时直接命中的缺陷排在前面
+        List<SemanticMatchDto> mixed = service.findDefects("温度 裂纹", 5);
+        assertEquals(List.of("裂纹", "气孔"), names(mixed).subList(0, 2));
+        assertTrue(mixed.get(0).getScore() > mixed.get(1).getScore());
+
+        assertEquals(1, service.findDefects("温度 裂纹", 1).size());
+    }
+
+    @Test
+    void savedIndexIsLoadedWithoutReembedding() {
+        newService().sync(LINE);
+
+        SemanticIndexService restarted = newService();
+        restarted.load(LINE);
+        assertTrue(restarted.isReady());
+        embedded.clear();
+        restarted.sync(LINE);
+        assertTrue(embedded.isEmpty(), "加载后文本未变化的节点不应重新编码：" + embedded);
+        assertEquals("裂纹", restarted.search("裂纹", 1).get(0).getName());
+    }
+
+    private SemanticIndexService newService() {
+        CausalGraphStore store = mock(CausalGraphStore.class);
+        when(store.current()).thenAnswer(invocation -> graph);
+        when(store.current(LINE)).thenAnswer(invocation -> graph);
+        return new SemanticIndexService(store, new ProductionLineHolder(List.of()), new KeywordEmbeddingModel(),
+                directory.resolve("semantic-index.hnsw").toString(), 0.55, Duration.ZERO);
+    }
+
+    private static List<String> names(List<SemanticMatchDto> matches) {
+        return matches.stream().map(SemanticMatchDto::getName).collect(Collectors.toList());
+    }
+
+    private static GraphNode factor(String name, String description) {
+        return new GraphNode(name, GraphNode.FACTOR_LABEL, Map.of("description", description));
+    }
+
+    private static GraphNode defect(String name) {
+        return new GraphNode(name, GraphNode.DEFECT_LABEL, Map.of());
+    }
+
+    /**
+     * 文本中出现哪些关键词，对应的维度就取 1；记录每次编码的文本（探测维度用的 “缺陷” 除外）
+     */
+    private final class KeywordEmbeddingModel implements EmbeddingModel {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (TextSegment segment : segments) {
+                String text = segment.text();
+                if (!text.equals("缺陷")) {
+                    embedded.add(text);
+                }
+                float[] vector = new float[KEYWORDS.size() + 1];
+                for (int i = 0; i < KEYWORDS.size(); i++) {
+                    vector[i] = text.contains(KEYWORDS.get(i)) ? 1 : 0;
+                }
+                vector[KEYWORDS.size()] = 0.01f;
+                embeddings.add(Embedding.from(vector));
+            }
+            return Response.from(embeddings);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package edu.scut.qualitycontrol.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 滑动窗口的计数、过期以及并发写入；时间由测试直接给出，不依赖系统时钟
+ */
+class SlidingWindowCounterTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test
+    void sumCoversOnlyTheRequestedBuckets() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 60);
+        counter.add(T0, 3);
+        counter.add(T0 + 1000, 2);
+        counter.add(T0 + 5000, 1);
+
+        assertEquals(6, counter.sum(T0 + 5000, 60));
+        assertEquals(1, counter.sum(T0 + 5000, 1));
+        // 最近 5 个桶：T0+1s ~ T0+5s
+        assertEquals(3, counter.sum(T0 + 5000, 5));
+    }
+
+    @Test
+    void expiredBucketsAreResetOnReuse() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 60);
+        counter.add(T0, 5);
+        // 一整圈之后落在同一个槽位，旧计数不能累加进来
+        counter.add(T0 + 60_000, 2);
+
+        assertEquals(2, counter.sum(T0 + 60_000, 60));
+        assertEquals(0, counter.sum(T0 + 200_000, 60));
+    }
+
+    @Test
+    void concurrentAddsAreNotLost() throws InterruptedException {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 60);
+        int threads = 8;
+        int perThread = 100_000;
+        runConcurrently(threads, () -> {
+            for (int i = 0; i < perThread; i++) {
+                counter.add(T0, 1);
+            }
+        });
+        assertEquals((long) threads * perThread, counter.sum(T0, 60));
+    }
+
+    /**
+     * 多个线程同时写入且时间不断前进，桶的重置与累加交错发生时，窗口内的总数仍然精确
+     */
+    @Test
+    void concurrentAddsAcrossBucketSwitchesAreNotLost() throws InterruptedException {
+        SlidingWindowCounter seconds = new SlidingWindowCounter(1000, 60);
+        SlidingWindowCounter minutes = new SlidingWindowCounter(60_000, 480);
+        int threads = 4;
+        int perThread = 50_000;
+        runConcurrently(threads, () -> {
+            for (int i = 0; i < perThread; i++) {
+                long now = T0 + i; // 时间前进，覆盖桶切换
+                seconds.add(now, 1);
+                minutes.add(now, 1);
+            }
+        });
+        assertEquals((long) threads * perThread, minutes.sum(T0 + perThread, 480));
+        // 写入跨越 50 秒，全部落在秒级窗口内
+        assertEquals((long) threads * perThread, seconds.sum(T0 + perThread - 1, 50));
+    }
+
+    @Test
+    void countSaturatesInsteadOfOverflowingIntoTheEpoch() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 60);
+        long max = (1L << 40) - 1;
+        counter.add(T0, max);
+        counter.add(T0, max);
+
+        assertEquals(max, counter.sum(T0, 60));
+        // 时间序号没有被计数进位改写，下一秒的桶不受影响
+        counter.add(T0 + 1000, 1);
+        assertEquals(max + 1, counter.sum(T0 + 1000, 60));
+        assertThrows(IllegalArgumentException.class, () -> counter.add(T0, max + 1));
+        assertThrows(IllegalArgumentException.class, () -> counter.add(T0, -1));
+    }
+
+    private static void runConcurrently(int threads, Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                task.run();
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
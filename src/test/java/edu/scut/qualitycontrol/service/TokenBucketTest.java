@@ -0,0 +1,65 @@
+package edu.scut.qualitycontrol.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 令牌桶的突发、回填和等待时间；时间由测试直接给出，不依赖系统时钟
+ */
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    // 故意取负数：nanoTime 的起点是任意的
+    private static final long T0 = -5 * SECOND;
+
+    @Test
+    void burstIsAdmittedThenThrottled() {
+        TokenBucket bucket = new TokenBucket(T0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(T0, 1.0, 3), "第 " + (i + 1) + " 个请求应放行");
+        }
+        long wait = bucket.tryAcquire(T0, 1.0, 3);
+        assertEquals(SECOND, wait);
+    }
+
+    @Test
+    void tokensRefillAtTheConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(T0);
+        for (int i = 0; i < 2; i++) {
+            bucket.tryAcquire(T0, 2.0, 2);
+        }
+        assertTrue(bucket.tryAcquire(T0, 2.0, 2) > 0);
+        // 速率 2/s，半秒回填一个令牌
+        assertEquals(SECOND / 4, bucket.tryAcquire(T0 + SECOND / 4, 2.0, 2));
+        assertEquals(0, bucket.tryAcquire(T0 + SECOND / 2, 2.0, 2));
+        assertTrue(bucket.tryAcquire(T0 + SECOND / 2, 2.0, 2) > 0);
+        // 长时间空闲后最多回满 burst 个令牌，不会无限累积
+        long later = T0 + 60 * SECOND;
+        assertEquals(0, bucket.tryAcquire(later, 2.0, 2));
+        assertEquals(0, bucket.tryAcquire(later, 2.0, 2));
+        assertTrue(bucket.tryAcquire(later, 2.0, 2) > 0);
+    }
+
+    @Test
+    void throttledRequestsDoNotConsumeTokens() {
+        TokenBucket bucket = new TokenBucket(T0);
+        bucket.tryAcquire(T0, 1.0, 1);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bucket.tryAcquire(T0, 1.0, 1) > 0);
+        }
+        assertEquals(0, bucket.tryAcquire(T0 + SECOND, 1.0, 1));
+    }
+
+    @Test
+    void refundReturnsOneToken() {
+        TokenBucket bucket = new TokenBucket(T0);
+        bucket.tryAcquire(T0, 1.0, 1);
+        assertTrue(bucket.tryAcquire(T0, 1.0, 1) > 0);
+        bucket.refund(1.0);
+        assertEquals(0, bucket.tryAcquire(T0, 1.0, 1));
+    }
+}